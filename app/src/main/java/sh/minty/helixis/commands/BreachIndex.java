@@ -0,0 +1,429 @@
+package sh.minty.helixis.commands;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped set of SHA-1 hashes for screening passwords against a breach
+ * corpus.
+ *
+ * <p>
+ * The index file holds a Bloom filter followed by the distinct hashes as sorted
+ * 20-byte records:
+ * </p>
+ *
+ * <pre>
+ * 0   magic "HXBREACH"
+ * 8   number of records
+ * 16  Bloom filter size in bits (a multiple of 64)
+ * 24  number of Bloom probes
+ * 28  reserved
+ * 32  Bloom filter bits, then the records
+ * </pre>
+ *
+ * <p>
+ * Lookups consult the Bloom filter first and binary-search the records only on
+ * a hit, so most clean passwords never touch the record pages. Nothing is read
+ * onto the heap and instances are safe to share between threads.
+ * </p>
+ */
+final class BreachIndex {
+    static final int HASH_BYTES = 20;
+
+    private static final byte[] MAGIC = "HXBREACH".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_BYTES = 32;
+    // mapped buffers are int-indexed, so files are mapped in windows of up to 1 GiB
+    private static final long BLOOM_WINDOW = 1L << 30;
+    private static final long RECORDS_PER_WINDOW = (1L << 30) / HASH_BYTES;
+    // while building, hashes are spread over this many temp files by first byte
+    private static final int BUCKETS = 256;
+
+    private final long count;
+    private final long bloomBits;
+    private final int probes;
+    private final MappedByteBuffer[] bloom;
+    private final MappedByteBuffer[] records;
+
+    private BreachIndex(long count, long bloomBits, int probes, MappedByteBuffer[] bloom, MappedByteBuffer[] records) {
+        this.count = count;
+        this.bloomBits = bloomBits;
+        this.probes = probes;
+        this.bloom = bloom;
+        this.records = records;
+    }
+
+    /**
+     * Map an index written by {@link #build}.
+     */
+    static BreachIndex open(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+            if (header.hasRemaining() || !Arrays.equals(header.array(), 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+                throw new IOException(file + " is not a breach index");
+            }
+            long count = header.getLong(8);
+            long bloomBits = header.getLong(16);
+            int probes = header.getInt(24);
+            long bloomBytes = bloomBits / 8;
+            if (count < 0 || bloomBits <= 0 || bloomBits % 64 != 0 || probes < 1
+                    || channel.size() != HEADER_BYTES + bloomBytes + count * HASH_BYTES) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            var bloom = map(channel, MapMode.READ_ONLY, HEADER_BYTES, bloomBytes, BLOOM_WINDOW);
+            var records = map(channel, MapMode.READ_ONLY, HEADER_BYTES + bloomBytes, count * HASH_BYTES,
+                    RECORDS_PER_WINDOW * HASH_BYTES);
+            return new BreachIndex(count, bloomBits, probes, bloom, records);
+        }
+    }
+
+    long size() {
+        return count;
+    }
+
+    /**
+     * @param sha1
+     *            a 20-byte SHA-1 digest
+     */
+    boolean contains(byte[] sha1) {
+        var hash = ByteBuffer.wrap(sha1);
+        long high = hash.getLong(0);
+        long middle = hash.getLong(8);
+        int low = hash.getInt(16);
+        return mightContain(bloom, bloomBits, probes, middle, high ^ low) && search(high, middle, low);
+    }
+
+    // O(log n) over the mapped records; only pages on the search path are touched
+    private boolean search(long high, long middle, int low) {
+        long from = 0;
+        long to = count - 1;
+        while (from <= to) {
+            long mid = (from + to) >>> 1;
+            var window = records[(int) (mid / RECORDS_PER_WINDOW)];
+            int offset = (int) (mid % RECORDS_PER_WINDOW) * HASH_BYTES;
+            int cmp = Long.compareUnsigned(window.getLong(offset), high);
+            if (cmp == 0) {
+                cmp = Long.compareUnsigned(window.getLong(offset + 8), middle);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compareUnsigned(window.getInt(offset + 16), low);
+            }
+            if (cmp < 0) {
+                from = mid + 1;
+            } else if (cmp > 0) {
+                to = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Counts reported by {@link #build}. */
+    record BuildStats(long lines, long invalid, long distinct) {
+    }
+
+    /**
+     * Build an index from a corpus with one hex SHA-1 per line. Anything after the
+     * 40 hex digits that is separated by {@code :} or whitespace (such as the
+     * occurrence counts in published breach dumps) is ignored.
+     *
+     * <p>
+     * The corpus does not need to be sorted and is never held in memory as a whole:
+     * hashes are first spread over {@value #BUCKETS} temporary files in
+     * {@code tempDir} by their first byte, then each bucket is sorted and
+     * deduplicated on its own, which needs about 1/{@value #BUCKETS} of the corpus
+     * in heap at a time.
+     * </p>
+     *
+     * @param bloomBitsPerEntry
+     *            Bloom filter bits per hash; 10 gives about 1% false positives
+     */
+    static BuildStats build(InputStream corpus, Path index, Path tempDir, int bloomBitsPerEntry) throws IOException {
+        var buckets = new Path[BUCKETS];
+        var bucketOut = new OutputStream[BUCKETS];
+        var dir = Files.createTempDirectory(tempDir, "breach-index");
+        try {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = dir.resolve(String.format("bucket-%02x", i));
+                bucketOut[i] = new BufferedOutputStream(Files.newOutputStream(buckets[i]), 1 << 16);
+            }
+            long[] stats;
+            try {
+                stats = distribute(corpus, bucketOut);
+            } finally {
+                for (var out : bucketOut) {
+                    if (out != null) {
+                        out.close();
+                    }
+                }
+            }
+
+            long total = stats[0] - stats[1];
+            long bloomBits = Math.max(64, (total * bloomBitsPerEntry + 63) / 64 * 64);
+            // optimal probe count for the chosen density is bits-per-entry * ln 2
+            int probes = Math.max(1, (int) Math.round(bloomBitsPerEntry * Math.log(2)));
+            long distinct = writeIndex(index, buckets, bloomBits, probes);
+            return new BuildStats(stats[0], stats[1], distinct);
+        } finally {
+            for (var bucket : buckets) {
+                if (bucket != null) {
+                    Files.deleteIfExists(bucket);
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // returns {lines, invalid lines}
+    private static long[] distribute(InputStream corpus, OutputStream[] bucketOut) throws IOException {
+        var buffer = new byte[1 << 20];
+        var hash = new byte[HASH_BYTES];
+        long lines = 0;
+        long invalid = 0;
+        int filled = 0;
+        int read;
+        boolean eof = false;
+        while (!eof) {
+            read = corpus.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                eof = true;
+                if (filled == 0) {
+                    break;
+                }
+                // treat the unterminated last line like any other
+                if (filled == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length + 1);
+                }
+                buffer[filled++] = '\n';
+            } else {
+                filled += read;
+            }
+
+            int start = 0;
+            for (int i = 0; i < filled; i++) {
+                if (buffer[i] != '\n') {
+                    continue;
+                }
+                int end = (i > start && buffer[i - 1] == '\r') ? i - 1 : i;
+                if (end > start) {
+                    lines++;
+                    if (parseHash(buffer, start, end, hash)) {
+                        bucketOut[hash[0] & 0xFF].write(hash);
+                    } else {
+                        invalid++;
+                    }
+                }
+                start = i + 1;
+            }
+            if (start == 0 && filled == buffer.length) {
+                // a line longer than the buffer cannot be a hash; drop what we have of it
+                invalid++;
+                lines++;
+                filled = 0;
+                skipRestOfLine(corpus);
+                continue;
+            }
+            System.arraycopy(buffer, start, buffer, 0, filled - start);
+            filled -= start;
+        }
+        return new long[]{lines, invalid};
+    }
+
+    private static void skipRestOfLine(InputStream in) throws IOException {
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            // discard
+        }
+    }
+
+    private static boolean parseHash(byte[] line, int start, int end, byte[] hash) {
+        if (end - start < HASH_BYTES * 2) {
+            return false;
+        }
+        if (end - start > HASH_BYTES * 2) {
+            byte next = line[start + HASH_BYTES * 2];
+            if (next != ':' && next != ' ' && next != '\t' && next != ',') {
+                return false;
+            }
+        }
+        for (int i = 0; i < HASH_BYTES; i++) {
+            int high = Character.digit(line[start + i * 2], 16);
+            int low = Character.digit(line[start + i * 2 + 1], 16);
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            hash[i] = (byte) (high << 4 | low);
+        }
+        return true;
+    }
+
+    private static long writeIndex(Path index, Path[] buckets, long bloomBits, int probes) throws IOException {
+        long bloomBytes = bloomBits / 8;
+        try (var channel = FileChannel.open(index, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the filter is filled through a writable mapping while records are appended
+            // behind it
+            channel.truncate(0);
+            channel.write(ByteBuffer.allocate(1), HEADER_BYTES + bloomBytes - 1);
+            var bloom = map(channel, MapMode.READ_WRITE, HEADER_BYTES, bloomBytes, BLOOM_WINDOW);
+
+            long distinct = 0;
+            channel.position(HEADER_BYTES + bloomBytes);
+            var out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 20);
+            for (var bucket : buckets) {
+                var hashes = ByteBuffer.wrap(Files.readAllBytes(bucket));
+                int n = hashes.capacity() / HASH_BYTES;
+                // three longs per hash: bytes 0-7, 8-15 and 16-19
+                var keys = new long[n * 3];
+                for (int i = 0; i < n; i++) {
+                    keys[i * 3] = hashes.getLong(i * HASH_BYTES);
+                    keys[i * 3 + 1] = hashes.getLong(i * HASH_BYTES + 8);
+                    keys[i * 3 + 2] = hashes.getInt(i * HASH_BYTES + 16) & 0xFFFFFFFFL;
+                }
+                Files.delete(bucket);
+                sort(keys, 0, n - 1);
+
+                var record = ByteBuffer.allocate(HASH_BYTES);
+                for (int i = 0; i < n; i++) {
+                    if (i > 0 && compare(keys, i, i - 1) == 0) {
+                        continue;
+                    }
+                    long high = keys[i * 3];
+                    long middle = keys[i * 3 + 1];
+                    int low = (int) keys[i * 3 + 2];
+                    record.clear();
+                    record.putLong(high).putLong(middle).putInt(low);
+                    out.write(record.array());
+                    add(bloom, bloomBits, probes, middle, high ^ low);
+                    distinct++;
+                }
+            }
+            out.flush();
+            for (var window : bloom) {
+                window.force();
+            }
+
+            var header = ByteBuffer.allocate(HEADER_BYTES);
+            header.put(MAGIC).putLong(distinct).putLong(bloomBits).putInt(probes).putInt(0).flip();
+            channel.write(header, 0);
+            channel.force(true);
+            return distinct;
+        }
+    }
+
+    // the hash is already uniform, so two of its words serve directly as the
+    // double-hashing pair
+    private static void add(MappedByteBuffer[] bloom, long bits, int probes, long h1, long h2) {
+        for (int i = 0; i < probes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            var window = bloom[(int) ((bit >>> 3) / BLOOM_WINDOW)];
+            int offset = (int) ((bit >>> 6) * 8 % BLOOM_WINDOW);
+            window.putLong(offset, window.getLong(offset) | (1L << (bit & 63)));
+        }
+    }
+
+    private static boolean mightContain(MappedByteBuffer[] bloom, long bits, int probes, long h1, long h2) {
+        for (int i = 0; i < probes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            var window = bloom[(int) ((bit >>> 3) / BLOOM_WINDOW)];
+            int offset = (int) ((bit >>> 6) * 8 % BLOOM_WINDOW);
+            if ((window.getLong(offset) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MappedByteBuffer[] map(FileChannel channel, MapMode mode, long position, long size, long windowBytes)
+            throws IOException {
+        int windows = (int) Math.max(1, (size + windowBytes - 1) / windowBytes);
+        var mapped = new MappedByteBuffer[windows];
+        for (int i = 0; i < windows; i++) {
+            long offset = i * windowBytes;
+            mapped[i] = channel.map(mode, position + offset, Math.min(windowBytes, size - offset));
+        }
+        return mapped;
+    }
+
+    // unsigned three-way quicksort over (high, middle, low) triples; corpora repeat
+    // hashes, so runs of equal keys must not degrade it
+    private static void sort(long[] keys, int from, int to) {
+        while (to - from > 16) {
+            int pivot = medianOfThree(keys, from, (from + to) >>> 1, to);
+            long high = keys[pivot * 3];
+            long middle = keys[pivot * 3 + 1];
+            long low = keys[pivot * 3 + 2];
+            int lt = from;
+            int gt = to;
+            int i = from;
+            while (i <= gt) {
+                int cmp = compare(keys, i, high, middle, low);
+                if (cmp < 0) {
+                    swap(keys, lt++, i++);
+                } else if (cmp > 0) {
+                    swap(keys, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            // recurse into the smaller side to bound the stack depth
+            if (lt - from < to - gt) {
+                sort(keys, from, lt - 1);
+                from = gt + 1;
+            } else {
+                sort(keys, gt + 1, to);
+                to = lt - 1;
+            }
+        }
+        for (int i = from + 1; i <= to; i++) {
+            for (int j = i; j > from && compare(keys, j, j - 1) < 0; j--) {
+                swap(keys, j, j - 1);
+            }
+        }
+    }
+
+    private static int medianOfThree(long[] keys, int a, int b, int c) {
+        if (compare(keys, a, b) < 0) {
+            return compare(keys, b, c) < 0 ? b : (compare(keys, a, c) < 0 ? c : a);
+        }
+        return compare(keys, a, c) < 0 ? a : (compare(keys, b, c) < 0 ? c : b);
+    }
+
+    private static int compare(long[] keys, int a, int b) {
+        return compare(keys, a, keys[b * 3], keys[b * 3 + 1], keys[b * 3 + 2]);
+    }
+
+    private static int compare(long[] keys, int a, long high, long middle, long low) {
+        int cmp = Long.compareUnsigned(keys[a * 3], high);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(keys[a * 3 + 1], middle);
+        }
+        if (cmp == 0) {
+            cmp = Long.compare(keys[a * 3 + 2], low);
+        }
+        return cmp;
+    }
+
+    private static void swap(long[] keys, int a, int b) {
+        for (int k = 0; k < 3; k++) {
+            long tmp = keys[a * 3 + k];
+            keys[a * 3 + k] = keys[b * 3 + k];
+            keys[b * 3 + k] = tmp;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package sh.minty.helixis.commands;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Business-day arithmetic for a weekend and a set of holidays, without stepping
+ * through the days in between.
+ *
+ * <p>
+ * Working days are counted in closed form: whole weeks times the working days
+ * per week, plus a per-weekday table for the partial week. Holidays that fall
+ * on working days are kept in a bitset over the days of the years they occur
+ * in, with the number of holidays before each word, so the holidays before any
+ * date are counted in constant time. Finding the n-th business day is then a
+ * short fixed-point iteration: take the n-th working day, and move on by the
+ * holidays up to it until no more are passed.
+ * </p>
+ */
+final class BusinessCalendar {
+    // 1970-01-01 was a Thursday, day 3 of a week starting on Monday
+    private static final int EPOCH_DAY_OF_WEEK = 3;
+
+    /** Working days among the first {@code i} days of the week, from Monday. */
+    private final int[] workdaysBefore = new int[8];
+    /** Day of the week, from Monday as 0, of each working day of a week. */
+    private final int[] workdays;
+
+    /** Epoch day of the first day covered by {@link #holidays}. */
+    private final long firstDay;
+    /** Holidays on working days, bit {@code d - firstDay}. */
+    private final long[] holidays;
+    /** Holidays in the words of {@link #holidays} before each word. */
+    private final int[] holidaysBefore;
+    private final int holidayCount;
+
+    private BusinessCalendar(Set<DayOfWeek> weekend, long[] holidayDays) {
+        int count = 0;
+        for (int day = 0; day < 7; day++) {
+            workdaysBefore[day] = count;
+            if (!weekend.contains(DayOfWeek.of(day + 1))) {
+                count++;
+            }
+        }
+        workdaysBefore[7] = count;
+        if (count == 0) {
+            throw new IllegalArgumentException("the weekend cannot be the whole week");
+        }
+        workdays = new int[count];
+        for (int day = 0; day < 7; day++) {
+            if (isWorkday(day)) {
+                workdays[workdaysBefore[day]] = day;
+            }
+        }
+
+        if (holidayDays.length == 0) {
+            firstDay = 0;
+            holidays = new long[0];
+            holidaysBefore = new int[0];
+            holidayCount = 0;
+            return;
+        }
+        Arrays.sort(holidayDays);
+        firstDay = LocalDate.ofEpochDay(holidayDays[0]).withDayOfYear(1).toEpochDay();
+        long lastDay = LocalDate.ofEpochDay(holidayDays[holidayDays.length - 1]).withDayOfYear(1).plusYears(1)
+                .toEpochDay();
+        holidays = new long[(int) ((lastDay - firstDay + 63) / 64)];
+        for (long day : holidayDays) {
+            if (isWorkday(dayOfWeek(day))) {
+                long offset = day - firstDay;
+                holidays[(int) (offset >> 6)] |= 1L << offset;
+            }
+        }
+        holidaysBefore = new int[holidays.length];
+        int before = 0;
+        for (int i = 0; i < holidays.length; i++) {
+            holidaysBefore[i] = before;
+            before += Long.bitCount(holidays[i]);
+        }
+        holidayCount = before;
+    }
+
+    /**
+     * @param weekend
+     *            the days of the week that are not working days
+     * @param holidayFile
+     *            a holiday calendar, or null for none
+     * @throws IOException
+     *             if the holiday file cannot be read or has a line that is not a
+     *             date
+     */
+    static BusinessCalendar of(Set<DayOfWeek> weekend, Path holidayFile) throws IOException {
+        return new BusinessCalendar(weekend, holidayFile == null ? new long[0] : readHolidays(holidayFile));
+    }
+
+    /**
+     * Read a holiday file: one ISO date ({@code 2024-12-25}) at the start of each
+     * line, optionally followed by a name, with blank lines and lines starting with
+     * {@code #} ignored; or an iCalendar file, whose all-day events'
+     * {@code DTSTART} dates are the holidays.
+     *
+     * @return the holidays as epoch days
+     */
+    private static long[] readHolidays(Path file) throws IOException {
+        var lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        boolean iCalendar = lines.stream().map(String::strip).filter(line -> !line.isEmpty()).findFirst()
+                .map(line -> line.equalsIgnoreCase("BEGIN:VCALENDAR")).orElse(false);
+        var days = new long[lines.size()];
+        int count = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            var line = lines.get(i).strip();
+            try {
+                if (iCalendar) {
+                    if (line.regionMatches(true, 0, "DTSTART", 0, 7)) {
+                        var value = line.substring(line.lastIndexOf(':') + 1);
+                        days[count++] = LocalDate.parse(value.substring(0, Math.min(8, value.length())),
+                                DateTimeFormatter.BASIC_ISO_DATE).toEpochDay();
+                    }
+                } else if (!line.isEmpty() && line.charAt(0) != '#') {
+                    int end = 0;
+                    while (end < line.length() && !Character.isWhitespace(line.charAt(end))
+                            && line.charAt(end) != ',') {
+                        end++;
+                    }
+                    days[count++] = LocalDate.parse(line.substring(0, end)).toEpochDay();
+                }
+            } catch (DateTimeException e) {
+                throw new IOException(file + " line " + (i + 1) + ": not a holiday date: " + line);
+            }
+        }
+        return Arrays.copyOf(days, count);
+    }
+
+    private boolean isWorkday(int dayOfWeek) {
+        return workdaysBefore[dayOfWeek + 1] != workdaysBefore[dayOfWeek];
+    }
+
+    private static int dayOfWeek(long epochDay) {
+        return Math.floorMod(epochDay + EPOCH_DAY_OF_WEEK, 7);
+    }
+
+    /**
+     * @return the number of working days, ignoring holidays, before
+     *         {@code epochDay}, counted from a fixed origin
+     */
+    private long workdaysBefore(long epochDay) {
+        long day = epochDay + EPOCH_DAY_OF_WEEK;
+        return Math.floorDiv(day, 7) * workdays.length + workdaysBefore[Math.floorMod(day, 7)];
+    }
+
+    /**
+     * @return the working day with {@code rank} working days before it
+     */
+    private long workday(long rank) {
+        long week = Math.floorDiv(rank, workdays.length);
+        return week * 7 + workdays[Math.floorMod(rank, workdays.length)] - EPOCH_DAY_OF_WEEK;
+    }
+
+    /**
+     * @return the number of holidays on working days before {@code epochDay}
+     */
+    private long holidaysBefore(long epochDay) {
+        long offset = epochDay - firstDay;
+        if (offset <= 0) {
+            return 0;
+        }
+        if (offset >= (long) holidays.length * 64) {
+            return holidayCount;
+        }
+        int word = (int) (offset >> 6);
+        return holidaysBefore[word] + Long.bitCount(holidays[word] & ((1L << offset) - 1));
+    }
+
+    private long businessDaysBefore(long epochDay) {
+        return workdaysBefore(epochDay) - holidaysBefore(epochDay);
+    }
+
+    /**
+     * @return the epoch day {@code days} business days after {@code epochDay}, or
+     *         before it if {@code days} is negative; the start day itself is never
+     *         counted
+     */
+    long plusBusinessDays(long epochDay, long days) {
+        if (days == 0) {
+            return epochDay;
+        }
+        long target = days > 0 ? businessDaysBefore(epochDay + 1) + days - 1 : businessDaysBefore(epochDay) + days;
+        // the least rank with target business days and the holidays up to it before it
+        long rank = target;
+        while (true) {
+            long day = workday(rank);
+            long next = target + holidaysBefore(day + 1);
+            if (next == rank) {
+                return day;
+            }
+            rank = next;
+        }
+    }
+
+    LocalDate plusBusinessDays(LocalDate date, long days) {
+        return LocalDate.ofEpochDay(plusBusinessDays(date.toEpochDay(), days));
+    }
+}
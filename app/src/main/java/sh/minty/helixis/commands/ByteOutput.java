@@ -0,0 +1,158 @@
+package sh.minty.helixis.commands;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer with ASCII number formatting, for building a chunk of
+ * output lines without creating a {@link String} per value.
+ */
+final class ByteOutput {
+    private static final byte[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e',
+            'f'};
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private byte[] buffer;
+    private int length;
+
+    ByteOutput(int capacity) {
+        buffer = new byte[Math.max(16, capacity)];
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * Drop everything after the first {@code length} bytes.
+     */
+    void truncate(int length) {
+        this.length = length;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    ByteOutput append(byte b) {
+        ensure(1);
+        buffer[length++] = b;
+        return this;
+    }
+
+    ByteOutput append(char c) {
+        return append((byte) c);
+    }
+
+    ByteOutput append(byte[] data, int start, int end) {
+        ensure(end - start);
+        System.arraycopy(data, start, buffer, length, end - start);
+        length += end - start;
+        return this;
+    }
+
+    /**
+     * Append {@code text} as UTF-8.
+     */
+    ByteOutput append(String text) {
+        int n = text.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                var bytes = text.getBytes(StandardCharsets.UTF_8);
+                return append(bytes, 0, bytes.length);
+            }
+            buffer[length + i] = (byte) c;
+        }
+        length += n;
+        return this;
+    }
+
+    ByteOutput append(long value) {
+        ensure(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            if (value == Long.MIN_VALUE) {
+                // its magnitude does not fit a long; "9223372036854775808"
+                buffer[length++] = '9';
+                value = -223372036854775808L;
+            }
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    /**
+     * Append {@code value} zero-padded to at least {@code width} digits.
+     */
+    ByteOutput appendPadded(long value, int width) {
+        if (value >= 0) {
+            int digits = 1;
+            for (long v = value; v >= 10; v /= 10) {
+                digits++;
+            }
+            for (; digits < width; digits++) {
+                append('0');
+            }
+        }
+        return append(value);
+    }
+
+    /**
+     * Append exactly {@code width} digits: the last {@code width} digits of a
+     * non-negative {@code value}, zero-padded.
+     */
+    ByteOutput appendDigits(int value, int width) {
+        ensure(width);
+        for (int i = length + width - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += width;
+        return this;
+    }
+
+    /**
+     * Append {@code value} rounded to {@code decimals} places (at most 6).
+     */
+    ByteOutput appendFixed(double value, int decimals) {
+        long scale = POWERS_OF_TEN[decimals];
+        long scaled = Math.round(value * scale);
+        if (scaled < 0) {
+            append('-');
+            scaled = -scaled;
+        }
+        append(scaled / scale);
+        if (decimals > 0) {
+            append('.');
+            appendPadded(scaled % scale, decimals);
+        }
+        return this;
+    }
+
+    /**
+     * Append the low byte of {@code value} as two lowercase hex digits.
+     */
+    ByteOutput appendHexByte(int value) {
+        ensure(2);
+        buffer[length++] = HEX_DIGITS[value >>> 4 & 0xF];
+        buffer[length++] = HEX_DIGITS[value & 0xF];
+        return this;
+    }
+}
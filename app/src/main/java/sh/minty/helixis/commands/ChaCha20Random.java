@@ -0,0 +1,162 @@
+package sh.minty.helixis.commands;
+
+import java.util.Random;
+
+/**
+ * ChaCha20 keystream as a {@link Random}, generated many blocks at a time.
+ *
+ * <p>
+ * Each refill runs the block function {@value #BLOCKS} times under the current
+ * key and then rekeys from the first 32 bytes of its own output, which are
+ * never handed out (fast key erasure), so earlier output cannot be recovered
+ * from a later state. Not thread-safe; {@link RandomSource} gives each thread
+ * its own instance.
+ * </p>
+ */
+final class ChaCha20Random extends Random {
+    private static final long serialVersionUID = 1L;
+    private static final int BLOCKS = 64;
+    private static final int KEY_WORDS = 8;
+
+    private final int[] key = new int[KEY_WORDS];
+    private final int[] state = new int[16];
+    private final int[] output = new int[BLOCKS * 16];
+    // index of the next unused word of output
+    private int next = output.length;
+
+    /**
+     * @param seed
+     *            32-byte key
+     * @param stream
+     *            selects one of 2^64 independent streams under the same key
+     */
+    ChaCha20Random(byte[] seed, long stream) {
+        if (seed.length != KEY_WORDS * 4) {
+            throw new IllegalArgumentException("ChaCha20 needs a 32-byte seed");
+        }
+        for (int i = 0; i < KEY_WORDS; i++) {
+            key[i] = (seed[i * 4] & 0xFF) | (seed[i * 4 + 1] & 0xFF) << 8 | (seed[i * 4 + 2] & 0xFF) << 16
+                    | (seed[i * 4 + 3] & 0xFF) << 24;
+        }
+        // "expand 32-byte k"
+        state[0] = 0x61707865;
+        state[1] = 0x3320646e;
+        state[2] = 0x79622d32;
+        state[3] = 0x6b206574;
+        state[14] = (int) stream;
+        state[15] = (int) (stream >>> 32);
+    }
+
+    /**
+     * The key is fixed at construction; reseeding through {@link Random} is not
+     * supported.
+     */
+    @Override
+    public void setSeed(long seed) {
+        // Random's constructor calls this before our fields exist; ignore it there
+        if (output != null) {
+            throw new UnsupportedOperationException("ChaCha20Random cannot be reseeded");
+        }
+    }
+
+    @Override
+    protected int next(int bits) {
+        return nextInt() >>> (32 - bits);
+    }
+
+    @Override
+    public int nextInt() {
+        if (next == output.length) {
+            refill();
+        }
+        return output[next++];
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        // multiply-and-reject (Lemire): one draw in the common case, and unbiased
+        long product = (nextInt() & 0xFFFFFFFFL) * bound;
+        if ((product & 0xFFFFFFFFL) < bound) {
+            long threshold = (1L << 32) % bound;
+            while ((product & 0xFFFFFFFFL) < threshold) {
+                product = (nextInt() & 0xFFFFFFFFL) * bound;
+            }
+        }
+        return (int) (product >>> 32);
+    }
+
+    @Override
+    public long nextLong() {
+        return (long) nextInt() << 32 | (nextInt() & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes) {
+        int i = 0;
+        for (; i + 4 <= bytes.length; i += 4) {
+            int word = nextInt();
+            bytes[i] = (byte) word;
+            bytes[i + 1] = (byte) (word >>> 8);
+            bytes[i + 2] = (byte) (word >>> 16);
+            bytes[i + 3] = (byte) (word >>> 24);
+        }
+        if (i < bytes.length) {
+            int word = nextInt();
+            for (; i < bytes.length; i++, word >>>= 8) {
+                bytes[i] = (byte) word;
+            }
+        }
+    }
+
+    private void refill() {
+        System.arraycopy(key, 0, state, 4, KEY_WORDS);
+        for (int block = 0; block < BLOCKS; block++) {
+            state[12] = block;
+            state[13] = 0;
+            block(state, output, block * 16);
+        }
+        System.arraycopy(output, 0, key, 0, KEY_WORDS);
+        next = KEY_WORDS;
+    }
+
+    /**
+     * The ChaCha20 block function (RFC 8439, section 2.3): 20 rounds over
+     * {@code in}, added back to {@code in}, written to {@code out[off..off+16)}.
+     */
+    static void block(int[] in, int[] out, int off) {
+        var x = new int[16];
+        System.arraycopy(in, 0, x, 0, 16);
+        for (int round = 0; round < 10; round++) {
+            // column rounds
+            quarterRound(x, 0, 4, 8, 12);
+            quarterRound(x, 1, 5, 9, 13);
+            quarterRound(x, 2, 6, 10, 14);
+            quarterRound(x, 3, 7, 11, 15);
+            // diagonal rounds
+            quarterRound(x, 0, 5, 10, 15);
+            quarterRound(x, 1, 6, 11, 12);
+            quarterRound(x, 2, 7, 8, 13);
+            quarterRound(x, 3, 4, 9, 14);
+        }
+        for (int i = 0; i < 16; i++) {
+            out[off + i] = x[i] + in[i];
+        }
+    }
+
+    /**
+     * The ChaCha quarter round (RFC 8439, section 2.1) on four words of {@code x}.
+     */
+    private static void quarterRound(int[] x, int a, int b, int c, int d) {
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 16);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 12);
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 8);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 7);
+    }
+}
@@ -0,0 +1,123 @@
+package sh.minty.helixis.commands;
+
+import com.google.common.net.InetAddresses;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * An IPv4 or IPv6 CIDR block whose addresses can be addressed by index, in
+ * ascending address order.
+ *
+ * <p>
+ * Only blocks with at most 62 host bits are supported so that the index fits in
+ * a {@code long}; that is far more than any sweep will ever walk.
+ * </p>
+ */
+final class CidrRange {
+    private static final int MAX_HOST_BITS = 62;
+
+    private final byte[] network;
+    private final int prefixLength;
+    private final long size;
+
+    private CidrRange(byte[] network, int prefixLength) {
+        this.network = network;
+        this.prefixLength = prefixLength;
+        this.size = 1L << (network.length * 8 - prefixLength);
+    }
+
+    /**
+     * Parse a CIDR block such as {@code 10.0.0.0/16} or {@code 2001:db8::/120}. A
+     * bare address is treated as a single-address block.
+     *
+     * @param cidr
+     *            the block in {@code address[/prefix]} notation
+     * @return the parsed block, with any host bits of the address cleared
+     * @throws IllegalArgumentException
+     *             if the address or prefix length is invalid
+     */
+    static CidrRange parse(String cidr) {
+        int slash = cidr.indexOf('/');
+        String addressPart = (slash < 0) ? cidr : cidr.substring(0, slash);
+        byte[] bytes = InetAddresses.forString(addressPart).getAddress();
+        int bits = bytes.length * 8;
+
+        int prefix = bits;
+        if (slash >= 0) {
+            try {
+                prefix = Integer.parseInt(cidr.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length in '" + cidr + "'", e);
+            }
+        }
+        if (prefix < 0 || prefix > bits) {
+            throw new IllegalArgumentException("Prefix length must be between 0 and " + bits + ": " + cidr);
+        }
+        if (bits - prefix > MAX_HOST_BITS) {
+            throw new IllegalArgumentException("Range too large, at most " + MAX_HOST_BITS + " host bits: " + cidr);
+        }
+
+        // clear the host bits so index 0 is the network address
+        for (int i = 0; i < bytes.length; i++) {
+            int keep = Math.max(0, Math.min(8, prefix - i * 8));
+            bytes[i] &= (byte) (0xFF << (8 - keep));
+        }
+        return new CidrRange(bytes, prefix);
+    }
+
+    /**
+     * @return the number of addresses in the block
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return {@code true} for an IPv6 block
+     */
+    boolean isIpv6() {
+        return network.length == 16;
+    }
+
+    /**
+     * Get the raw address bytes at {@code index} without creating an
+     * {@link InetAddress}.
+     *
+     * @param index
+     *            0-based offset from the network address
+     * @param out
+     *            destination, 4 or 16 bytes depending on the address family
+     */
+    void addressBytesAt(long index, byte[] out) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside range of size " + size);
+        }
+        System.arraycopy(network, 0, out, 0, network.length);
+        // host bits are zero in the network address, so OR-ing the index in is enough
+        for (int i = network.length - 1; i >= 0 && index != 0; i--) {
+            out[i] |= (byte) index;
+            index >>>= 8;
+        }
+    }
+
+    /**
+     * @param index
+     *            0-based offset from the network address
+     * @return the address at {@code index}
+     */
+    InetAddress addressAt(long index) {
+        var bytes = new byte[network.length];
+        addressBytesAt(index, bytes);
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            // unreachable: the byte array always has a valid length
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return addressAt(0).getHostAddress() + "/" + prefixLength;
+    }
+}
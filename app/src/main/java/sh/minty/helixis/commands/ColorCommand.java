@@ -1,53 +1,108 @@
 package sh.minty.helixis.commands;
 
-import java.util.Random;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
 import java.util.concurrent.Callable;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
-@Command(name = "color", mixinStandardHelpOptions = true, description = "Converts RGB values to hexadecimal values and finds similar colors.")
+@Command(name = "color", mixinStandardHelpOptions = true, description = "Converts RGB values to hexadecimal values and finds similar colors.", subcommands = {
+        ColorCommand.ConvertCommand.class, ColorCommand.NearestCommand.class, ColorCommand.PaletteCommand.class})
 public class ColorCommand implements Callable<Integer> {
-    private Random random = new Random();
+    // optional only so subcommands can be used without them; call() requires them
+    @Parameters(index = "0", arity = "0..1", description = "Red value (0-255)")
+    private Integer red;
 
-    @Parameters(index = "0", description = "Red value (0-255)")
-    private int red;
+    @Parameters(index = "1", arity = "0..1", description = "Green value (0-255)")
+    private Integer green;
 
-    @Parameters(index = "1", description = "Green value (0-255)")
-    private int green;
+    @Parameters(index = "2", arity = "0..1", description = "Blue value (0-255)")
+    private Integer blue;
 
-    @Parameters(index = "2", description = "Blue value (0-255)")
-    private int blue;
+    // consecutive draws without a new color after which similar-color generation
+    // gives up
+    private static final int MAX_MISSES = 1 << 20;
 
-    @Option(names = "-s", paramLabel = "NUMBER", description = "Get similar colors")
+    @Option(names = "-s", paramLabel = "NUMBER", description = "Get NUMBER distinct similar colors")
     private int similarColors;
 
+    @Option(names = "--radius", paramLabel = "DELTA_E", description = "Largest CIELAB distance (CIE76 delta E) of a similar color from the given one (default: 10)")
+    private double radius = 10;
+
+    @Mixin
+    private RandomSource.Options randomOptions = new RandomSource.Options();
+
     @Override
     public Integer call() {
+        randomOptions.apply();
+        if (red == null || green == null || blue == null) {
+            System.err.println("ERROR: Red, green and blue values are required.");
+            return 1;
+        }
         if (red > 255 || green > 255 || blue > 255 || red < 0 || green < 0 || blue < 0) {
             System.err.println("ERROR: One or more RGB values are outside the valid range (0-255).");
             return 1;
         }
+        if (similarColors < 0 || !(radius > 0)) {
+            System.err.println("ERROR: The number of similar colors and the radius must be positive.");
+            return 1;
+        }
 
         String hexValue = rgbToHex(red, green, blue);
         System.out.printf("RGB values (%d, %d, %d) are equivalent to hex value: %s%n", red, green, blue, hexValue);
 
         if (similarColors != 0) {
             var colors = getSimilarColors(red, green, blue, similarColors);
-            for (var color : colors) {
-                System.out.println(color);
+            var text = new ByteOutput(colors.length * 8);
+            for (int color : colors) {
+                ColorText.writeHex(color, text);
+                text.append('\n');
+            }
+            System.out.flush();
+            try {
+                var out = new FileOutputStream(FileDescriptor.out);
+                out.write(text.buffer(), 0, text.length());
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("ERROR: Could not write colors: " + e.getMessage());
+                return 1;
+            }
+            if (colors.length < similarColors) {
+                System.err.printf(Locale.ROOT,
+                        "WARNING: Only %d distinct colors found within delta E %s; try a larger --radius.%n",
+                        colors.length, radius);
             }
         }
 
         return 0;
     }
 
-    private String rgbToHex(int r, int g, int b) {
+    private static String rgbToHex(int r, int g, int b) {
         return String.format("#%02x%02x%02x", r, g, b);
     }
 
     /**
-     * Generates {@code amount} colours that are similar to the supplied RGB colour.
+     * Generates up to {@code amount} distinct colours that are similar to the
+     * supplied RGB colour.
+     *
+     * <p>
+     * Candidates are drawn uniformly from the CIELAB ball of {@link #radius} around
+     * the colour, so they spread evenly by perceived difference, and candidates
+     * outside the sRGB gamut are dropped rather than clamped, which would pile them
+     * up on the gamut's surface. Colours already produced, and the supplied one,
+     * are recognised by a bitset over all 2^24 colours. When the ball holds fewer
+     * distinct colours than asked for, generation stops once {@link #MAX_MISSES}
+     * draws in a row found nothing new.
+     * </p>
      *
      * @param r
      *            red component (0‑255)
@@ -57,29 +112,341 @@ public class ColorCommand implements Callable<Integer> {
      *            blue component (0‑255)
      * @param amount
      *            how many similar colours to generate
-     * @return an array containing the hex strings of the generated colours
+     * @return the generated colours as {@code 0xRRGGBB}, in generation order
      */
-    private String[] getSimilarColors(int r, int g, int b, int amount) {
-        var similarColors = new String[amount];
-        // Base color as an array so we can loop over the three channels.
-        final int[] base = {r, g, b};
+    private int[] getSimilarColors(int r, int g, int b, int amount) {
+        var similarColors = new int[amount];
+        var seen = new long[(1 << 24) / Long.SIZE];
+        int base = ColorMath.rgb(r, g, b);
+        seen[base >>> 6] |= 1L << base;
+
+        var lab = new double[3];
+        ColorMath.toLab(base, lab);
+        double baseL = lab[0];
+        double baseA = lab[1];
+        double baseB = lab[2];
+        var random = RandomSource.current();
+
+        int found = 0;
+        int misses = 0;
+        while (found < amount && misses < MAX_MISSES) {
+            misses++;
+            // uniform in the unit ball, by rejection from the cube around it
+            double x = random.nextDouble() * 2 - 1;
+            double y = random.nextDouble() * 2 - 1;
+            double z = random.nextDouble() * 2 - 1;
+            if (x * x + y * y + z * z > 1) {
+                continue;
+            }
+            int color = ColorMath.fromLabInGamut(baseL + x * radius, baseA + y * radius, baseB + z * radius);
+            if (color < 0 || (seen[color >>> 6] & 1L << color) != 0) {
+                continue;
+            }
+            // rounding to 8 bits can carry a color just past the radius
+            ColorMath.toLab(color, lab);
+            double dl = lab[0] - baseL;
+            double da = lab[1] - baseA;
+            double db = lab[2] - baseB;
+            if (dl * dl + da * da + db * db > radius * radius) {
+                continue;
+            }
+            seen[color >>> 6] |= 1L << color;
+            similarColors[found++] = color;
+            misses = 0;
+        }
+
+        return found == amount ? similarColors : Arrays.copyOf(similarColors, found);
+    }
+
+    @Command(name = "convert", mixinStandardHelpOptions = true, description = "Convert colors between RGB, hex, HSL, HSV and CIELAB, one color per line.")
+    static class ConvertCommand implements Callable<Integer> {
+        // bytes of input converted per task
+        private static final int CHUNK_BYTES = 1 << 20;
+
+        @Parameters(index = "0", arity = "0..1", description = "File with one color per line, as comma, semicolon or whitespace separated components. Reads standard input if omitted or '-'.")
+        private String input = "-";
+
+        @Option(names = {
+                "--from"}, description = "Input format: auto, rgb, hex, hsl, hsv or lab (default: auto, which reads one field as hex and three as rgb).")
+        private String from = "auto";
+
+        @Option(names = {"--to"}, required = true, description = "Output format: rgb, hex, hsl, hsv or lab.")
+        private String to;
+
+        @Option(names = {"-d", "--delimiter"}, description = "Separator between output components (default: ',').")
+        private char delimiter = ',';
+
+        @Option(names = {"-p",
+                "--parallel"}, description = "Number of converting threads (default: number of processors).")
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /** Converted lines of one chunk, cut short at the first line that failed. */
+        private record Converted(byte[] lines, int length, int count, int failedLine) {
+        }
+
+        @Override
+        public Integer call() {
+            int fromFormat = ColorText.format(from);
+            int toFormat = ColorText.format(to);
+            if (fromFormat < 0) {
+                System.err.println("Error: Unknown input format '" + from + "'.");
+                return 1;
+            }
+            if (toFormat <= ColorText.AUTO) {
+                System.err.println("Error: Unknown output format '" + to + "'.");
+                return 1;
+            }
+            if (threads < 1) {
+                System.err.println("Error: --parallel must be at least 1.");
+                return 1;
+            }
+
+            // updated from the chunk callback
+            long[] converted = {0};
+            System.out.flush();
+            var out = new FileOutputStream(FileDescriptor.out);
+            try (var in = input.equals("-") ? System.in : Files.newInputStream(Path.of(input))) {
+                LineChunks.process(in, CHUNK_BYTES, threads, data -> convert(data, fromFormat, toFormat), result -> {
+                    out.write(result.lines(), 0, result.length());
+                    if (result.failedLine() >= 0) {
+                        throw new IOException(invalidLine(converted[0] + result.failedLine(), fromFormat));
+                    }
+                    converted[0] += result.count();
+                });
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Error: Could not convert colors: " + e.getMessage());
+                return 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Error: Color conversion interrupted.");
+                return 1;
+            }
+            return 0;
+        }
+
+        private Converted convert(byte[] data, int fromFormat, int toFormat) {
+            // converted lines are rarely longer than their input
+            var result = new ByteOutput(data.length + data.length / 2);
+            var bounds = new int[ColorText.FIELD_BOUNDS];
+            var components = new double[3];
+            int[] count = {0};
+            int[] failed = {-1};
+            LineChunks.forEachLine(data, (line, start, end) -> {
+                if (failed[0] >= 0) {
+                    return;
+                }
+                int fields = ColorText.split(line, start, end, bounds);
+                // blank lines stay, so that output lines match input lines
+                if (fields > 0) {
+                    int rgb = ColorText.parse(line, bounds, fields, fromFormat);
+                    if (rgb < 0) {
+                        failed[0] = count[0];
+                        return;
+                    }
+                    ColorText.write(rgb, toFormat, delimiter, components, result);
+                }
+                result.append('\n');
+                count[0]++;
+            });
+            return new Converted(result.buffer(), result.length(), count[0], failed[0]);
+        }
+    }
 
-        // standard deviation for the Gaussian noise
-        final double sigma = 30.0;
-        final int MIN = 0, MAX = 255;
+    @Command(name = "nearest", mixinStandardHelpOptions = true, description = "Find the nearest named colors, by CIEDE2000, to each color of a list.")
+    static class NearestCommand implements Callable<Integer> {
+        // bytes of input looked up per task
+        private static final int CHUNK_BYTES = 1 << 18;
 
-        for (int i = 0; i < amount; i++) {
-            var newRgb = new int[3];
+        @Parameters(index = "0", arity = "0..1", description = "File with one color per line, as for convert. Reads standard input if omitted or '-'.")
+        private String input = "-";
 
-            // Apply Gaussian noise to each channel and clamp to [0,255].
-            for (int c = 0; c < 3; c++) {
-                double noisy = base[c] + random.nextGaussian() * sigma;
-                newRgb[c] = (int) Math.min(MAX, Math.max(MIN, noisy));
+        @Option(names = {
+                "--palette"}, description = "Palette file with one named color per line, e.g. '#1a73e8 brand blue' or a GIMP palette (default: the CSS named colors).")
+        private Path palette;
+
+        @Option(names = {"-k",
+                "--count"}, description = "Number of nearest colors to print per input color (default: 1).")
+        private int count = 1;
+
+        @Option(names = {"--from"}, description = "Input format: auto, rgb, hex, hsl, hsv or lab (default: auto).")
+        private String from = "auto";
+
+        @Option(names = {"-p", "--parallel"}, description = "Number of lookup threads (default: number of processors).")
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /** Output lines of one chunk, cut short at the first line that failed. */
+        private record Matched(byte[] lines, int length, int count, int failedLine) {
+        }
+
+        @Override
+        public Integer call() {
+            int fromFormat = ColorText.format(from);
+            if (fromFormat < 0) {
+                System.err.println("Error: Unknown input format '" + from + "'.");
+                return 1;
+            }
+            if (count < 1) {
+                System.err.println("Error: --count must be at least 1.");
+                return 1;
+            }
+            if (threads < 1) {
+                System.err.println("Error: --parallel must be at least 1.");
+                return 1;
+            }
+
+            ColorIndex index;
+            try {
+                index = palette == null ? ColorIndex.css() : ColorIndex.read(palette);
+            } catch (IOException e) {
+                System.err.println("Error: Could not read palette: " + e.getMessage());
+                return 1;
+            }
+            var names = new byte[index.size()][];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = index.name(i).getBytes(StandardCharsets.UTF_8);
             }
+            var queries = ThreadLocal.withInitial(() -> index.query(count));
+
+            // updated from the chunk callback
+            long[] matched = {0};
+            System.out.flush();
+            var out = new FileOutputStream(FileDescriptor.out);
+            try (var in = input.equals("-") ? System.in : Files.newInputStream(Path.of(input))) {
+                LineChunks.process(in, CHUNK_BYTES, threads,
+                        data -> match(data, fromFormat, index, names, queries.get()), result -> {
+                            out.write(result.lines(), 0, result.length());
+                            if (result.failedLine() >= 0) {
+                                throw new IOException(invalidLine(matched[0] + result.failedLine(), fromFormat));
+                            }
+                            matched[0] += result.count();
+                        });
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Error: Could not look up colors: " + e.getMessage());
+                return 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Error: Color lookup interrupted.");
+                return 1;
+            }
+            return 0;
+        }
 
-            similarColors[i] = rgbToHex(newRgb[0], newRgb[1], newRgb[2]);
+        /**
+         * Write, for every line, the name, hex code and CIEDE2000 difference of each
+         * match, all tab-separated.
+         */
+        private Matched match(byte[] data, int fromFormat, ColorIndex index, byte[][] names, ColorIndex.Query query) {
+            var result = new ByteOutput(data.length * 2 * query.count());
+            var bounds = new int[ColorText.FIELD_BOUNDS];
+            int[] lines = {0};
+            int[] failed = {-1};
+            LineChunks.forEachLine(data, (line, start, end) -> {
+                if (failed[0] >= 0) {
+                    return;
+                }
+                int fields = ColorText.split(line, start, end, bounds);
+                if (fields > 0) {
+                    int rgb = ColorText.parse(line, bounds, fields, fromFormat);
+                    if (rgb < 0) {
+                        failed[0] = lines[0];
+                        return;
+                    }
+                    query.find(rgb);
+                    for (int n = 0; n < query.count(); n++) {
+                        int i = query.match(n);
+                        if (n > 0) {
+                            result.append('\t');
+                        }
+                        result.append(names[i], 0, names[i].length).append('\t');
+                        ColorText.writeHex(index.color(i), result);
+                        result.append('\t').appendFixed(query.deltaE(n), 2);
+                    }
+                }
+                result.append('\n');
+                lines[0]++;
+            });
+            return new Matched(result.buffer(), result.length(), lines[0], failed[0]);
         }
+    }
+
+    @Command(name = "palette", mixinStandardHelpOptions = true, description = "Extract the dominant colors of an image (PNG, JPEG, GIF, BMP, PPM or PGM) by k-means clustering in CIELAB.")
+    static class PaletteCommand implements Callable<Integer> {
+        @Parameters(index = "0", description = "The image file.")
+        private Path image;
+
+        @Option(names = {"-k", "--colors"}, description = "Number of colors to extract (default: 5).")
+        private int colors = 5;
+
+        @Option(names = {
+                "--samples"}, description = "Pixels to sample, on an even grid over the image (default: 200000).")
+        private int samples = 200_000;
 
-        return similarColors;
+        @Option(names = {
+                "--max-iterations"}, description = "Stop refining the clusters after this many rounds (default: 50).")
+        private int maxIterations = 50;
+
+        @Option(names = {"-p",
+                "--parallel"}, description = "Number of clustering threads (default: number of processors).")
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        @Mixin
+        private RandomSource.Options randomOptions = new RandomSource.Options();
+
+        @Override
+        public Integer call() {
+            randomOptions.apply();
+            if (colors < 1 || samples < 1 || maxIterations < 1) {
+                System.err.println("Error: --colors, --samples and --max-iterations must be at least 1.");
+                return 1;
+            }
+            if (threads < 1) {
+                System.err.println("Error: --parallel must be at least 1.");
+                return 1;
+            }
+
+            int[] pixels;
+            try {
+                pixels = ImageSampler.sample(image, samples);
+            } catch (IOException e) {
+                System.err.println("Error: Could not read image: " + e.getMessage());
+                return 1;
+            }
+            if (pixels.length == 0) {
+                System.err.println("Error: The image has no opaque pixels.");
+                return 1;
+            }
+
+            LabKMeans.Clusters clusters;
+            try {
+                clusters = LabKMeans.cluster(pixels, colors, maxIterations, threads, RandomSource.current());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Error: Palette extraction interrupted.");
+                return 1;
+            }
+
+            // largest cluster first
+            var order = new Integer[clusters.count()];
+            Arrays.setAll(order, c -> c);
+            Arrays.sort(order, Comparator.comparingLong((Integer c) -> clusters.sizes()[c]).reversed());
+            var centers = clusters.centers();
+            for (int c : order) {
+                int rgb = ColorMath.fromLab(centers[c * 3], centers[c * 3 + 1], centers[c * 3 + 2]);
+                String hex = rgbToHex(ColorMath.red(rgb), ColorMath.green(rgb), ColorMath.blue(rgb));
+                System.out.printf(Locale.ROOT, "%s %5.1f%%%n", hex, 100.0 * clusters.sizes()[c] / pixels.length);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * @param line
+     *            zero-based line number
+     */
+    private static String invalidLine(long line, int format) {
+        return "line " + (line + 1) + " is not a valid "
+                + (format == ColorText.AUTO ? "" : ColorText.formatName(format) + " ") + "color";
     }
 }
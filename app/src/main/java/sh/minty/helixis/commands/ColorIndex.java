@@ -0,0 +1,546 @@
+package sh.minty.helixis.commands;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Named colors in a k-d tree over CIELAB coordinates, for nearest-color
+ * lookups.
+ *
+ * <p>
+ * The tree is stored in flat arrays: the colors of the range
+ * {@code [low, high)} are ordered so that its median along the node's split
+ * axis sits at the middle index, with the lower and upper halves on either
+ * side. Queries rank by CIEDE2000, which is not a distance the tree can prune
+ * on directly, so the search prunes on a lower bound of it instead; see
+ * {@link Query}. Results are exact. Instances are immutable and safe to share;
+ * each thread queries through its own {@link Query}.
+ * </p>
+ */
+final class ColorIndex {
+    // CIEDE2000 bounds: its rotation term R_T never exceeds sqrt(3) in magnitude,
+    // and its hue weight S_H stays below its chroma weight S_C
+    private static final double ROTATION_FACTOR = 1 - Math.sqrt(3) / 2;
+    // results remembered per query; colors of images and logs repeat a lot
+    private static final int CACHE_BITS = 12;
+
+    /** The CSS Color Module Level 4 named colors, which are the X11 colors. */
+    private static final String CSS_COLORS = """
+            aliceblue #f0f8ff
+            antiquewhite #faebd7
+            aqua #00ffff
+            aquamarine #7fffd4
+            azure #f0ffff
+            beige #f5f5dc
+            bisque #ffe4c4
+            black #000000
+            blanchedalmond #ffebcd
+            blue #0000ff
+            blueviolet #8a2be2
+            brown #a52a2a
+            burlywood #deb887
+            cadetblue #5f9ea0
+            chartreuse #7fff00
+            chocolate #d2691e
+            coral #ff7f50
+            cornflowerblue #6495ed
+            cornsilk #fff8dc
+            crimson #dc143c
+            cyan #00ffff
+            darkblue #00008b
+            darkcyan #008b8b
+            darkgoldenrod #b8860b
+            darkgray #a9a9a9
+            darkgreen #006400
+            darkgrey #a9a9a9
+            darkkhaki #bdb76b
+            darkmagenta #8b008b
+            darkolivegreen #556b2f
+            darkorange #ff8c00
+            darkorchid #9932cc
+            darkred #8b0000
+            darksalmon #e9967a
+            darkseagreen #8fbc8f
+            darkslateblue #483d8b
+            darkslategray #2f4f4f
+            darkslategrey #2f4f4f
+            darkturquoise #00ced1
+            darkviolet #9400d3
+            deeppink #ff1493
+            deepskyblue #00bfff
+            dimgray #696969
+            dimgrey #696969
+            dodgerblue #1e90ff
+            firebrick #b22222
+            floralwhite #fffaf0
+            forestgreen #228b22
+            fuchsia #ff00ff
+            gainsboro #dcdcdc
+            ghostwhite #f8f8ff
+            gold #ffd700
+            goldenrod #daa520
+            gray #808080
+            green #008000
+            greenyellow #adff2f
+            grey #808080
+            honeydew #f0fff0
+            hotpink #ff69b4
+            indianred #cd5c5c
+            indigo #4b0082
+            ivory #fffff0
+            khaki #f0e68c
+            lavender #e6e6fa
+            lavenderblush #fff0f5
+            lawngreen #7cfc00
+            lemonchiffon #fffacd
+            lightblue #add8e6
+            lightcoral #f08080
+            lightcyan #e0ffff
+            lightgoldenrodyellow #fafad2
+            lightgray #d3d3d3
+            lightgreen #90ee90
+            lightgrey #d3d3d3
+            lightpink #ffb6c1
+            lightsalmon #ffa07a
+            lightseagreen #20b2aa
+            lightskyblue #87cefa
+            lightslategray #778899
+            lightslategrey #778899
+            lightsteelblue #b0c4de
+            lightyellow #ffffe0
+            lime #00ff00
+            limegreen #32cd32
+            linen #faf0e6
+            magenta #ff00ff
+            maroon #800000
+            mediumaquamarine #66cdaa
+            mediumblue #0000cd
+            mediumorchid #ba55d3
+            mediumpurple #9370db
+            mediumseagreen #3cb371
+            mediumslateblue #7b68ee
+            mediumspringgreen #00fa9a
+            mediumturquoise #48d1cc
+            mediumvioletred #c71585
+            midnightblue #191970
+            mintcream #f5fffa
+            mistyrose #ffe4e1
+            moccasin #ffe4b5
+            navajowhite #ffdead
+            navy #000080
+            oldlace #fdf5e6
+            olive #808000
+            olivedrab #6b8e23
+            orange #ffa500
+            orangered #ff4500
+            orchid #da70d6
+            palegoldenrod #eee8aa
+            palegreen #98fb98
+            paleturquoise #afeeee
+            palevioletred #db7093
+            papayawhip #ffefd5
+            peachpuff #ffdab9
+            peru #cd853f
+            pink #ffc0cb
+            plum #dda0dd
+            powderblue #b0e0e6
+            purple #800080
+            rebeccapurple #663399
+            red #ff0000
+            rosybrown #bc8f8f
+            royalblue #4169e1
+            saddlebrown #8b4513
+            salmon #fa8072
+            sandybrown #f4a460
+            seagreen #2e8b57
+            seashell #fff5ee
+            sienna #a0522d
+            silver #c0c0c0
+            skyblue #87ceeb
+            slateblue #6a5acd
+            slategray #708090
+            slategrey #708090
+            snow #fffafa
+            springgreen #00ff7f
+            steelblue #4682b4
+            tan #d2b48c
+            teal #008080
+            thistle #d8bfd8
+            tomato #ff6347
+            turquoise #40e0d0
+            violet #ee82ee
+            wheat #f5deb3
+            white #ffffff
+            whitesmoke #f5f5f5
+            yellow #ffff00
+            yellowgreen #9acd32
+            """;
+
+    // in tree order
+    private final String[] names;
+    private final int[] colors;
+    private final double[] lab;
+    private final byte[] axes;
+    // the largest chroma in the subtree of each node, which bounds S_C for it
+    private final double[] maxChroma;
+
+    private ColorIndex(String[] names, int[] colors) {
+        int n = colors.length;
+        var order = new int[n];
+        var points = new double[n * 3];
+        var components = new double[3];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            ColorMath.toLab(colors[i], components);
+            System.arraycopy(components, 0, points, i * 3, 3);
+        }
+        this.axes = new byte[n];
+        build(order, points, 0, n);
+
+        this.names = new String[n];
+        this.colors = new int[n];
+        this.lab = new double[n * 3];
+        for (int i = 0; i < n; i++) {
+            this.names[i] = names[order[i]];
+            this.colors[i] = colors[order[i]];
+            System.arraycopy(points, order[i] * 3, this.lab, i * 3, 3);
+        }
+        this.maxChroma = new double[n];
+        maxChroma(0, n);
+    }
+
+    private double maxChroma(int low, int high) {
+        if (low >= high) {
+            return 0;
+        }
+        int mid = (low + high) >>> 1;
+        double chroma = Math.hypot(lab[mid * 3 + 1], lab[mid * 3 + 2]);
+        chroma = Math.max(chroma, Math.max(maxChroma(low, mid), maxChroma(mid + 1, high)));
+        maxChroma[mid] = chroma;
+        return chroma;
+    }
+
+    /**
+     * @return an index of the CSS named colors
+     */
+    static ColorIndex css() {
+        try {
+            return parse(CSS_COLORS.lines().toList(), "built-in colors");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read a palette with one color per line: a hex code or three RGB components,
+     * and the color's name before or after it. GIMP palettes ({@code .gpl}) fit
+     * this layout. Lines without a color, such as comments and headers, are
+     * skipped, and a color without a name is named after its hex code. Words of a
+     * name are joined by single spaces.
+     */
+    static ColorIndex read(Path palette) throws IOException {
+        return parse(Files.readAllLines(palette, StandardCharsets.UTF_8), palette.toString());
+    }
+
+    private static ColorIndex parse(List<String> lines, String source) throws IOException {
+        var names = new ArrayList<String>();
+        var colors = new ArrayList<Integer>();
+        for (String line : lines) {
+            String[] fields = line.trim().split("[\\s,;]+");
+            int rgb = -1;
+            String name = "";
+            if (fields.length >= 3 && isComponent(fields[0]) && isComponent(fields[1]) && isComponent(fields[2])) {
+                rgb = ColorMath.rgb(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                        Integer.parseInt(fields[2]));
+                name = String.join(" ", Arrays.copyOfRange(fields, 3, fields.length));
+            } else if (fields.length >= 1 && isHex(fields[0])) {
+                rgb = hex(fields[0]);
+                name = String.join(" ", Arrays.copyOfRange(fields, 1, fields.length));
+            } else if (fields.length >= 2 && isHex(fields[fields.length - 1])) {
+                rgb = hex(fields[fields.length - 1]);
+                name = String.join(" ", Arrays.copyOfRange(fields, 0, fields.length - 1));
+            }
+            if (rgb < 0) {
+                continue;
+            }
+            if (name.isEmpty()) {
+                var hex = new ByteOutput(7);
+                ColorText.writeHex(rgb, hex);
+                name = new String(hex.buffer(), 0, hex.length(), StandardCharsets.US_ASCII);
+            }
+            names.add(name);
+            colors.add(rgb);
+        }
+        if (colors.isEmpty()) {
+            throw new IOException(source + " contains no colors");
+        }
+        return new ColorIndex(names.toArray(String[]::new), colors.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static boolean isComponent(String field) {
+        if (field.isEmpty() || field.length() > 3 || !field.chars().allMatch(Character::isDigit)) {
+            return false;
+        }
+        return Integer.parseInt(field) <= 255;
+    }
+
+    // a palette hex code needs its '#' so names like "bad" or "cafe" stay names
+    private static boolean isHex(String field) {
+        return field.startsWith("#") && hex(field) >= 0;
+    }
+
+    private static int hex(String field) {
+        byte[] bytes = field.getBytes(StandardCharsets.US_ASCII);
+        return ColorText.parseHex(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Arrange {@code order[low..high)} as a subtree split on the axis along which
+     * its points spread widest.
+     */
+    private void build(int[] order, double[] points, int low, int high) {
+        if (high - low <= 1) {
+            return;
+        }
+        int axis = 0;
+        double widest = -1;
+        for (int d = 0; d < 3; d++) {
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (int i = low; i < high; i++) {
+                double v = points[order[i] * 3 + d];
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            if (max - min > widest) {
+                widest = max - min;
+                axis = d;
+            }
+        }
+        int mid = (low + high) >>> 1;
+        select(order, points, axis, low, high - 1, mid);
+        axes[mid] = (byte) axis;
+        build(order, points, low, mid);
+        build(order, points, mid + 1, high);
+    }
+
+    /**
+     * Partially sort {@code order[left..right]} by coordinate {@code axis} so that
+     * position {@code k} holds the element that belongs there, with no greater
+     * element before it and no smaller one after it.
+     */
+    private static void select(int[] order, double[] points, int axis, int left, int right, int k) {
+        while (left < right) {
+            double pivot = points[order[(left + right) >>> 1] * 3 + axis];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (points[order[i] * 3 + axis] < pivot) {
+                    i++;
+                }
+                while (points[order[j] * 3 + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return colors.length;
+    }
+
+    String name(int i) {
+        return names[i];
+    }
+
+    int color(int i) {
+        return colors[i];
+    }
+
+    /**
+     * @return a query for the {@code k} nearest colors, for use by one thread
+     */
+    Query query(int k) {
+        return new Query(Math.min(k, size()));
+    }
+
+    /**
+     * Scratch space and results of nearest-color lookups.
+     *
+     * <p>
+     * For colors {@code p} and {@code q}, CIEDE2000 squared is at least
+     * {@code dL^2 / S_L^2 + (1 - |R_T|/2) (da^2 + db^2) / S_C^2}: the rotation term
+     * can take at most {@code |R_T|/2} of the chroma and hue terms, whose
+     * unweighted sum is the squared distance in the stretched {@code a'b'} plane
+     * and so at least {@code da^2 + db^2}. With {@code S_L} at its largest for the
+     * query and {@code S_C} at its largest for the chroma found in a subtree, the
+     * weighted distance from the query to the subtree's region bounds CIEDE2000 to
+     * every color in it from below.
+     * </p>
+     */
+    final class Query {
+        private final int k;
+        private final double[] components = new double[3];
+        // distance from the query to the current subtree's region along each axis
+        private final double[] offsets = new double[3];
+        private final int[] matches;
+        private final double[] deltaE;
+        private int found;
+        private double l;
+        private double a;
+        private double b;
+        private double chroma;
+        private double lightnessWeight;
+        // direct-mapped: each color has one slot, and a new color evicts the old
+        private final int[] cachedColors = new int[1 << CACHE_BITS];
+        private final int[] cachedMatches;
+        private final double[] cachedDeltaE;
+
+        private Query(int k) {
+            this.k = k;
+            this.matches = new int[k];
+            this.deltaE = new double[k];
+            Arrays.fill(cachedColors, -1);
+            this.cachedMatches = new int[cachedColors.length * k];
+            this.cachedDeltaE = new double[cachedColors.length * k];
+        }
+
+        /**
+         * Find the nearest colors to {@code rgb}, available through {@link #match} and
+         * {@link #deltaE} from nearest to farthest.
+         */
+        void find(int rgb) {
+            int slot = (rgb * 0x9E3779B1) >>> (32 - CACHE_BITS);
+            if (cachedColors[slot] == rgb) {
+                System.arraycopy(cachedMatches, slot * k, matches, 0, k);
+                System.arraycopy(cachedDeltaE, slot * k, deltaE, 0, k);
+                return;
+            }
+            ColorMath.toLab(rgb, components);
+            l = components[0];
+            a = components[1];
+            b = components[2];
+
+            // S_L grows with the distance of the mean lightness from 50
+            double meanL = Math.abs(l / 2 - 50) > Math.abs((l + 100) / 2 - 50) ? l / 2 : (l + 100) / 2;
+            double l50 = (meanL - 50) * (meanL - 50);
+            double sl = 1 + 0.015 * l50 / Math.sqrt(20 + l50);
+            lightnessWeight = 1 / (sl * sl);
+            chroma = Math.hypot(a, b);
+
+            found = 0;
+            offsets[0] = 0;
+            offsets[1] = 0;
+            offsets[2] = 0;
+            search(0, size());
+
+            cachedColors[slot] = rgb;
+            System.arraycopy(matches, 0, cachedMatches, slot * k, k);
+            System.arraycopy(deltaE, 0, cachedDeltaE, slot * k, k);
+        }
+
+        /**
+         * @return the weight of {@code da^2 + db^2} for colors of chroma up to
+         *         {@code maxChroma}
+         */
+        private double chromaWeight(double maxChroma) {
+            // C' stretches a by at most 1.5
+            double sc = 1 + 0.045 * 1.5 * (chroma + maxChroma) / 2;
+            return ROTATION_FACTOR / (sc * sc);
+        }
+
+        private void search(int low, int high) {
+            if (low >= high) {
+                return;
+            }
+            int mid = (low + high) >>> 1;
+            double chromaWeight = chromaWeight(maxChroma[mid]);
+            // the lower bound for the whole subtree, from its offsets on each axis
+            if (found == k && lightnessWeight * offsets[0] * offsets[0]
+                    + chromaWeight * (offsets[1] * offsets[1] + offsets[2] * offsets[2]) >= worst()) {
+                return;
+            }
+
+            double dl = l - lab[mid * 3];
+            double da = a - lab[mid * 3 + 1];
+            double db = b - lab[mid * 3 + 2];
+            // the bound is cheap; CIEDE2000 only for colors that may make the cut
+            if (found < k || lightnessWeight * dl * dl + chromaWeight * (da * da + db * db) < worst()) {
+                double limit = found < k ? Double.POSITIVE_INFINITY : deltaE[k - 1];
+                offer(mid, ColorMath.deltaE2000(l, a, b, lab[mid * 3], lab[mid * 3 + 1], lab[mid * 3 + 2], limit));
+            }
+
+            int axis = axes[mid];
+            double diff = axis == 0 ? dl : axis == 1 ? da : db;
+            // the query's side first, then the other side, where the offset on the split
+            // axis grows
+            double old = offsets[axis];
+            if (diff < 0) {
+                search(low, mid);
+                offsets[axis] = diff;
+                search(mid + 1, high);
+            } else {
+                search(mid + 1, high);
+                offsets[axis] = diff;
+                search(low, mid);
+            }
+            offsets[axis] = old;
+        }
+
+        // squared CIEDE2000 of the farthest match kept so far
+        private double worst() {
+            return deltaE[k - 1] * deltaE[k - 1];
+        }
+
+        private void offer(int i, double e) {
+            if (found == k && e >= deltaE[k - 1]) {
+                return;
+            }
+            int at = found < k ? found++ : k - 1;
+            while (at > 0 && deltaE[at - 1] > e) {
+                matches[at] = matches[at - 1];
+                deltaE[at] = deltaE[at - 1];
+                at--;
+            }
+            matches[at] = i;
+            deltaE[at] = e;
+        }
+
+        /**
+         * @return the number of matches, {@code k} or the index size if smaller
+         */
+        int count() {
+            return k;
+        }
+
+        /**
+         * @return index of the {@code n}th nearest color
+         */
+        int match(int n) {
+            return matches[n];
+        }
+
+        double deltaE(int n) {
+            return deltaE[n];
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package sh.minty.helixis.commands;
+
+/**
+ * Conversions between 8-bit sRGB and the HSL, HSV and CIELAB color spaces.
+ *
+ * <p>
+ * Colors are passed as {@code 0xRRGGBB} ints, and the components of the other
+ * spaces are written into a caller-supplied {@code double[3]}, so that bulk
+ * conversion allocates nothing per color. The sRGB transfer curve is applied
+ * through lookup tables in both directions. HSL and HSV components are hue in
+ * degrees and saturation, lightness and value in percent; CIELAB is relative to
+ * the D65 white point.
+ * </p>
+ */
+final class ColorMath {
+    // D65 reference white
+    private static final double WHITE_X = 0.95047;
+    private static final double WHITE_Y = 1.0;
+    private static final double WHITE_Z = 1.08883;
+    private static final double EPSILON = 216.0 / 24389.0;
+    private static final double KAPPA = 24389.0 / 27.0;
+    private static final double GAMUT_SLACK = 1e-6;
+    // 25^7, from the chroma compensation of CIEDE2000
+    private static final double POW25_7 = 6103515625.0;
+    private static final double COS_30 = Math.cos(Math.toRadians(30));
+    private static final double SIN_30 = Math.sin(Math.toRadians(30));
+    private static final double COS_6 = Math.cos(Math.toRadians(6));
+    private static final double SIN_6 = Math.sin(Math.toRadians(6));
+    private static final double COS_63 = Math.cos(Math.toRadians(63));
+    private static final double SIN_63 = Math.sin(Math.toRadians(63));
+    private static final double SIN_60 = Math.sin(Math.toRadians(60));
+
+    // linear-light value of every 8-bit sRGB component
+    private static final double[] TO_LINEAR = new double[256];
+    // linear-light value halfway between consecutive components, in sRGB terms
+    private static final double[] LINEAR_THRESHOLDS = new double[255];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            TO_LINEAR[i] = decode(i / 255.0);
+        }
+        for (int i = 0; i < 255; i++) {
+            LINEAR_THRESHOLDS[i] = decode((i + 0.5) / 255.0);
+        }
+    }
+
+    private ColorMath() {
+    }
+
+    private static double decode(double v) {
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    static int rgb(int r, int g, int b) {
+        return r << 16 | g << 8 | b;
+    }
+
+    static int red(int rgb) {
+        return rgb >>> 16 & 0xFF;
+    }
+
+    static int green(int rgb) {
+        return rgb >>> 8 & 0xFF;
+    }
+
+    static int blue(int rgb) {
+        return rgb & 0xFF;
+    }
+
+    /**
+     * @return the linear-light value, 0 to 1, of an 8-bit sRGB component
+     */
+    static double toLinear(int component) {
+        return TO_LINEAR[component];
+    }
+
+    /**
+     * @return the nearest 8-bit sRGB component to a linear-light value, clamped to
+     *         0-255
+     */
+    static int fromLinear(double linear) {
+        // the number of thresholds at or below the value is the component
+        int low = 0;
+        int high = LINEAR_THRESHOLDS.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (LINEAR_THRESHOLDS[mid] <= linear) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return an 8-bit component from 0 to 1, rounded and clamped
+     */
+    private static int component(double v) {
+        return (int) Math.round(Math.min(1.0, Math.max(0.0, v)) * 255.0);
+    }
+
+    private static double hue(double r, double g, double b, double max, double delta) {
+        if (delta == 0) {
+            return 0;
+        }
+        double h;
+        if (max == r) {
+            h = (g - b) / delta;
+            if (h < 0) {
+                h += 6;
+            }
+        } else if (max == g) {
+            h = (b - r) / delta + 2;
+        } else {
+            h = (r - g) / delta + 4;
+        }
+        return h * 60;
+    }
+
+    static void toHsl(int rgb, double[] hsl) {
+        double r = red(rgb) / 255.0;
+        double g = green(rgb) / 255.0;
+        double b = blue(rgb) / 255.0;
+        double max = Math.max(r, Math.max(g, b));
+        double min = Math.min(r, Math.min(g, b));
+        double delta = max - min;
+        double l = (max + min) / 2;
+        double s = delta == 0 ? 0 : delta / (1 - Math.abs(2 * l - 1));
+        hsl[0] = hue(r, g, b, max, delta);
+        hsl[1] = s * 100;
+        hsl[2] = l * 100;
+    }
+
+    static void toHsv(int rgb, double[] hsv) {
+        double r = red(rgb) / 255.0;
+        double g = green(rgb) / 255.0;
+        double b = blue(rgb) / 255.0;
+        double max = Math.max(r, Math.max(g, b));
+        double min = Math.min(r, Math.min(g, b));
+        double delta = max - min;
+        hsv[0] = hue(r, g, b, max, delta);
+        hsv[1] = max == 0 ? 0 : delta / max * 100;
+        hsv[2] = max * 100;
+    }
+
+    /**
+     * @param h
+     *            hue in degrees, taken modulo 360
+     * @param s
+     *            saturation, 0-100
+     * @param l
+     *            lightness, 0-100
+     */
+    static int fromHsl(double h, double s, double l) {
+        s /= 100;
+        l /= 100;
+        double chroma = (1 - Math.abs(2 * l - 1)) * s;
+        return fromChroma(h, chroma, l - chroma / 2);
+    }
+
+    /**
+     * @param h
+     *            hue in degrees, taken modulo 360
+     * @param s
+     *            saturation, 0-100
+     * @param v
+     *            value, 0-100
+     */
+    static int fromHsv(double h, double s, double v) {
+        double chroma = v / 100 * s / 100;
+        return fromChroma(h, chroma, v / 100 - chroma);
+    }
+
+    private static int fromChroma(double h, double chroma, double m) {
+        h = (h % 360 + 360) % 360 / 60;
+        double x = chroma * (1 - Math.abs(h % 2 - 1));
+        double r, g, b;
+        switch ((int) h) {
+            case 0 -> {
+                r = chroma;
+                g = x;
+                b = 0;
+            }
+            case 1 -> {
+                r = x;
+                g = chroma;
+                b = 0;
+            }
+            case 2 -> {
+                r = 0;
+                g = chroma;
+                b = x;
+            }
+            case 3 -> {
+                r = 0;
+                g = x;
+                b = chroma;
+            }
+            case 4 -> {
+                r = x;
+                g = 0;
+                b = chroma;
+            }
+            default -> {
+                r = chroma;
+                g = 0;
+                b = x;
+            }
+        }
+        return rgb(component(r + m), component(g + m), component(b + m));
+    }
+
+    static void toLab(int rgb, double[] lab) {
+        double r = TO_LINEAR[red(rgb)];
+        double g = TO_LINEAR[green(rgb)];
+        double b = TO_LINEAR[blue(rgb)];
+        double fx = f((0.4124564 * r + 0.3575761 * g + 0.1804375 * b) / WHITE_X);
+        double fy = f((0.2126729 * r + 0.7151522 * g + 0.0721750 * b) / WHITE_Y);
+        double fz = f((0.0193339 * r + 0.1191920 * g + 0.9503041 * b) / WHITE_Z);
+        lab[0] = 116 * fy - 16;
+        lab[1] = 500 * (fx - fy);
+        lab[2] = 200 * (fy - fz);
+    }
+
+    private static double f(double t) {
+        return t > EPSILON ? Math.cbrt(t) : (KAPPA * t + 16) / 116;
+    }
+
+    private static double fInverse(double t) {
+        double cube = t * t * t;
+        return cube > EPSILON ? cube : (116 * t - 16) / KAPPA;
+    }
+
+    /**
+     * @return the nearest sRGB color, with each component clamped to the gamut
+     */
+    static int fromLab(double l, double a, double b) {
+        return fromLab(l, a, b, true);
+    }
+
+    /**
+     * @return the nearest sRGB color, or -1 if the Lab color is outside the sRGB
+     *         gamut
+     */
+    static int fromLabInGamut(double l, double a, double b) {
+        return fromLab(l, a, b, false);
+    }
+
+    private static int fromLab(double l, double a, double b, boolean clamp) {
+        double fy = (l + 16) / 116;
+        double x = WHITE_X * fInverse(fy + a / 500);
+        double y = WHITE_Y * (l > KAPPA * EPSILON ? fy * fy * fy : l / KAPPA);
+        double z = WHITE_Z * fInverse(fy - b / 200);
+        double r = 3.2404542 * x - 1.5371385 * y - 0.4985314 * z;
+        double g = -0.9692660 * x + 1.8760108 * y + 0.0415560 * z;
+        double bl = 0.0556434 * x - 0.2040259 * y + 1.0572252 * z;
+        if (!clamp && (outOfGamut(r) || outOfGamut(g) || outOfGamut(bl))) {
+            return -1;
+        }
+        return rgb(fromLinear(r), fromLinear(g), fromLinear(bl));
+    }
+
+    private static boolean outOfGamut(double linear) {
+        // slack for the rounding of the matrices, which puts white a hair above 1
+        return linear < -GAMUT_SLACK || linear > 1 + GAMUT_SLACK;
+    }
+
+    /**
+     * CIEDE2000 color difference between two Lab colors (Sharma, Wu and Dalal,
+     * 2005), with unit weighting factors.
+     *
+     * <p>
+     * Computed with one arc tangent and no cosines: the hue difference term comes
+     * from the chroma plane distance, the mean hue from the sum of the two hue
+     * directions, and the terms of T from multiple-angle identities.
+     * </p>
+     */
+    static double deltaE2000(double l1, double a1, double b1, double l2, double a2, double b2) {
+        return deltaE2000(l1, a1, b1, l2, a2, b2, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * {@link #deltaE2000(double, double, double, double, double, double)} for
+     * searches that only care about differences below {@code limit}.
+     *
+     * @return the difference if it is below {@code limit}, otherwise some value not
+     *         below {@code limit}
+     */
+    static double deltaE2000(double l1, double a1, double b1, double l2, double a2, double b2, double limit) {
+        double c1 = Math.sqrt(a1 * a1 + b1 * b1);
+        double c2 = Math.sqrt(a2 * a2 + b2 * b2);
+        double meanC7 = pow7((c1 + c2) / 2);
+        double g = 0.5 * (1 - Math.sqrt(meanC7 / (meanC7 + POW25_7)));
+        double ap1 = (1 + g) * a1;
+        double ap2 = (1 + g) * a2;
+        double cp1 = Math.sqrt(ap1 * ap1 + b1 * b1);
+        double cp2 = Math.sqrt(ap2 * ap2 + b2 * b2);
+
+        double deltaL = l2 - l1;
+        double deltaC = cp2 - cp1;
+        // dH'^2 + dC'^2 is the squared distance in the a'b' plane; dH' turns with hue
+        double da = ap2 - ap1;
+        double db = b2 - b1;
+        double deltaH = Math.sqrt(Math.max(0, da * da + db * db - deltaC * deltaC));
+        if (ap1 * b2 - b1 * ap2 < 0) {
+            deltaH = -deltaH;
+        }
+
+        // the mean hue bisects the smaller angle between the two hues, where the
+        // sum of their unit vectors points; without chroma a color has no hue
+        double hx = 0;
+        double hy = 0;
+        if (cp1 != 0) {
+            hx += ap1 / cp1;
+            hy += b1 / cp1;
+        }
+        if (cp2 != 0) {
+            hx += ap2 / cp2;
+            hy += b2 / cp2;
+        }
+        double norm = Math.sqrt(hx * hx + hy * hy);
+        double cosH;
+        double sinH;
+        if (norm > 1e-12) {
+            cosH = hx / norm;
+            sinH = hy / norm;
+        } else if (cp1 != 0 && cp2 != 0) {
+            // opposite hues: the mean is a quarter turn on from the one below 180 degrees
+            boolean firstBelow180 = b1 > 0 || (b1 == 0 && ap1 > 0);
+            double x = firstBelow180 ? ap1 / cp1 : ap2 / cp2;
+            double y = firstBelow180 ? b1 / cp1 : b2 / cp2;
+            cosH = -y;
+            sinH = x;
+        } else {
+            cosH = 1;
+            sinH = 0;
+        }
+        double cos2H = cosH * cosH - sinH * sinH;
+        double sin2H = 2 * sinH * cosH;
+        double cos3H = cosH * (4 * cosH * cosH - 3);
+        double sin3H = sinH * (3 - 4 * sinH * sinH);
+        double cos4H = cos2H * cos2H - sin2H * sin2H;
+        double sin4H = 2 * sin2H * cos2H;
+        double t = 1 - 0.17 * (cosH * COS_30 + sinH * SIN_30) + 0.24 * cos2H + 0.32 * (cos3H * COS_6 - sin3H * SIN_6)
+                - 0.20 * (cos4H * COS_63 + sin4H * SIN_63);
+
+        double meanL = (l1 + l2) / 2;
+        double meanCp = (cp1 + cp2) / 2;
+        double meanCp7 = pow7(meanCp);
+        double rc = 2 * Math.sqrt(meanCp7 / (meanCp7 + POW25_7));
+        double l50 = (meanL - 50) * (meanL - 50);
+        double sl = 1 + 0.015 * l50 / Math.sqrt(20 + l50);
+        double sc = 1 + 0.045 * meanCp;
+        double sh = 1 + 0.015 * meanCp * t;
+        double dl = deltaL / sl;
+        double dc = deltaC / sc;
+        double dh = deltaH / sh;
+        double sum = dl * dl + dc * dc + dh * dh;
+        // the rotation term is at most rc * sin(60 degrees) * |dc * dh|
+        if (sum - rc * SIN_60 * Math.abs(dc * dh) >= limit * limit) {
+            return Math.sqrt(sum);
+        }
+
+        double meanHp = Math.toDegrees(Math.atan2(sinH, cosH));
+        if (meanHp < 0) {
+            meanHp += 360;
+        }
+        double hueOffset = (meanHp - 275) / 25;
+        double deltaTheta = 30 * Math.exp(-hueOffset * hueOffset);
+        double rt = -Math.sin(Math.toRadians(2 * deltaTheta)) * rc;
+        return Math.sqrt(sum + rt * dc * dh);
+    }
+
+    private static double pow7(double v) {
+        double v2 = v * v;
+        return v2 * v2 * v2 * v;
+    }
+}
@@ -0,0 +1,216 @@
+package sh.minty.helixis.commands;
+
+/**
+ * Parsing and formatting of colors as text, working on byte arrays so that bulk
+ * input needs no {@link String} per line.
+ *
+ * <p>
+ * A color is written as a hex code ({@code #rrggbb}, {@code #rgb}, the
+ * {@code #} optional) or as three components separated by commas, semicolons or
+ * whitespace, each optionally followed by {@code %}. Parsed colors are
+ * {@code 0xRRGGBB} ints as used by {@link ColorMath}.
+ * </p>
+ */
+final class ColorText {
+    static final int AUTO = 0;
+    static final int RGB = 1;
+    static final int HEX = 2;
+    static final int HSL = 3;
+    static final int HSV = 4;
+    static final int LAB = 5;
+    private static final String[] FORMATS = {"auto", "rgb", "hex", "hsl", "hsv", "lab"};
+
+    static final int MAX_FIELDS = 3;
+    /** Length of the scratch array {@link #split} records field bounds in. */
+    static final int FIELD_BOUNDS = MAX_FIELDS * 2;
+
+    private ColorText() {
+    }
+
+    /**
+     * @return the format called {@code name}, ignoring case, or -1
+     */
+    static int format(String name) {
+        for (int i = 0; i < FORMATS.length; i++) {
+            if (FORMATS[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static String formatName(int format) {
+        return FORMATS[format];
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ',' || b == ';' || b == ' ' || b == '\t';
+    }
+
+    /**
+     * Find the fields of {@code line[start..end)}, recording the start and end of
+     * field {@code i} at {@code bounds[2i]} and {@code bounds[2i+1]}.
+     *
+     * @return the number of fields, or {@link #MAX_FIELDS} + 1 if there are too
+     *         many
+     */
+    static int split(byte[] line, int start, int end, int[] bounds) {
+        int fields = 0;
+        int i = start;
+        while (true) {
+            while (i < end && isSeparator(line[i])) {
+                i++;
+            }
+            if (i == end) {
+                return fields;
+            }
+            if (fields == MAX_FIELDS) {
+                return MAX_FIELDS + 1;
+            }
+            bounds[fields * 2] = i;
+            while (i < end && !isSeparator(line[i])) {
+                i++;
+            }
+            bounds[fields * 2 + 1] = i;
+            fields++;
+        }
+    }
+
+    /**
+     * Parse the fields found by {@link #split}. {@link #AUTO} reads one field as a
+     * hex code and three as RGB components.
+     *
+     * @return the color as {@code 0xRRGGBB}, or -1 if the fields are not a valid
+     *         color in {@code format}
+     */
+    static int parse(byte[] line, int[] bounds, int fields, int format) {
+        if (format == AUTO) {
+            format = fields == 1 ? HEX : RGB;
+        }
+        if (format == HEX) {
+            return fields == 1 ? parseHex(line, bounds[0], bounds[1]) : -1;
+        }
+        if (fields != 3) {
+            return -1;
+        }
+        double a = parseNumber(line, bounds[0], bounds[1]);
+        double b = parseNumber(line, bounds[2], bounds[3]);
+        double c = parseNumber(line, bounds[4], bounds[5]);
+        if (Double.isNaN(a) || Double.isNaN(b) || Double.isNaN(c)) {
+            return -1;
+        }
+        return switch (format) {
+            case RGB ->
+                isComponent(a) && isComponent(b) && isComponent(c) ? ColorMath.rgb((int) a, (int) b, (int) c) : -1;
+            case HSL -> isPercent(b) && isPercent(c) ? ColorMath.fromHsl(a, b, c) : -1;
+            case HSV -> isPercent(b) && isPercent(c) ? ColorMath.fromHsv(a, b, c) : -1;
+            default -> a >= 0 && a <= 100 ? ColorMath.fromLab(a, b, c) : -1;
+        };
+    }
+
+    private static boolean isComponent(double v) {
+        return v >= 0 && v <= 255 && v == Math.rint(v);
+    }
+
+    private static boolean isPercent(double v) {
+        return v >= 0 && v <= 100;
+    }
+
+    /**
+     * @return the color of a hex code, with or without {@code #}, or -1
+     */
+    static int parseHex(byte[] line, int start, int end) {
+        if (start < end && line[start] == '#') {
+            start++;
+        }
+        int digits = end - start;
+        if (digits != 6 && digits != 3) {
+            return -1;
+        }
+        int rgb = 0;
+        for (int i = start; i < end; i++) {
+            int nibble = UuidText.hexValue(line[i]);
+            if (nibble < 0) {
+                return -1;
+            }
+            // a three digit shorthand doubles every digit: #abc is #aabbcc
+            rgb = digits == 3 ? (rgb << 8) | nibble << 4 | nibble : (rgb << 4) | nibble;
+        }
+        return rgb;
+    }
+
+    /**
+     * Parse a plain decimal number, optionally followed by {@code %}.
+     *
+     * @return the number, or NaN if the field is not one
+     */
+    static double parseNumber(byte[] line, int start, int end) {
+        if (end > start && line[end - 1] == '%') {
+            end--;
+        }
+        boolean negative = start < end && line[start] == '-';
+        if (negative || (start < end && line[start] == '+')) {
+            start++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (int i = start; i < end; i++) {
+            byte b = line[i];
+            if (b >= '0' && b <= '9') {
+                // digits past what a long holds cannot change a color
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                } else if (decimals < 0) {
+                    return Double.NaN;
+                }
+            } else if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        double value = decimals > 0 ? mantissa / Math.pow(10, decimals) : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Append {@code rgb} in {@code format}, with {@code delimiter} between
+     * components. HSL and HSV get one decimal, Lab two.
+     *
+     * @param components
+     *            scratch space for three components
+     */
+    static void write(int rgb, int format, char delimiter, double[] components, ByteOutput out) {
+        switch (format) {
+            case HEX -> writeHex(rgb, out);
+            case RGB -> out.append(ColorMath.red(rgb)).append(delimiter).append(ColorMath.green(rgb)).append(delimiter)
+                    .append(ColorMath.blue(rgb));
+            default -> {
+                int decimals = 1;
+                if (format == HSL) {
+                    ColorMath.toHsl(rgb, components);
+                } else if (format == HSV) {
+                    ColorMath.toHsv(rgb, components);
+                } else {
+                    ColorMath.toLab(rgb, components);
+                    decimals = 2;
+                }
+                out.appendFixed(components[0], decimals).append(delimiter).appendFixed(components[1], decimals)
+                        .append(delimiter).appendFixed(components[2], decimals);
+            }
+        }
+    }
+
+    static void writeHex(int rgb, ByteOutput out) {
+        out.append('#').appendHexByte(ColorMath.red(rgb)).appendHexByte(ColorMath.green(rgb))
+                .appendHexByte(ColorMath.blue(rgb));
+    }
+}
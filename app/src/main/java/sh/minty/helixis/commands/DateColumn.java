@@ -0,0 +1,245 @@
+package sh.minty.helixis.commands;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import picocli.CommandLine.Option;
+
+/**
+ * Bulk conversion of the dates in a column of text, one date per line, for the
+ * date subcommands that otherwise convert a single argument.
+ *
+ * <p>
+ * Lines are converted in chunks on several threads with
+ * {@link LineChunks#process}, so output stays in input order, and each chunk is
+ * written out in one piece. Only the selected field of a line is replaced; the
+ * rest of the line is copied unchanged.
+ * </p>
+ */
+final class DateColumn {
+    // bytes of input converted per task
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int SECONDS_PER_DAY = 86_400;
+    // epoch days of 0001-01-01 and 9999-12-31
+    private static final long FIRST_DAY = -719_162;
+    private static final long LAST_DAY = 2_932_896;
+
+    /** Converts the date in one field. */
+    @FunctionalInterface
+    interface Converter {
+        /**
+         * Append the conversion of {@code line[start..end)} to {@code out}.
+         *
+         * @throws DateTimeException
+         *             if the field is not a date in the expected format
+         */
+        void convert(byte[] line, int start, int end, ByteOutput out);
+    }
+
+    /**
+     * Options for commands that can convert a column of dates.
+     */
+    static class Options {
+        @Option(names = {
+                "--stdin"}, description = "Read dates from standard input, one per line, instead of the argument.")
+        boolean stdin;
+
+        @Option(names = {"--file"}, description = "Read dates from this file, one per line, instead of the argument.")
+        Path file;
+
+        @Option(names = {
+                "--column"}, description = "Convert only this field of each line, counting from 1, and keep the others (default: the whole line).")
+        int column;
+
+        @Option(names = {"--delimiter"}, description = "Field separator for --column (default: ',').")
+        char delimiter = ',';
+
+        @Option(names = {
+                "--keep-invalid"}, description = "Copy lines whose date cannot be converted, such as a header, unchanged instead of stopping.")
+        boolean keepInvalid;
+
+        @Option(names = {"-p",
+                "--parallel"}, description = "Number of converting threads with --stdin or --file (default: number of processors).")
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * @return whether dates are read from lines rather than the argument
+         */
+        boolean isBatch() {
+            return stdin || file != null;
+        }
+
+        /**
+         * Check the options against whether a date argument was given.
+         *
+         * @return an error message, or null if the options are usable
+         */
+        String validate(boolean hasArgument) {
+            if (stdin && file != null) {
+                return "--stdin and --file cannot be used together.";
+            }
+            if (isBatch() == hasArgument) {
+                return hasArgument
+                        ? "Give either a date or --stdin/--file, not both."
+                        : "Give a date, or --stdin or --file to convert lines.";
+            }
+            if (column < 0) {
+                return "--column must be at least 1.";
+            }
+            if (threads < 1) {
+                return "--parallel must be at least 1.";
+            }
+            return null;
+        }
+    }
+
+    /** Converted lines of one chunk, cut short at the first line that failed. */
+    private record Converted(byte[] lines, int length, int count, int failedLine, String failure) {
+    }
+
+    private DateColumn() {
+    }
+
+    /**
+     * @return the field as a string
+     */
+    static String text(byte[] line, int start, int end) {
+        return new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append an epoch day as {@code yyyy-MM-dd}.
+     *
+     * @return false, having appended nothing, if the year is not from 1 to 9999
+     */
+    static boolean appendDate(long epochDay, ByteOutput out) {
+        if (epochDay < FIRST_DAY || epochDay > LAST_DAY) {
+            return false;
+        }
+        // the proleptic Gregorian calendar in 400-year eras of years starting in March
+        int shifted = (int) epochDay + 719_468;
+        int era = Math.floorDiv(shifted, 146_097);
+        int dayOfEra = shifted - era * 146_097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        int year = era * 400 + yearOfEra + (month <= 2 ? 1 : 0);
+        out.appendDigits(year, 4).append('-').appendDigits(month, 2).append('-').appendDigits(day, 2);
+        return true;
+    }
+
+    /**
+     * Append a local date-time, given as seconds since 1970-01-01T00:00, as
+     * {@code yyyy-MM-dd HH:mm:ss} with {@code separator} between date and time.
+     *
+     * @return false, having appended nothing, if the year is not from 1 to 9999
+     */
+    static boolean appendDateTime(long localSecond, char separator, ByteOutput out) {
+        if (!appendDate(Math.floorDiv(localSecond, SECONDS_PER_DAY), out)) {
+            return false;
+        }
+        int second = Math.floorMod(localSecond, SECONDS_PER_DAY);
+        out.append(separator).appendDigits(second / 3600, 2).append(':').appendDigits(second / 60 % 60, 2).append(':')
+                .appendDigits(second % 60, 2);
+        return true;
+    }
+
+    /**
+     * Convert every line of the input selected by {@code options}, writing the
+     * results to standard output.
+     *
+     * @return the exit code
+     */
+    static int run(Options options, Converter converter) {
+        // updated from the chunk callback
+        long[] converted = {0};
+        System.out.flush();
+        var out = new FileOutputStream(FileDescriptor.out);
+        try (var in = options.stdin ? System.in : Files.newInputStream(options.file)) {
+            LineChunks.process(in, CHUNK_BYTES, options.threads, data -> convert(data, options, converter), result -> {
+                out.write(result.lines(), 0, result.length());
+                if (result.failedLine() >= 0) {
+                    throw new IOException("line " + (converted[0] + result.failedLine() + 1) + ": " + result.failure());
+                }
+                converted[0] += result.count();
+            });
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Error: Could not convert dates: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Error: Date conversion interrupted.");
+            return 1;
+        }
+        return 0;
+    }
+
+    private static Converted convert(byte[] data, Options options, Converter converter) {
+        var result = new ByteOutput(data.length + data.length / 2);
+        int[] count = {0};
+        int[] failed = {-1};
+        String[] failure = {null};
+        LineChunks.forEachLine(data, (line, start, end) -> {
+            if (failed[0] >= 0) {
+                return;
+            }
+            // blank lines stay, so that output lines match input lines
+            if (end > start) {
+                int fieldStart = start;
+                int fieldEnd = end;
+                if (options.column > 0) {
+                    fieldStart = field(line, start, end, options.column, options.delimiter);
+                    fieldEnd = Math.max(fieldStart, start);
+                    while (fieldEnd < end && line[fieldEnd] != options.delimiter) {
+                        fieldEnd++;
+                    }
+                }
+                int mark = result.length();
+                try {
+                    if (fieldStart < 0) {
+                        throw new DateTimeException("line has fewer than " + options.column + " fields");
+                    }
+                    result.append(line, start, fieldStart);
+                    converter.convert(line, fieldStart, fieldEnd, result);
+                    result.append(line, fieldEnd, end);
+                } catch (DateTimeException e) {
+                    result.truncate(mark);
+                    if (!options.keepInvalid) {
+                        failed[0] = count[0];
+                        failure[0] = e.getMessage();
+                        return;
+                    }
+                    result.append(line, start, end);
+                }
+            }
+            result.append('\n');
+            count[0]++;
+        });
+        return new Converted(result.buffer(), result.length(), count[0], failed[0], failure[0]);
+    }
+
+    /**
+     * @return the start of field {@code column} (counting from 1) of
+     *         {@code line[start..end)}, or -1 if there are fewer fields
+     */
+    private static int field(byte[] line, int start, int end, int column, char delimiter) {
+        int i = start;
+        for (int field = 1; field < column; field++) {
+            while (i < end && line[i] != delimiter) {
+                i++;
+            }
+            if (i == end) {
+                return -1;
+            }
+            i++;
+        }
+        return i;
+    }
+}
@@ -1,18 +1,33 @@
 package sh.minty.helixis.commands;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.DayOfWeek;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.Year;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
+import java.time.temporal.Temporal;
+import java.time.temporal.TemporalQueries;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ThreadLocalRandom;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
@@ -20,7 +35,8 @@ import picocli.CommandLine.Parameters;
         DateDifference.class, DateCommand.CurrentDateTimeCommand.class, DateCommand.FormatCommand.class,
         DateCommand.ArithmeticCommand.class, DateCommand.BusinessDayArithmeticCommand.class,
         DateCommand.TimestampCommand.class, DateCommand.ExtractCommand.class, DateCommand.LeapYearCommand.class,
-        DateCommand.TimezoneConvertCommand.class, DateCommand.CalendarCommand.class, DateCommand.RandomCommand.class})
+        DateCommand.TimezoneConvertCommand.class, DateCommand.CalendarCommand.class, DateCommand.RandomCommand.class,
+        DateCommand.RangeCommand.class, DateCommand.ScanCommand.class})
 public class DateCommand {
     @Command(name = "now", mixinStandardHelpOptions = true, description = "Display the current date and time with GNU date formatting options.")
     static class CurrentDateTimeCommand implements Callable<Integer> {
@@ -37,29 +53,16 @@ public class DateCommand {
 
         @Override
         public Integer call() {
-            var now = LocalDateTime.now();
             var targetZone = (zoneId != null) ? ZoneId.of(zoneId) : ZoneId.systemDefault();
-
-            String finalFormat = format;
-            if (gnuFormat) {
-                finalFormat = convertGnuFormatToJava(format);
-            }
-
-            // Special handling for epoch seconds (%s)
-            if (finalFormat.contains("epoch_seconds")) {
-                System.out.println(now.atZone(ZoneId.systemDefault()).toEpochSecond());
-            } else {
-                var formatter = DateTimeFormatter.ofPattern(finalFormat).withZone(targetZone);
-                System.out
-                        .println(now.atZone(ZoneId.systemDefault()).withZoneSameInstant(targetZone).format(formatter));
-            }
+            var formatter = formatter(format, gnuFormat).withZone(targetZone);
+            System.out.println(ZonedDateTime.now(targetZone).format(formatter));
             return 0;
         }
     }
 
     @Command(name = "format", mixinStandardHelpOptions = true, description = "Format a given date string into a specified output with GNU date formatting options.")
     static class FormatCommand implements Callable<Integer> {
-        @Parameters(index = "0", description = "The date string to format.")
+        @Parameters(index = "0", arity = "0..1", description = "The date string to format. Omit with --stdin or --file.")
         private String dateString;
 
         @Option(names = {"-i",
@@ -80,32 +83,29 @@ public class DateCommand {
         @Option(names = {"--gnu-output-format"}, description = "Treat output format (-o) as GNU date format.")
         private boolean gnuOutputFormat;
 
+        @Mixin
+        private DateColumn.Options columnOptions = new DateColumn.Options();
+
         @Override
         public Integer call() {
+            var invalid = columnOptions.validate(dateString != null);
+            if (invalid != null) {
+                System.err.println("Error: " + invalid);
+                return 1;
+            }
             try {
                 var targetZone = (zoneId != null) ? ZoneId.of(zoneId) : ZoneId.systemDefault();
-
-                String finalInputFormat = inputFormat;
-                if (gnuInputFormat) {
-                    finalInputFormat = convertGnuFormatToJava(inputFormat);
-                }
-
-                String finalOutputFormat = outputFormat;
-                if (gnuOutputFormat) {
-                    finalOutputFormat = convertGnuFormatToJava(outputFormat);
+                var inputFormatter = formatter(inputFormat, gnuInputFormat).withZone(targetZone);
+                var outputFormatter = formatter(outputFormat, gnuOutputFormat).withZone(targetZone);
+
+                if (columnOptions.isBatch()) {
+                    return DateColumn.run(columnOptions,
+                            (line, start, end, out) -> out
+                                    .append(LocalDateTime.parse(DateColumn.text(line, start, end), inputFormatter)
+                                            .atZone(targetZone).format(outputFormatter)));
                 }
-
-                var inputFormatter = DateTimeFormatter.ofPattern(finalInputFormat).withZone(targetZone);
-                var outputFormatter = DateTimeFormatter.ofPattern(finalOutputFormat).withZone(targetZone);
-
                 var dateTime = LocalDateTime.parse(dateString, inputFormatter);
-
-                // Special handling for epoch seconds (%s) in output
-                if (finalOutputFormat.contains("epoch_seconds")) {
-                    System.out.println(dateTime.atZone(targetZone).toEpochSecond());
-                } else {
-                    System.out.println(dateTime.atZone(targetZone).format(outputFormatter));
-                }
+                System.out.println(dateTime.atZone(targetZone).format(outputFormatter));
             } catch (DateTimeParseException e) {
                 System.err.println("Error: Could not parse date string with the given input format. " + e.getMessage());
                 return 1;
@@ -147,18 +147,7 @@ public class DateCommand {
         public Integer call() {
             try {
                 var targetZone = (zoneId != null) ? ZoneId.of(zoneId) : ZoneId.systemDefault();
-
-                String finalInputFormat = inputFormat;
-                if (gnuInputFormat) {
-                    finalInputFormat = convertGnuFormatToJava(inputFormat);
-                }
-
-                String finalOutputFormat = outputFormat;
-                if (gnuOutputFormat) {
-                    finalOutputFormat = convertGnuFormatToJava(outputFormat);
-                }
-
-                var inputFormatter = DateTimeFormatter.ofPattern(finalInputFormat).withZone(targetZone);
+                var inputFormatter = formatter(inputFormat, gnuInputFormat).withZone(targetZone);
                 var dateTime = LocalDateTime.parse(dateString, inputFormatter);
 
                 LocalDateTime resultDateTime;
@@ -168,13 +157,8 @@ public class DateCommand {
                     resultDateTime = dateTime.minus(Math.abs(amount), unit);
                 }
 
-                // Special handling for epoch seconds (%s) in output
-                if (finalOutputFormat.contains("epoch_seconds")) {
-                    System.out.println(resultDateTime.atZone(targetZone).toEpochSecond());
-                } else {
-                    var outputFormatter = DateTimeFormatter.ofPattern(finalOutputFormat).withZone(targetZone);
-                    System.out.println(resultDateTime.atZone(targetZone).format(outputFormatter));
-                }
+                var outputFormatter = formatter(outputFormat, gnuOutputFormat).withZone(targetZone);
+                System.out.println(resultDateTime.atZone(targetZone).format(outputFormatter));
             } catch (DateTimeParseException e) {
                 System.err.println("Error: Could not parse date string with the given input format. " + e.getMessage());
                 return 1;
@@ -188,11 +172,15 @@ public class DateCommand {
 
     @Command(name = "business-arithmetic", mixinStandardHelpOptions = true, description = "Calculate the date after or before a specified number of business days.")
     static class BusinessDayArithmeticCommand implements Callable<Integer> {
-        @Parameters(index = "0", description = "The date string to perform arithmetic on.")
+        @Parameters(index = "0", arity = "0..1", description = "The date string to perform arithmetic on. Omit with --stdin or --file.")
         private String dateString;
 
-        @Parameters(index = "1", description = "The number of business days to add or subtract.")
-        private int businessDays;
+        @Parameters(index = "1", arity = "0..1", description = "The number of business days to add or subtract, unless --days is given.")
+        private Integer businessDays;
+
+        @Option(names = {
+                "--days"}, paramLabel = "n", description = "The number of business days to add or subtract, in place of the second argument. Required with --stdin or --file.")
+        private Integer daysOption;
 
         @Option(names = {"-i",
                 "--input-format"}, description = "Specify input format (e.g., 'yyyy-MM-dd'). Defaults to ISO_LOCAL_DATE.")
@@ -202,30 +190,84 @@ public class DateCommand {
                 "--output-format"}, description = "Specify output format (e.g., 'yyyy/MM/dd'). Defaults to ISO_LOCAL_DATE.")
         private String outputFormat = "yyyy-MM-dd";
 
+        @Option(names = {
+                "--holidays"}, description = "Holiday calendar: one date (yyyy-MM-dd) per line, optionally followed by a name, or an iCalendar (.ics) file.")
+        private Path holidayFile;
+
+        @Option(names = {
+                "--weekend"}, split = ",", description = "Days of the week that are not business days (default: SATURDAY,SUNDAY).")
+        private Set<DayOfWeek> weekend = EnumSet.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY);
+
+        @Mixin
+        private DateColumn.Options columnOptions = new DateColumn.Options();
+
         @Override
         public Integer call() {
+            String invalid = null;
+            if (columnOptions.isBatch() && dateString != null) {
+                invalid = "With --stdin or --file, give the number of business days as --days, not as an argument.";
+            } else if (businessDays != null && daysOption != null) {
+                invalid = "Give the number of business days either as an argument or as --days, not both.";
+            }
+            if (invalid == null) {
+                invalid = columnOptions.validate(dateString != null);
+            }
+            var count = businessDays != null ? businessDays : daysOption;
+            if (invalid == null && count == null) {
+                invalid = columnOptions.isBatch()
+                        ? "Give the number of business days as --days."
+                        : "Give a date and a number of business days.";
+            }
+            if (invalid != null) {
+                System.err.println("Error: " + invalid);
+                return 1;
+            }
+            long days = count;
+
+            BusinessCalendar calendar;
+            try {
+                calendar = BusinessCalendar.of(weekend, holidayFile);
+            } catch (IOException e) {
+                System.err.println("Error: Could not read holidays: " + e.getMessage());
+                return 1;
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error: Invalid --weekend: " + e.getMessage());
+                return 1;
+            }
             try {
                 var inputFormatter = DateTimeFormatter.ofPattern(inputFormat);
-                var dateTime = LocalDateTime.parse(dateString, inputFormatter);
-
-                var resultDateTime = dateTime;
-                int daysCount = 0;
-                while (daysCount < Math.abs(businessDays)) {
-                    resultDateTime = resultDateTime.plusDays((businessDays > 0) ? 1 : -1);
-                    if (!(resultDateTime.getDayOfWeek() == DayOfWeek.SATURDAY
-                            || resultDateTime.getDayOfWeek() == DayOfWeek.SUNDAY)) {
-                        daysCount++;
-                    }
-                }
-
                 var outputFormatter = DateTimeFormatter.ofPattern(outputFormat);
-                System.out.println(resultDateTime.format(outputFormatter));
+                if (columnOptions.isBatch()) {
+                    boolean isoDates = inputFormat.equals("yyyy-MM-dd") && outputFormat.equals("yyyy-MM-dd");
+                    return DateColumn.run(columnOptions, (line, start, end, out) -> {
+                        long day = isoDates ? TimestampParser.isoEpochDay(line, start, end) : Long.MIN_VALUE;
+                        if (day != Long.MIN_VALUE && DateColumn.appendDate(calendar.plusBusinessDays(day, days), out)) {
+                            return;
+                        }
+                        out.append(outputFormatter.format(
+                                plusBusinessDays(calendar, DateColumn.text(line, start, end), inputFormatter, days)));
+                    });
+                }
+                var result = plusBusinessDays(calendar, dateString, inputFormatter, days);
+                System.out.println(outputFormatter.format(result));
             } catch (DateTimeParseException e) {
                 System.err.println("Error: Could not parse date string with the given input format. " + e.getMessage());
                 return 1;
             }
             return 0;
         }
+
+        /**
+         * @return the date of {@code text} moved by {@code days} business days, keeping
+         *         its time of day if it has one
+         */
+        private static Temporal plusBusinessDays(BusinessCalendar calendar, String text, DateTimeFormatter formatter,
+                long days) {
+            var parsed = formatter.parse(text);
+            var date = calendar.plusBusinessDays(LocalDate.from(parsed), days);
+            var time = parsed.query(TemporalQueries.localTime());
+            return time == null ? date : date.atTime(time);
+        }
     }
 
     @Command(name = "timestamp", mixinStandardHelpOptions = true, description = "Convert between human-readable dates and Unix timestamps, and vice-versa.", subcommands = {
@@ -240,11 +282,11 @@ public class DateCommand {
 
     @Command(name = "to-timestamp", mixinStandardHelpOptions = true, description = "Convert a human-readable date to a Unix timestamp.")
     static class ToTimestampCommand implements Callable<Integer> {
-        @Parameters(index = "0", description = "The date string to convert to timestamp.")
+        @Parameters(index = "0", arity = "0..1", description = "The date string to convert to timestamp. Omit with --stdin or --file.")
         private String dateString;
 
         @Option(names = {"-i",
-                "--input-format"}, description = "Specify input format (e.g., 'yyyy-MM-dd HH:mm:ss'). Defaults to ISO_LOCAL_DATE_TIME.")
+                "--input-format"}, description = "Specify input format (e.g., 'yyyy-MM-dd HH:mm:ss'), or one of the layouts iso, rfc3339, epoch and epoch-millis. Defaults to ISO_LOCAL_DATE_TIME.")
         private String inputFormat = "yyyy-MM-dd HH:mm:ss";
 
         @Option(names = {"-z",
@@ -254,20 +296,24 @@ public class DateCommand {
         @Option(names = {"--gnu-input-format"}, description = "Treat input format (-i) as GNU date format.")
         private boolean gnuInputFormat;
 
+        @Mixin
+        private DateColumn.Options columnOptions = new DateColumn.Options();
+
         @Override
         public Integer call() {
+            var invalid = columnOptions.validate(dateString != null);
+            if (invalid != null) {
+                System.err.println("Error: " + invalid);
+                return 1;
+            }
             try {
                 var targetZone = (zoneId != null) ? ZoneId.of(zoneId) : ZoneId.systemDefault();
-
-                String finalInputFormat = inputFormat;
-                if (gnuInputFormat) {
-                    finalInputFormat = convertGnuFormatToJava(inputFormat);
+                var parser = TimestampParser.of(inputFormat, gnuInputFormat, targetZone);
+                if (columnOptions.isBatch()) {
+                    return DateColumn.run(columnOptions,
+                            (line, start, end, out) -> out.append(parser.epochSecond(line, start, end)));
                 }
-
-                var formatter = DateTimeFormatter.ofPattern(finalInputFormat).withZone(targetZone);
-                var dateTime = LocalDateTime.parse(dateString, formatter);
-                var timestamp = dateTime.atZone(targetZone).toEpochSecond();
-                System.out.println(timestamp);
+                System.out.println(parser.epochSecond(dateString));
             } catch (DateTimeParseException e) {
                 System.err.println("Error: Could not parse date string with the given input format. " + e.getMessage());
                 return 1;
@@ -299,20 +345,8 @@ public class DateCommand {
         public Integer call() {
             try {
                 var targetZone = (zoneId != null) ? ZoneId.of(zoneId) : ZoneId.systemDefault();
-
-                String finalOutputFormat = outputFormat;
-                if (gnuFormat) {
-                    finalOutputFormat = convertGnuFormatToJava(outputFormat);
-                }
-
-                // Special handling for epoch seconds (%s)
-                if (finalOutputFormat.contains("epoch_seconds")) {
-                    System.out.println(timestamp);
-                } else {
-                    var formatter = DateTimeFormatter.ofPattern(finalOutputFormat).withZone(targetZone);
-                    var dateTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(timestamp), targetZone);
-                    System.out.println(dateTime.atZone(targetZone).format(formatter));
-                }
+                var formatter = formatter(outputFormat, gnuFormat).withZone(targetZone);
+                System.out.println(Instant.ofEpochSecond(timestamp).atZone(targetZone).format(formatter));
             } catch (Exception e) {
                 System.err.println("Error: " + e.getMessage());
                 return 1;
@@ -378,15 +412,23 @@ public class DateCommand {
 
     @Command(name = "timezone-convert", mixinStandardHelpOptions = true, description = "Convert a date and time from one time zone to another.")
     static class TimezoneConvertCommand implements Callable<Integer> {
-        @Parameters(index = "0", description = "The date string to convert.")
+        @Parameters(index = "0", arity = "0..1", description = "The date string to convert. Omit with --stdin or --file.")
         private String dateString;
 
-        @Parameters(index = "1", description = "The source time zone ID (e.g., 'America/New_York').")
+        @Parameters(index = "1", arity = "0..1", description = "The source time zone ID (e.g., 'America/New_York'), unless --from is given.")
         private String sourceZoneId;
 
-        @Parameters(index = "2", description = "The target time zone ID (e.g., 'Europe/London').")
+        @Parameters(index = "2", arity = "0..1", description = "The target time zone ID (e.g., 'Europe/London'), unless --to is given.")
         private String targetZoneId;
 
+        @Option(names = {
+                "--from"}, paramLabel = "zone", description = "The source time zone ID, in place of the second argument. Required with --stdin or --file.")
+        private String fromZoneId;
+
+        @Option(names = {
+                "--to"}, paramLabel = "zone", description = "The target time zone ID, in place of the third argument. Required with --stdin or --file.")
+        private String toZoneId;
+
         @Option(names = {"-i",
                 "--input-format"}, description = "Specify input format (e.g., 'yyyy-MM-dd HH:mm:ss'). Defaults to ISO_LOCAL_DATE_TIME.")
         private String inputFormat = "yyyy-MM-dd HH:mm:ss";
@@ -401,32 +443,42 @@ public class DateCommand {
         @Option(names = {"--gnu-output-format"}, description = "Treat output format (-o) as GNU date format.")
         private boolean gnuOutputFormat;
 
+        @Mixin
+        private DateColumn.Options columnOptions = new DateColumn.Options();
+
         @Override
         public Integer call() {
+            String invalid = null;
+            if (columnOptions.isBatch() && dateString != null) {
+                invalid = "With --stdin or --file, give the zones as --from and --to, not as arguments.";
+            } else if ((sourceZoneId != null && fromZoneId != null) || (targetZoneId != null && toZoneId != null)) {
+                invalid = "Give each zone either as an argument or as --from/--to, not both.";
+            }
+            if (invalid == null) {
+                invalid = columnOptions.validate(dateString != null);
+            }
+            var source = sourceZoneId != null ? sourceZoneId : fromZoneId;
+            var target = targetZoneId != null ? targetZoneId : toZoneId;
+            if (invalid == null && (source == null || target == null)) {
+                invalid = columnOptions.isBatch()
+                        ? "Give the zones as --from and --to."
+                        : "Give a date, a source zone and a target zone.";
+            }
+            if (invalid != null) {
+                System.err.println("Error: " + invalid);
+                return 1;
+            }
             try {
-                String finalInputFormat = inputFormat;
-                if (gnuInputFormat) {
-                    finalInputFormat = convertGnuFormatToJava(inputFormat);
+                var sourceZone = ZoneId.of(source);
+                var targetZone = ZoneId.of(target);
+                var outputFormatter = formatter(outputFormat, gnuOutputFormat).withZone(targetZone);
+                if (columnOptions.isBatch()) {
+                    return convertLines(sourceZone, targetZone, outputFormatter);
                 }
-
-                String finalOutputFormat = outputFormat;
-                if (gnuOutputFormat) {
-                    finalOutputFormat = convertGnuFormatToJava(outputFormat);
-                }
-
-                var inputFormatter = DateTimeFormatter.ofPattern(finalInputFormat);
+                var inputFormatter = formatter(inputFormat, gnuInputFormat).withZone(sourceZone);
                 var localDateTime = LocalDateTime.parse(dateString, inputFormatter);
-                var sourceZonedDateTime = localDateTime.atZone(ZoneId.of(sourceZoneId));
-                var targetZonedDateTime = sourceZonedDateTime.withZoneSameInstant(ZoneId.of(targetZoneId));
-
-                // Special handling for epoch seconds (%s) in output
-                if (finalOutputFormat.contains("epoch_seconds")) {
-                    System.out.println(targetZonedDateTime.toEpochSecond());
-                } else {
-                    var outputFormatter = DateTimeFormatter.ofPattern(finalOutputFormat)
-                            .withZone(ZoneId.of(targetZoneId));
-                    System.out.println(targetZonedDateTime.format(outputFormatter));
-                }
+                var targetZonedDateTime = localDateTime.atZone(sourceZone).withZoneSameInstant(targetZone);
+                System.out.println(targetZonedDateTime.format(outputFormatter));
 
             } catch (DateTimeParseException e) {
                 System.err.println(
@@ -438,6 +490,23 @@ public class DateCommand {
             }
             return 0;
         }
+
+        /**
+         * Convert every input line, in whole seconds. Offsets in both zones come from
+         * {@link ZoneOffsets} tables, and the default layout is parsed and written
+         * without going through {@link ZonedDateTime}.
+         */
+        private int convertLines(ZoneId sourceZone, ZoneId targetZone, DateTimeFormatter outputFormatter) {
+            var parser = TimestampParser.of(inputFormat, gnuInputFormat, sourceZone);
+            var offsets = ZoneOffsets.of(targetZone);
+            char separator = TimestampParser.localSeparator(outputFormat, gnuOutputFormat);
+            return DateColumn.run(columnOptions, (line, start, end, out) -> {
+                long instant = parser.epochSecond(line, start, end);
+                if (separator == 0 || !DateColumn.appendDateTime(instant + offsets.offsetAt(instant), separator, out)) {
+                    out.append(outputFormatter.format(Instant.ofEpochSecond(instant).atZone(targetZone)));
+                }
+            });
+        }
     }
 
     @Command(name = "calendar", mixinStandardHelpOptions = true, description = "Show a simple calendar for a specific month and year.")
@@ -482,23 +551,16 @@ public class DateCommand {
         }
     }
 
-    private static String convertGnuFormatToJava(String gnuFormat) {
-        return gnuFormat.replace("%a", "E").replace("%A", "EEEE").replace("%b", "MMM").replace("%B", "MMMM")
-                .replace("%c", "E MMM d HH:mm:ss yyyy").replace("%C", "yy") // Century, last two digits
-                .replace("%d", "dd").replace("%D", "MM/dd/yy").replace("%e", "d").replace("%F", "yyyy-MM-dd")
-                .replace("%g", "yy").replace("%G", "YYYY").replace("%h", "MMM").replace("%H", "HH").replace("%I", "hh")
-                .replace("%j", "D").replace("%k", "H").replace("%l", "h").replace("%m", "MM").replace("%M", "mm")
-                .replace("%n", "\n").replace("%N", "n").replace("%p", "a").replace("%P", "a") // lower case am/pm
-                .replace("%q", "Q").replace("%r", "hh:mm:ss a").replace("%R", "HH:mm").replace("%s", "epoch_seconds") // Special
-                                                                                                                      // handling
-                .replace("%S", "ss").replace("%t", "\t").replace("%T", "HH:mm:ss").replace("%u", "e")
-                .replace("%U", "ww").replace("%V", "WW").replace("%w", "e") // Day of week (0-6), 0 is Sunday
-                .replace("%W", "ww").replace("%x", "MM/dd/yy").replace("%X", "HH:mm:ss").replace("%y", "yy")
-                .replace("%Y", "yyyy").replace("%z", "Z").replace("%:z", "XXX").replace("%::z", "XXX")
-                .replace("%:::z", "XXX").replace("%Z", "z");
+    /**
+     * @return the formatter for {@code pattern}, which is in GNU {@code date}
+     *         syntax if {@code gnu} is set and a {@link DateTimeFormatter} pattern
+     *         otherwise
+     */
+    static DateTimeFormatter formatter(String pattern, boolean gnu) {
+        return gnu ? GnuDateFormat.compile(pattern) : DateTimeFormatter.ofPattern(pattern);
     }
 
-    @Command(name = "random", mixinStandardHelpOptions = true, description = "Generate a random date with parameters.")
+    @Command(name = "random", mixinStandardHelpOptions = true, description = "Generate random dates with parameters.")
     static class RandomCommand implements Callable<Integer> {
         @Option(names = {"--after"}, description = "Generate a date after this date (e.g., '2023-01-01').")
         private String afterDateString;
@@ -513,8 +575,44 @@ public class DateCommand {
         @Option(names = {"--gnu-output-format"}, description = "Treat output format (-f) as GNU date format.")
         private boolean gnuOutputFormat;
 
+        @Option(names = {"-n", "--number"}, description = "Number of dates to generate (default: 1).")
+        private long amount = 1;
+
+        @Option(names = {"--weekdays"}, description = "Generate only Mondays to Fridays.")
+        private boolean weekdays;
+
+        @Option(names = {
+                "--weights"}, split = ",", description = "Relative weights of Monday to Sunday (e.g., '1,1,1,1,1,0.5,0.2').")
+        private double[] weights;
+
+        @Option(names = {"-p", "--parallel"}, description = "Number of generator threads (default: 1).")
+        private int threads = 1;
+
+        @Mixin
+        private RandomSource.Options randomOptions = new RandomSource.Options();
+
         @Override
         public Integer call() {
+            randomOptions.apply();
+            if (amount < 1) {
+                System.err.println("Error: --number must be at least 1.");
+                return 1;
+            }
+            if (threads < 1) {
+                System.err.println("Error: --parallel must be at least 1.");
+                return 1;
+            }
+            if (weekdays && weights != null) {
+                System.err.println("Error: --weekdays and --weights cannot be used together.");
+                return 1;
+            }
+            if (weights != null && (weights.length != 7 || Arrays.stream(weights).anyMatch(w -> !(w >= 0)))) {
+                System.err.println("Error: --weights must be seven weights of at least 0, Monday first.");
+                return 1;
+            }
+            DateStream.LocalFormat format;
+            long minEpochDay;
+            long maxEpochDay;
             try {
                 var minDate = LocalDate.of(1900, 1, 1); // default min date
                 var maxDate = LocalDate.of(2100, 12, 31); // default max date
@@ -531,35 +629,330 @@ public class DateCommand {
                     return 1;
                 }
 
-                long minEpochDay = minDate.toEpochDay();
-                long maxEpochDay = maxDate.toEpochDay();
+                minEpochDay = minDate.toEpochDay();
+                maxEpochDay = maxDate.toEpochDay();
+                format = DateStream.localFormat(outputFormat, gnuOutputFormat, ZoneId.systemDefault());
+            } catch (DateTimeParseException e) {
+                System.err.println(
+                        "Error: Could not parse date string. Please use 'yyyy-MM-dd' format for --after and --before. "
+                                + e.getMessage());
+                return 1;
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                return 1;
+            }
 
-                long randomEpochDay = ThreadLocalRandom.current().nextLong(minEpochDay, maxEpochDay + 1);
-                var randomDate = LocalDate.ofEpochDay(randomEpochDay);
+            var dayWeights = weekdays ? new double[]{1, 1, 1, 1, 1, 0, 0} : weights;
+            var sampler = dayWeights == null ? null : WeekdaySampler.of(minEpochDay, maxEpochDay, dayWeights);
+            if (dayWeights != null && sampler == null) {
+                System.err.println("Error: No date in the range has a weight above 0.");
+                return 1;
+            }
+            return DateStream.write(amount, threads, (chunk, from, to, out) -> {
+                // per chunk rather than per thread, so seeded runs do not depend on scheduling
+                var random = RandomSource.forChunk(chunk);
+                for (long i = from; i < to; i++) {
+                    long epochDay = sampler != null
+                            ? sampler.next(random)
+                            : random.nextLong(minEpochDay, maxEpochDay + 1);
+                    format.append(epochDay * 86_400, out);
+                    out.append('\n');
+                }
+            });
+        }
 
-                String finalOutputFormat = outputFormat;
-                if (gnuOutputFormat) {
-                    finalOutputFormat = convertGnuFormatToJava(outputFormat);
+        /**
+         * Draws days from a range with a weight per day of the week: first a day of the
+         * week, in proportion to its weight times the number of such days in the range,
+         * then one of those days uniformly.
+         */
+        private record WeekdaySampler(long[] firstDays, long[] counts, double[] cumulative, int lastDay) {
+            /**
+             * @return a sampler, or null if no day in the range has weight
+             */
+            static WeekdaySampler of(long minEpochDay, long maxEpochDay, double[] weights) {
+                var firstDays = new long[7];
+                var counts = new long[7];
+                var cumulative = new double[7];
+                double total = 0;
+                int lastDay = -1;
+                // 1970-01-01 was a Thursday, day 3 counting from Monday
+                int minDayOfWeek = (int) Math.floorMod(minEpochDay + 3, 7L);
+                for (int day = 0; day < 7; day++) {
+                    firstDays[day] = minEpochDay + Math.floorMod(day - minDayOfWeek, 7);
+                    counts[day] = firstDays[day] > maxEpochDay ? 0 : (maxEpochDay - firstDays[day]) / 7 + 1;
+                    if (weights[day] * counts[day] > 0) {
+                        total += weights[day] * counts[day];
+                        lastDay = day;
+                    }
+                    cumulative[day] = total;
                 }
+                return lastDay < 0 ? null : new WeekdaySampler(firstDays, counts, cumulative, lastDay);
+            }
 
-                // Special handling for epoch seconds (%s)
-                if (finalOutputFormat.contains("epoch_seconds")) {
-                    System.out.println(randomDate.atStartOfDay(ZoneId.systemDefault()).toEpochSecond());
-                } else {
-                    var formatter = DateTimeFormatter.ofPattern(finalOutputFormat);
-                    System.out.println(randomDate.format(formatter));
+            long next(Random random) {
+                double u = random.nextDouble() * cumulative[6];
+                // days without weight add nothing to the cumulative weight, so they are skipped
+                int day = 0;
+                while (day < lastDay && u >= cumulative[day]) {
+                    day++;
                 }
+                return firstDays[day] + 7 * random.nextLong(counts[day]);
+            }
+        }
+    }
+
+    @Command(name = "range", mixinStandardHelpOptions = true, description = "Print every date or date-time from a start to an end at a step.")
+    static class RangeCommand implements Callable<Integer> {
+        @Parameters(index = "0", description = "The first date (e.g., '2024-01-01').")
+        private String startString;
+
+        @Parameters(index = "1", description = "The last date, included if a whole number of steps from the first.")
+        private String endString;
 
+        @Option(names = {"-s", "--step"}, description = "The amount of each step; negative to count down (default: 1).")
+        private long step = 1;
+
+        @Option(names = {"-u",
+                "--unit"}, description = "The unit of the step (e.g., YEARS, MONTHS, WEEKS, DAYS, HOURS, MINUTES, SECONDS). Defaults to DAYS.")
+        private ChronoUnit unit = ChronoUnit.DAYS;
+
+        @Option(names = {"-i",
+                "--input-format"}, description = "Specify input format (e.g., 'yyyy-MM-dd HH:mm:ss'). Defaults to ISO_LOCAL_DATE.")
+        private String inputFormat = "yyyy-MM-dd";
+
+        @Option(names = {"-o",
+                "--output-format"}, description = "Specify output format (e.g., 'yyyy/MM/dd'). Defaults to the input format.")
+        private String outputFormat;
+
+        @Option(names = {"--gnu-input-format"}, description = "Treat input format (-i) as GNU date format.")
+        private boolean gnuInputFormat;
+
+        @Option(names = {"--gnu-output-format"}, description = "Treat output format (-o) as GNU date format.")
+        private boolean gnuOutputFormat;
+
+        @Option(names = {"-z",
+                "--zone"}, description = "Specify time zone for formatting (e.g., 'America/New_York'). Defaults to system default.")
+        private String zoneId;
+
+        @Option(names = {"-p", "--parallel"}, description = "Number of formatting threads (default: 1).")
+        private int threads = 1;
+
+        @Override
+        public Integer call() {
+            if (step == 0) {
+                System.err.println("Error: --step must not be 0.");
+                return 1;
+            }
+            if (threads < 1) {
+                System.err.println("Error: --parallel must be at least 1.");
+                return 1;
+            }
+            if (unit.isTimeBased() && unit.getDuration().getSeconds() == 0) {
+                // dates are generated to the second, so smaller steps would repeat lines
+                System.err.println("Error: --unit must be SECONDS or longer.");
+                return 1;
+            }
+            DateStream.LocalFormat format;
+            LocalDateTime start;
+            long lines;
+            // the length of a step in seconds, or 0 if steps vary, as months do
+            long stepSeconds = 0;
+            try {
+                var zone = (zoneId != null) ? ZoneId.of(zoneId) : ZoneId.systemDefault();
+                var inputFormatter = formatter(inputFormat, gnuInputFormat);
+                start = parse(startString, inputFormatter);
+                var end = parse(endString, inputFormatter);
+                format = outputFormat == null
+                        ? DateStream.localFormat(inputFormat, gnuInputFormat, zone)
+                        : DateStream.localFormat(outputFormat, gnuOutputFormat, zone);
+
+                var duration = unit.getDuration();
+                boolean fixed = unit.isTimeBased() || unit == ChronoUnit.DAYS || unit == ChronoUnit.WEEKS;
+                long steps;
+                if (fixed) {
+                    stepSeconds = Math.multiplyExact(step, duration.getSeconds());
+                    steps = Math.subtractExact(end.toEpochSecond(ZoneOffset.UTC), start.toEpochSecond(ZoneOffset.UTC))
+                            / stepSeconds;
+                } else {
+                    steps = start.until(end, unit) / step;
+                    // from the end of a month, one more step may still land on the end
+                    var next = start.plus((steps + 1) * step, unit);
+                    if (step > 0 ? !next.isAfter(end) : !next.isBefore(end)) {
+                        steps++;
+                    }
+                }
+                // as with seq, nothing when the end is the other way
+                boolean backwards = step > 0 ? end.isBefore(start) : end.isAfter(start);
+                lines = backwards ? 0 : steps + 1;
             } catch (DateTimeParseException e) {
-                System.err.println(
-                        "Error: Could not parse date string. Please use 'yyyy-MM-dd' format for --after and --before. "
-                                + e.getMessage());
+                System.err.println("Error: Could not parse date string with the given input format. " + e.getMessage());
                 return 1;
             } catch (Exception e) {
                 System.err.println("Error: " + e.getMessage());
                 return 1;
             }
+
+            long startSecond = start.toEpochSecond(ZoneOffset.UTC);
+            long fixedStep = stepSeconds;
+            return DateStream.write(lines, threads, (chunk, from, to, out) -> {
+                for (long i = from; i < to; i++) {
+                    long localSecond = fixedStep != 0
+                            ? startSecond + i * fixedStep
+                            : start.plus(i * step, unit).toEpochSecond(ZoneOffset.UTC);
+                    format.append(localSecond, out);
+                    out.append('\n');
+                }
+            });
+        }
+
+        /**
+         * @return the date-time of {@code text}, at midnight if it is a date
+         */
+        private static LocalDateTime parse(String text, DateTimeFormatter formatter) {
+            var parsed = formatter.parse(text);
+            var time = parsed.query(TemporalQueries.localTime());
+            return LocalDate.from(parsed).atTime(time == null ? LocalTime.MIDNIGHT : time);
+        }
+    }
+
+    @Command(name = "scan", mixinStandardHelpOptions = true, description = "Count the lines of log files per second, minute, hour or day of their timestamps.")
+    static class ScanCommand implements Callable<Integer> {
+        // output is written in pieces of about this size
+        private static final int OUTPUT_BYTES = 1 << 16;
+
+        @Parameters(arity = "1..*", description = "The log files to scan.")
+        private List<Path> files;
+
+        @Option(names = {"-i",
+                "--input-format"}, description = "Format of the timestamp at the start of each line, or after --after: a pattern, 'iso', 'rfc3339', 'epoch' or 'epoch-millis'. Defaults to finding an ISO 8601 or Common Log Format timestamp anywhere in the line.")
+        private String inputFormat;
+
+        @Option(names = {"--gnu-input-format"}, description = "Treat input format (-i) as GNU date format.")
+        private boolean gnuInputFormat;
+
+        @Option(names = {
+                "--after"}, description = "Look for the timestamp after the first occurrence of this text in each line.")
+        private String marker;
+
+        @Option(names = {"-z",
+                "--zone"}, description = "Specify time zone of timestamps without an offset and of the buckets (e.g., 'America/New_York'). Defaults to system default.")
+        private String zoneId;
+
+        @Option(names = {"-b",
+                "--bucket"}, description = "Bucket size: second, minute, hour or day. Defaults to minute.")
+        private String bucket = "minute";
+
+        @Option(names = {"--fill"}, description = "Also print the empty buckets between the first and the last.")
+        private boolean fill;
+
+        @Option(names = {"-p",
+                "--parallel"}, description = "Number of scanning threads (default: number of processors).")
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        @Override
+        public Integer call() {
+            long bucketSeconds = switch (bucket) {
+                case "second" -> 1;
+                case "minute" -> 60;
+                case "hour" -> 3600;
+                case "day" -> 86_400;
+                default -> 0;
+            };
+            if (bucketSeconds == 0) {
+                System.err.println("Error: --bucket must be second, minute, hour or day.");
+                return 1;
+            }
+            if (threads < 1) {
+                System.err.println("Error: --parallel must be at least 1.");
+                return 1;
+            }
+            LogScan.Histogram histogram;
+            try {
+                var zone = (zoneId != null) ? ZoneId.of(zoneId) : ZoneId.systemDefault();
+                var offsets = ZoneOffsets.of(zone);
+                LogScan.Extractor timestamp;
+                if (inputFormat == null) {
+                    timestamp = (line, start, end) -> TimestampParser.find(line, start, end, offsets);
+                } else {
+                    timestamp = TimestampParser.of(inputFormat, gnuInputFormat, zone)::leadingEpochSecond;
+                }
+                var extractor = timestamp;
+                if (marker != null) {
+                    var after = marker.getBytes(StandardCharsets.UTF_8);
+                    extractor = (line, start, end) -> {
+                        int at = indexOf(line, start, end, after);
+                        return at < 0 ? Long.MIN_VALUE : timestamp.epochSecond(line, at + after.length, end);
+                    };
+                }
+                histogram = LogScan.scan(files, extractor, offsets, bucketSeconds, threads);
+            } catch (IOException e) {
+                System.err.println("Error: Could not read log file: " + e.getMessage());
+                return 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Error: Scan interrupted.");
+                return 1;
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                return 1;
+            }
+
+            var counts = histogram.counts();
+            var buckets = counts.sortedKeys();
+            System.out.flush();
+            var out = new FileOutputStream(FileDescriptor.out);
+            var lines = new ByteOutput(OUTPUT_BYTES + 64);
+            try {
+                boolean day = bucketSeconds == 86_400;
+                for (int i = 0; i < buckets.length; i++) {
+                    long from = fill && i > 0 ? buckets[i - 1] + 1 : buckets[i];
+                    for (long b = from; b <= buckets[i]; b++) {
+                        appendBucket(b * bucketSeconds, day, lines);
+                        lines.append('\t').append(b == buckets[i] ? counts.get(b) : 0).append('\n');
+                        if (lines.length() >= OUTPUT_BYTES) {
+                            out.write(lines.buffer(), 0, lines.length());
+                            lines.truncate(0);
+                        }
+                    }
+                }
+                out.write(lines.buffer(), 0, lines.length());
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                return 1;
+            }
+            if (histogram.skipped() > 0) {
+                System.err.println("Skipped " + histogram.skipped() + " lines without a timestamp.");
+            }
             return 0;
         }
+
+        private static void appendBucket(long localSecond, boolean day, ByteOutput out) {
+            boolean written = day
+                    ? DateColumn.appendDate(Math.floorDiv(localSecond, 86_400), out)
+                    : DateColumn.appendDateTime(localSecond, ' ', out);
+            if (!written) {
+                var start = LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC);
+                out.append(day ? start.toLocalDate().toString() : start.toString());
+            }
+        }
+
+        /**
+         * @return the index of the first occurrence of {@code text} in
+         *         {@code line[start..end)}, or -1
+         */
+        private static int indexOf(byte[] line, int start, int end, byte[] text) {
+            for (int i = start; i + text.length <= end; i++) {
+                int j = 0;
+                while (j < text.length && line[i + j] == text[j]) {
+                    j++;
+                }
+                if (j == text.length) {
+                    return i;
+                }
+            }
+            return -1;
+        }
     }
 }
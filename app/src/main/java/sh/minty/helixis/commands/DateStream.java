@@ -0,0 +1,165 @@
+package sh.minty.helixis.commands;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes generated dates to standard output, one per line.
+ *
+ * <p>
+ * Lines are numbered and built in chunks of {@link #CHUNK}, on a pool when
+ * there are several threads, into byte buffers that are written in chunk order.
+ * Dates are passed around as local date-times in seconds since 1970-01-01T00:00
+ * and written without a formatter when the pattern is {@code yyyy-MM-dd} or
+ * {@code yyyy-MM-dd HH:mm:ss}.
+ * </p>
+ */
+final class DateStream {
+    // lines per chunk; also the unit of per-chunk random generators
+    static final int CHUNK = 1 << 14;
+    private static final int SECONDS_PER_DAY = 86_400;
+
+    /** Builds the lines of one chunk. */
+    @FunctionalInterface
+    interface ChunkWriter {
+        /**
+         * Append lines {@code from} (inclusive) to {@code to} (exclusive), which make
+         * up chunk {@code chunk}, each followed by a newline.
+         */
+        void write(long chunk, long from, long to, ByteOutput out);
+    }
+
+    /** Appends a local date-time, given as seconds since 1970-01-01T00:00. */
+    @FunctionalInterface
+    interface LocalFormat {
+        void append(long localSecond, ByteOutput out);
+    }
+
+    private DateStream() {
+    }
+
+    /**
+     * @param zone
+     *            the zone for patterns that print an offset, zone or instant
+     * @return a format for {@code pattern}, in
+     *         {@link java.time.format.DateTimeFormatter} or, with {@code gnu}, GNU
+     *         {@code date} syntax
+     * @throws IllegalArgumentException
+     *             if the pattern is invalid
+     */
+    static LocalFormat localFormat(String pattern, boolean gnu, ZoneId zone) {
+        var formatter = DateCommand.formatter(pattern, gnu);
+        boolean isoDate = gnu ? pattern.equals("%F") || pattern.equals("%Y-%m-%d") : pattern.equals("yyyy-MM-dd");
+        char separator = TimestampParser.localSeparator(pattern, gnu);
+        return (localSecond, out) -> {
+            boolean written = isoDate
+                    ? DateColumn.appendDate(Math.floorDiv(localSecond, SECONDS_PER_DAY), out)
+                    : separator != 0 && DateColumn.appendDateTime(localSecond, separator, out);
+            if (!written) {
+                out.append(formatter.format(LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC).atZone(zone)));
+            }
+        };
+    }
+
+    /**
+     * Write {@code lines} lines built by {@code writer} to standard output.
+     *
+     * @return the exit code
+     */
+    static int write(long lines, int threads, ChunkWriter writer) {
+        long chunks = (lines + CHUNK - 1) / CHUNK;
+        System.out.flush();
+        var out = new FileOutputStream(FileDescriptor.out);
+        try {
+            if (threads == 1 || chunks <= 1) {
+                var buffer = new ByteOutput(CHUNK * 32);
+                for (long chunk = 0; chunk < chunks; chunk++) {
+                    buffer.truncate(0);
+                    writer.write(chunk, chunk * CHUNK, Math.min(lines, (chunk + 1) * CHUNK), buffer);
+                    out.write(buffer.buffer(), 0, buffer.length());
+                }
+            } else {
+                writeParallel(out, lines, chunks, threads, writer);
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Error: Could not write dates: " + e.getMessage());
+            return 1;
+        } catch (DateTimeException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Error: Date generation interrupted.");
+            return 1;
+        }
+        return 0;
+    }
+
+    private static void writeParallel(FileOutputStream out, long lines, long chunks, int threads, ChunkWriter writer)
+            throws IOException, InterruptedException {
+        var nextChunk = new AtomicLong();
+        var writeTurn = new Turnstile();
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Void>> workers = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                workers.add(() -> {
+                    var buffer = new ByteOutput(CHUNK * 32);
+                    long chunk;
+                    try {
+                        while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                            buffer.truncate(0);
+                            writer.write(chunk, chunk * CHUNK, Math.min(lines, (chunk + 1) * CHUNK), buffer);
+                            writeTurn.await(chunk);
+                            try {
+                                out.write(buffer.buffer(), 0, buffer.length());
+                            } finally {
+                                writeTurn.advance();
+                            }
+                        }
+                    } catch (RuntimeException | IOException e) {
+                        // release the workers waiting for turns this one will never take
+                        writeTurn.abort();
+                        throw e;
+                    }
+                    return null;
+                });
+            }
+            Throwable failure = null;
+            for (Future<Void> result : executor.invokeAll(workers)) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (failure == null && !(e.getCause() instanceof CancellationException)) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            if (failure instanceof IOException io) {
+                throw io;
+            }
+            if (failure instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (failure != null) {
+                throw new IOException(failure);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
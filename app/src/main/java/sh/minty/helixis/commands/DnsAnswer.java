@@ -0,0 +1,50 @@
+package sh.minty.helixis.commands;
+
+import java.util.List;
+
+/**
+ * The outcome of resolving one name and record type.
+ *
+ * @param records
+ *            record data in presentation format, empty for negative answers
+ * @param status
+ *            {@code NOERROR}, {@code NXDOMAIN}, or another rcode/failure name
+ * @param ttlSeconds
+ *            smallest TTL of the answer, or {@link #UNKNOWN_TTL} when the
+ *            resolver cannot report it
+ * @param latencyNanos
+ *            time from sending the query to receiving the answer
+ * @param error
+ *            human-readable failure detail, or {@code null}
+ */
+record DnsAnswer(List<String> records, String status, long ttlSeconds, long latencyNanos, String error) {
+    static final long UNKNOWN_TTL = -1;
+
+    static DnsAnswer of(List<String> records, long ttlSeconds) {
+        return new DnsAnswer(List.copyOf(records), "NOERROR", ttlSeconds, 0, null);
+    }
+
+    static DnsAnswer negative(String status, long ttlSeconds) {
+        return new DnsAnswer(List.of(), status, ttlSeconds, 0, null);
+    }
+
+    static DnsAnswer failure(String error) {
+        return failure("ERROR", error);
+    }
+
+    static DnsAnswer failure(String status, String error) {
+        return new DnsAnswer(List.of(), status, UNKNOWN_TTL, 0, error);
+    }
+
+    DnsAnswer withLatency(long nanos) {
+        return new DnsAnswer(records, status, ttlSeconds, nanos, error);
+    }
+
+    /**
+     * @return {@code true} for answers that say something about the name (positive
+     *         or negative) rather than about the resolver failing
+     */
+    boolean isCacheable() {
+        return error == null;
+    }
+}
@@ -0,0 +1,147 @@
+package sh.minty.helixis.commands;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory answer cache in front of a {@link DnsResolver}.
+ *
+ * <p>
+ * Concurrent lookups of the same name share a single in-flight query. Answers
+ * stay cached for their TTL, or for a fallback TTL when the resolver cannot
+ * report one; resolver failures are never cached.
+ * </p>
+ *
+ * <p>
+ * Expired entries are swept out every few seconds. When the cache grows past
+ * its size limit, a sweep also drops settled entries, in no particular order,
+ * until it is back to three quarters of the limit.
+ * </p>
+ */
+final class DnsCache {
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final class Entry {
+        final CompletableFuture<DnsAnswer> answer = new CompletableFuture<>();
+        volatile boolean settled;
+        volatile long deadline;
+
+        boolean isFresh(long now) {
+            return !settled || deadline - now > 0;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final DnsResolver resolver;
+    private final long fallbackTtlSeconds;
+    private final long negativeTtlSeconds;
+    private final int maxEntries;
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+    // only one caller sweeps at a time; the others carry on
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param resolver
+     *            where misses are sent
+     * @param fallbackTtlSeconds
+     *            how long to keep positive answers that carry no TTL
+     * @param negativeTtlSeconds
+     *            how long to keep negative answers that carry no TTL
+     * @param maxEntries
+     *            how many names to keep before evicting
+     */
+    DnsCache(DnsResolver resolver, long fallbackTtlSeconds, long negativeTtlSeconds, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The cache size must be at least 1.");
+        }
+        this.resolver = resolver;
+        this.fallbackTtlSeconds = fallbackTtlSeconds;
+        this.negativeTtlSeconds = negativeTtlSeconds;
+        this.maxEntries = maxEntries;
+    }
+
+    CompletableFuture<DnsAnswer> resolve(String name, String type) {
+        String key = type + ' ' + name.toLowerCase(Locale.ROOT);
+        while (true) {
+            long now = System.nanoTime();
+            Entry current = entries.get(key);
+            if (current != null && current.isFresh(now)) {
+                hits.increment();
+                return current.answer;
+            }
+
+            var fresh = new Entry();
+            boolean won = (current == null)
+                    ? entries.putIfAbsent(key, fresh) == null
+                    : entries.replace(key, current, fresh);
+            if (!won) {
+                // another caller installed an entry first; use theirs
+                continue;
+            }
+
+            misses.increment();
+            if (entries.size() > maxEntries || now - nextSweep.get() >= 0) {
+                sweep(now);
+            }
+            resolver.resolve(name, type).whenComplete((answer, failure) -> {
+                if (failure != null) {
+                    answer = DnsAnswer.failure(failure.getMessage());
+                }
+                settle(key, fresh, answer);
+                fresh.answer.complete(answer);
+            });
+            return fresh.answer;
+        }
+    }
+
+    private void settle(String key, Entry entry, DnsAnswer answer) {
+        if (!answer.isCacheable()) {
+            entries.remove(key, entry);
+            return;
+        }
+        long ttl = answer.ttlSeconds();
+        if (ttl == DnsAnswer.UNKNOWN_TTL) {
+            ttl = answer.records().isEmpty() ? negativeTtlSeconds : fallbackTtlSeconds;
+        }
+        entry.deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(ttl);
+        entry.settled = true;
+    }
+
+    private void sweep(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            nextSweep.set(now + SWEEP_INTERVAL_NANOS);
+            entries.values().removeIf(entry -> !entry.isFresh(now));
+            int excess = entries.size() - maxEntries / 4 * 3;
+            if (excess > 0 && entries.size() > maxEntries) {
+                var it = entries.values().iterator();
+                while (excess > 0 && it.hasNext()) {
+                    // in-flight entries stay, so their callers still share one query
+                    if (it.next().settled) {
+                        it.remove();
+                        excess--;
+                    }
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+}
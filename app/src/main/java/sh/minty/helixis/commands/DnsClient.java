@@ -0,0 +1,289 @@
+package sh.minty.helixis.commands;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link DnsResolver} speaking the DNS wire protocol to a single server over a
+ * connected {@link DatagramChannel}.
+ *
+ * <p>
+ * Queries are pipelined: many can be outstanding at once and a single receiver
+ * thread matches responses back to them by transaction ID and question.
+ * Unanswered queries are resent after the timeout, and truncated responses are
+ * retried over TCP.
+ * </p>
+ */
+final class DnsClient implements DnsResolver {
+    private static final int DEFAULT_PORT = 53;
+    private static final int TCP_THREADS = 4;
+    // random IDs must stay cheap to find while the ID space is mostly free
+    private static final int MAX_IN_FLIGHT = 16384;
+
+    private static final class Query {
+        final int id;
+        final String name;
+        final int type;
+        final byte[] packet;
+        final long started = System.nanoTime();
+        final CompletableFuture<DnsAnswer> future = new CompletableFuture<>();
+        final AtomicBoolean overTcp = new AtomicBoolean();
+        volatile int attempt;
+
+        Query(int id, String name, int type, byte[] packet) {
+            this.id = id;
+            // compared with the question echoed in responses, which is in ASCII
+            this.name = DnsMessage.wireName(name);
+            this.type = type;
+            this.packet = packet;
+        }
+
+        boolean matches(DnsMessage.Response response) {
+            return response.id() == id && response.questionType() == type
+                    && DnsMessage.normalizeName(response.questionName()).equals(name);
+        }
+    }
+
+    private final InetSocketAddress server;
+    private final DatagramChannel channel;
+    private final int timeoutMillis;
+    private final int attempts;
+    private final Semaphore window;
+    private final ConcurrentHashMap<Integer, Query> inFlight = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    private final ExecutorService tcpPool;
+
+    /**
+     * @param server
+     *            the recursive resolver to query
+     * @param timeout
+     *            how long to wait for each attempt
+     * @param attempts
+     *            total UDP sends per query before giving up
+     * @param maxInFlight
+     *            how many queries may be outstanding; {@link #resolve} blocks while
+     *            the window is full
+     */
+    DnsClient(InetSocketAddress server, Duration timeout, int attempts, int maxInFlight) throws IOException {
+        if (attempts < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("attempts and maxInFlight must be positive");
+        }
+        this.server = server;
+        this.timeoutMillis = (int) Math.min(Integer.MAX_VALUE, timeout.toMillis());
+        this.attempts = attempts;
+        this.window = new Semaphore(Math.min(maxInFlight, MAX_IN_FLIGHT));
+        this.channel = DatagramChannel.open();
+        this.channel.connect(server);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "dns-timer"));
+        this.tcpPool = Executors.newFixedThreadPool(TCP_THREADS, runnable -> daemon(runnable, "dns-tcp"));
+        daemon(this::receiveLoop, "dns-receiver").start();
+    }
+
+    /**
+     * Parse {@code host}, {@code host:port} or {@code [v6]:port}.
+     */
+    static InetSocketAddress parseServer(String spec) {
+        String host = spec;
+        int port = DEFAULT_PORT;
+        if (spec.startsWith("[")) {
+            int close = spec.indexOf(']');
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed '[' in server address: " + spec);
+            }
+            host = spec.substring(1, close);
+            if (close + 1 < spec.length()) {
+                if (spec.charAt(close + 1) != ':') {
+                    throw new IllegalArgumentException("Invalid server address: " + spec);
+                }
+                port = Integer.parseInt(spec.substring(close + 2));
+            }
+        } else if (spec.indexOf(':') >= 0 && spec.indexOf(':') == spec.lastIndexOf(':')) {
+            // exactly one colon: host:port (bare IPv6 literals have several)
+            int colon = spec.indexOf(':');
+            host = spec.substring(0, colon);
+            port = Integer.parseInt(spec.substring(colon + 1));
+        }
+        return new InetSocketAddress(host, port);
+    }
+
+    @Override
+    public CompletableFuture<DnsAnswer> resolve(String name, String type) {
+        int qtype;
+        try {
+            qtype = DnsMessage.typeCode(type);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(DnsAnswer.failure(e.getMessage()));
+        }
+
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.completedFuture(DnsAnswer.failure("interrupted"));
+        }
+
+        Query query;
+        try {
+            query = register(name, qtype);
+        } catch (IllegalArgumentException e) {
+            window.release();
+            return CompletableFuture.completedFuture(DnsAnswer.failure(e.getMessage()));
+        }
+        send(query, 1);
+        return query.future;
+    }
+
+    private Query register(String name, int type) {
+        // unpredictable IDs are part of the defence against spoofed answers
+        var random = RandomSource.current();
+        while (true) {
+            int id = random.nextInt(0x10000);
+            var query = new Query(id, name, type, DnsMessage.encodeQuery(id, name, type));
+            if (inFlight.putIfAbsent(id, query) == null) {
+                return query;
+            }
+        }
+    }
+
+    private void send(Query query, int attempt) {
+        query.attempt = attempt;
+        try {
+            channel.write(ByteBuffer.wrap(query.packet));
+        } catch (IOException e) {
+            complete(query, DnsAnswer.failure("send failed: " + e.getMessage()));
+            return;
+        }
+        try {
+            timer.schedule(() -> onTimeout(query, attempt), timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // closing
+        }
+    }
+
+    private void onTimeout(Query query, int attempt) {
+        if (query.overTcp.get() || query.attempt != attempt || inFlight.get(query.id) != query) {
+            return;
+        }
+        if (attempt < attempts) {
+            send(query, attempt + 1);
+        } else {
+            complete(query, DnsAnswer.failure("TIMEOUT", "no response after " + attempts + " attempts"));
+        }
+    }
+
+    private void receiveLoop() {
+        var buffer = ByteBuffer.allocate(DnsMessage.MAX_UDP_PAYLOAD);
+        while (channel.isOpen()) {
+            buffer.clear();
+            try {
+                channel.read(buffer);
+            } catch (PortUnreachableException e) {
+                // ICMP from an earlier send; the affected query will time out
+                continue;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                continue;
+            }
+            onUdpResponse(buffer.array(), buffer.position());
+        }
+    }
+
+    private void onUdpResponse(byte[] message, int length) {
+        var query = inFlight.get(DnsMessage.peekId(message, length));
+        if (query == null || query.overTcp.get()) {
+            return;
+        }
+
+        DnsMessage.Response response;
+        try {
+            response = DnsMessage.decode(message, length);
+        } catch (RuntimeException e) {
+            // fail the query rather than the receiver thread, which serves every query
+            complete(query, DnsAnswer.failure("Malformed response: " + e.getMessage()));
+            return;
+        }
+        if (!query.matches(response)) {
+            return;
+        }
+
+        if (response.truncated()) {
+            if (query.overTcp.compareAndSet(false, true)) {
+                tcpPool.execute(() -> queryOverTcp(query));
+            }
+            return;
+        }
+        complete(query, response.toAnswer());
+    }
+
+    private void queryOverTcp(Query query) {
+        try (var socket = new Socket()) {
+            socket.connect(server, timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+
+            var out = new DataOutputStream(socket.getOutputStream());
+            out.writeShort(query.packet.length);
+            out.write(query.packet);
+            out.flush();
+
+            var in = new DataInputStream(socket.getInputStream());
+            var message = new byte[in.readUnsignedShort()];
+            in.readFully(message);
+
+            var response = DnsMessage.decode(message, message.length);
+            if (!query.matches(response)) {
+                complete(query, DnsAnswer.failure("TCP response does not match query"));
+                return;
+            }
+            complete(query, response.toAnswer());
+        } catch (IOException | RuntimeException e) {
+            // onTimeout leaves queries on TCP alone, so this must always complete the query
+            complete(query, DnsAnswer.failure("TCP fallback failed: " + e.getMessage()));
+        }
+    }
+
+    private void complete(Query query, DnsAnswer answer) {
+        // whoever removes the entry owns completion, so late duplicates are dropped
+        if (inFlight.remove(query.id, query)) {
+            window.release();
+            query.future.complete(answer.withLatency(System.nanoTime() - query.started));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing useful to do
+        }
+        timer.shutdownNow();
+        tcpPool.shutdownNow();
+        for (var query : inFlight.values()) {
+            complete(query, DnsAnswer.failure("resolver closed"));
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        var thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -1,20 +1,65 @@
 package sh.minty.helixis.commands;
 
-import java.util.Hashtable;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import javax.naming.Context;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.naming.NamingEnumeration;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 @Command(name = "dns", mixinStandardHelpOptions = true, description = "DNS lookup utilities.", subcommands = {
-        DnsCommand.LookupCommand.class})
+        DnsCommand.LookupCommand.class, DnsCommand.BulkCommand.class, DnsCommand.ReverseCommand.class})
 public class DnsCommand {
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Options shared by commands that can talk to a DNS server directly instead of
+     * going through JNDI.
+     */
+    static class ResolverOptions {
+        @Option(names = {"-s",
+                "--server"}, description = "Query this DNS server (host[:port]) directly over UDP, with TCP fallback, instead of the system resolver.")
+        String server;
+
+        @Option(names = {
+                "--timeout"}, description = "Milliseconds to wait for each attempt with --server. Defaults to 2000.")
+        int timeoutMillis = 2000;
+
+        @Option(names = {"--attempts"}, description = "UDP attempts per query with --server. Defaults to 3.")
+        int attempts = 3;
+
+        /**
+         * @param parallelism
+         *            queries in flight for the native client, threads for JNDI
+         */
+        DnsResolver open(int parallelism) throws IOException {
+            if (server == null) {
+                return new JndiDnsResolver(parallelism);
+            }
+            return new DnsClient(DnsClient.parseServer(server), Duration.ofMillis(timeoutMillis), attempts,
+                    parallelism);
+        }
+    }
 
     @Command(name = "lookup", mixinStandardHelpOptions = true, description = "Performs a DNS lookup for a given hostname.")
     static class LookupCommand implements Callable<Integer> {
@@ -25,12 +70,16 @@ public class DnsCommand {
                 "--type"}, description = "The record type to lookup (A, AAAA, MX, TXT, CNAME, NS). Defaults to A.", defaultValue = "A")
         private String recordType;
 
+        @Mixin
+        private ResolverOptions resolverOptions = new ResolverOptions();
+
         @Override
         public Integer call() {
+            if (resolverOptions.server != null) {
+                return lookupDirect();
+            }
             try {
-                Hashtable<String, String> env = new Hashtable<>();
-                env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
-                DirContext context = new InitialDirContext(env);
+                DirContext context = JndiDnsResolver.newContext();
                 Attributes attributes = context.getAttributes(domainName, new String[]{recordType});
                 Attribute attribute = attributes.get(recordType);
 
@@ -49,5 +98,329 @@ public class DnsCommand {
                 return 1;
             }
         }
+
+        private Integer lookupDirect() {
+            try (var resolver = resolverOptions.open(1)) {
+                var answer = resolver.resolve(domainName, recordType).join();
+                if (answer.error() != null) {
+                    System.err.println("Error performing DNS lookup: " + answer.status() + ": " + answer.error());
+                    return 1;
+                }
+                if (answer.records().isEmpty()) {
+                    System.out.println("No " + recordType + " records found for " + domainName);
+                } else {
+                    answer.records().forEach(System.out::println);
+                }
+                System.err.printf(";; %s, TTL %s, %.1f ms%n", answer.status(), formatTtl(answer),
+                        answer.latencyNanos() / 1e6);
+                return 0;
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error performing DNS lookup: " + e.getMessage());
+                return 1;
+            }
+        }
+    }
+
+    private static String formatTtl(DnsAnswer answer) {
+        return (answer.ttlSeconds() == DnsAnswer.UNKNOWN_TTL) ? "-" : Long.toString(answer.ttlSeconds());
+    }
+
+    private record Pending(String label, CompletableFuture<DnsAnswer> answer) {
+    }
+
+    private static final Pending END = new Pending(null, null);
+
+    @FunctionalInterface
+    private interface Producer {
+        /**
+         * Queue lookups in output order. Blocking on a full queue is the back-pressure
+         * that bounds outstanding lookups.
+         */
+        void produce(BlockingQueue<Pending> queue) throws IOException, InterruptedException;
+    }
+
+    @FunctionalInterface
+    private interface AnswerWriter {
+        void write(String label, DnsAnswer answer) throws IOException;
+    }
+
+    /**
+     * Runs {@code producer} on a background thread and hands each answer to
+     * {@code writer} on the calling thread, in the order the lookups were queued.
+     *
+     * @return {@code false} if the producer failed with an I/O error, which has
+     *         already been reported
+     */
+    private static boolean drainInOrder(int window, Producer producer, AnswerWriter writer)
+            throws IOException, InterruptedException {
+        BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(window);
+        var failure = new AtomicReference<IOException>();
+
+        var thread = new Thread(() -> {
+            try {
+                producer.produce(queue);
+            } catch (IOException e) {
+                failure.set(e);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                // writer is gone
+            }
+        }, "dns-producer");
+        thread.setDaemon(true);
+        thread.start();
+
+        try {
+            Pending pending;
+            while ((pending = queue.take()) != END) {
+                writer.write(pending.label(), pending.answer().join());
+            }
+        } finally {
+            thread.interrupt();
+        }
+
+        if (failure.get() != null) {
+            System.err.println("Error reading input: " + failure.get().getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private static BufferedWriter newStdoutWriter() {
+        // not closed by callers: System.out must stay usable after the command returns
+        return new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+    }
+
+    @Command(name = "bulk", mixinStandardHelpOptions = true, description = "Resolves many hostnames concurrently, one per input line, printing results in input order.")
+    static class BulkCommand implements Callable<Integer> {
+        @Parameters(index = "0", arity = "0..1", description = "File with one hostname per line. Reads standard input if omitted or '-'.")
+        private String inputFile;
+
+        @Option(names = {"-t",
+                "--type"}, description = "The record type to lookup (A, AAAA, MX, TXT, CNAME, NS). Defaults to A.", defaultValue = "A")
+        private String recordType;
+
+        @Option(names = {"-p", "--parallelism"}, description = "Maximum number of concurrent lookups. Defaults to 64.")
+        private int parallelism = 64;
+
+        @Mixin
+        private ResolverOptions resolverOptions = new ResolverOptions();
+
+        @Option(names = {
+                "--cache-ttl"}, description = "Seconds to cache answers whose TTL is unknown. Defaults to 300.")
+        private long cacheTtl = 300;
+
+        @Option(names = {
+                "--negative-ttl"}, description = "Seconds to cache NXDOMAIN/empty answers whose TTL is unknown. Defaults to 60.")
+        private long negativeTtl = 60;
+
+        @Option(names = {"--cache-size"}, description = "Maximum number of names to keep cached. Defaults to 100000.")
+        private int cacheSize = 100_000;
+
+        @Override
+        public Integer call() {
+            if (parallelism < 1) {
+                System.err.println("Error: Parallelism must be at least 1.");
+                return 1;
+            }
+            if (cacheSize < 1) {
+                System.err.println("Error: --cache-size must be at least 1.");
+                return 1;
+            }
+            recordType = recordType.toUpperCase(Locale.ROOT);
+
+            var out = newStdoutWriter();
+            try (var resolver = resolverOptions.open(parallelism); var in = openInput()) {
+                var cache = new DnsCache(resolver, cacheTtl, negativeTtl, cacheSize);
+                boolean ok = drainInOrder(parallelism * 4, queue -> {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        String name = line.strip();
+                        if (name.isEmpty() || name.startsWith("#")) {
+                            continue;
+                        }
+                        queue.put(new Pending(name, cache.resolve(name, recordType)));
+                    }
+                }, (name, answer) -> writeAnswer(out, name, answer));
+                out.flush();
+                if (!ok) {
+                    return 1;
+                }
+                System.err.printf("Resolved %d names (%d cache hits, %d queries).%n", cache.hits() + cache.misses(),
+                        cache.hits(), cache.misses());
+                return 0;
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error: " + e.getMessage());
+                return 1;
+            } catch (InterruptedException e) {
+                System.err.println("DNS resolution interrupted.");
+                Thread.currentThread().interrupt();
+                return 1;
+            }
+        }
+
+        private void writeAnswer(Writer out, String name, DnsAnswer answer) throws IOException {
+            out.write(name);
+            out.write('\t');
+            out.write(recordType);
+            out.write('\t');
+            out.write(answer.status());
+            out.write('\t');
+            out.write(formatTtl(answer));
+            out.write('\t');
+            out.write(Long.toString(answer.latencyNanos() / 1_000_000));
+            out.write('\t');
+            if (answer.error() != null) {
+                out.write(answer.error());
+            } else {
+                out.write(String.join(",", answer.records()));
+            }
+            out.write('\n');
+        }
+
+        private BufferedReader openInput() throws IOException {
+            if (inputFile == null || inputFile.equals("-")) {
+                return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+            }
+            return Files.newBufferedReader(Path.of(inputFile));
+        }
+    }
+
+    @Command(name = "reverse", mixinStandardHelpOptions = true, description = "Resolves PTR records for every address in one or more CIDR ranges, in address order.")
+    static class ReverseCommand implements Callable<Integer> {
+        // addresses covered by one probed zone: the last octet (IPv4) or the last two
+        // nibbles (IPv6)
+        private static final int ZONE_BLOCK = 256;
+        // zone probes kept for ranges that share zones
+        private static final int PROBE_CACHE_SIZE = 4096;
+
+        @Parameters(arity = "1..*", description = "CIDR ranges to sweep (e.g., '192.0.2.0/24', '2001:db8::/120').")
+        private List<String> ranges;
+
+        @Option(names = {"-w", "--window"}, description = "Maximum number of PTR lookups in flight. Defaults to 256.")
+        private int window = 256;
+
+        @Option(names = {"-a", "--all"}, description = "Also print addresses without a PTR record.")
+        private boolean printAll;
+
+        @Option(names = {
+                "--no-zone-probe"}, description = "Do not skip /24 (IPv4) or /120 (IPv6) blocks whose reverse zone does not exist.")
+        private boolean noZoneProbe;
+
+        @Option(names = {
+                "--negative-ttl"}, description = "Seconds to cache NXDOMAIN zone probes whose TTL is unknown. Defaults to 300.")
+        private long negativeTtl = 300;
+
+        @Option(names = {
+                "--cache-ttl"}, description = "Seconds to cache other zone probes whose TTL is unknown. Defaults to 300.")
+        private long cacheTtl = 300;
+
+        @Mixin
+        private ResolverOptions resolverOptions = new ResolverOptions();
+
+        // per-address PTR lookups, which bypass the cache
+        private long lookups;
+
+        @Override
+        public Integer call() {
+            if (window < 1) {
+                System.err.println("Error: Window must be at least 1.");
+                return 1;
+            }
+
+            List<CidrRange> blocks = new ArrayList<>();
+            try {
+                for (var range : ranges) {
+                    blocks.add(CidrRange.parse(range));
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error: Invalid CIDR range. " + e.getMessage());
+                return 1;
+            }
+
+            var out = newStdoutWriter();
+            var found = new long[1];
+            try (var resolver = resolverOptions.open(window)) {
+                // only zone probes are cached; each address is looked up once anyway
+                var cache = new DnsCache(resolver, cacheTtl, negativeTtl, PROBE_CACHE_SIZE);
+                drainInOrder(window, queue -> {
+                    for (var block : blocks) {
+                        sweep(block, resolver, cache, queue);
+                    }
+                }, (address, answer) -> {
+                    if (!answer.records().isEmpty()) {
+                        found[0]++;
+                    } else if (!printAll) {
+                        return;
+                    }
+                    out.write(address);
+                    out.write('\t');
+                    out.write(answer.status());
+                    out.write('\t');
+                    out.write(answer.error() != null ? answer.error() : String.join(",", answer.records()));
+                    out.write('\n');
+                });
+                out.flush();
+                System.err.printf("Found %d PTR records (%d queries, %d zone probe cache hits).%n", found[0],
+                        lookups + cache.misses(), cache.hits());
+                return 0;
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error: " + e.getMessage());
+                return 1;
+            } catch (InterruptedException e) {
+                System.err.println("Reverse sweep interrupted.");
+                Thread.currentThread().interrupt();
+                return 1;
+            }
+        }
+
+        private void sweep(CidrRange block, DnsResolver resolver, DnsCache cache, BlockingQueue<Pending> queue)
+                throws InterruptedException {
+            var bytes = new byte[block.isIpv6() ? 16 : 4];
+            // only probe when the range covers whole zone blocks
+            boolean probe = !noZoneProbe && block.size() >= ZONE_BLOCK;
+            CompletableFuture<DnsAnswer> zone = null;
+            CompletableFuture<DnsAnswer> nextZone = null;
+
+            for (long i = 0; i < block.size(); i++) {
+                block.addressBytesAt(i, bytes);
+                String name = DnsMessage.reverseName(bytes);
+
+                if (probe && i % ZONE_BLOCK == 0) {
+                    // look one zone ahead so the probe round trip overlaps this block's lookups
+                    zone = (nextZone != null) ? nextZone : cache.resolve(zoneOf(name, block.isIpv6()), "PTR");
+                    nextZone = null;
+                    if (i + ZONE_BLOCK < block.size()) {
+                        block.addressBytesAt(i + ZONE_BLOCK, bytes);
+                        nextZone = cache.resolve(zoneOf(DnsMessage.reverseName(bytes), block.isIpv6()), "PTR");
+                        block.addressBytesAt(i, bytes);
+                    }
+                }
+
+                String address = block.addressAt(i).getHostAddress();
+                if (zone != null && "NXDOMAIN".equals(zone.join().status())) {
+                    // RFC 8020: nothing exists below a name that does not exist
+                    if (printAll) {
+                        queue.put(new Pending(address, zone));
+                    }
+                    continue;
+                }
+                lookups++;
+                queue.put(new Pending(address, resolver.resolve(name, "PTR")));
+            }
+        }
+
+        private static String zoneOf(String reverseName, boolean ipv6) {
+            // drop the labels for the low octet (IPv4) or low two nibbles (IPv6)
+            int labels = ipv6 ? 2 : 1;
+            int pos = 0;
+            for (int i = 0; i < labels; i++) {
+                pos = reverseName.indexOf('.', pos) + 1;
+            }
+            return reverseName.substring(pos);
+        }
     }
 }
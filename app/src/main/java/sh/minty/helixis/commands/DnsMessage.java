@@ -0,0 +1,404 @@
+package sh.minty.helixis.commands;
+
+import java.net.IDN;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal RFC 1035 message codec: builds single-question queries and decodes
+ * the answer section of responses into presentation-format strings.
+ */
+final class DnsMessage {
+    static final int HEADER_LENGTH = 12;
+    static final int MAX_UDP_PAYLOAD = 4096;
+
+    private static final int FLAG_QR = 0x8000;
+    private static final int FLAG_TC = 0x0200;
+    private static final int FLAG_RD = 0x0100;
+    private static final int CLASS_IN = 1;
+    private static final int MAX_POINTER_JUMPS = 64;
+
+    static final int TYPE_A = 1;
+    static final int TYPE_NS = 2;
+    static final int TYPE_CNAME = 5;
+    static final int TYPE_SOA = 6;
+    static final int TYPE_PTR = 12;
+    static final int TYPE_MX = 15;
+    static final int TYPE_TXT = 16;
+    static final int TYPE_AAAA = 28;
+    static final int TYPE_SRV = 33;
+
+    private static final Map<String, Integer> TYPE_CODES = Map.of("A", TYPE_A, "NS", TYPE_NS, "CNAME", TYPE_CNAME,
+            "SOA", TYPE_SOA, "PTR", TYPE_PTR, "MX", TYPE_MX, "TXT", TYPE_TXT, "AAAA", TYPE_AAAA, "SRV", TYPE_SRV, "ANY",
+            255);
+
+    private static final String[] RCODE_NAMES = {"NOERROR", "FORMERR", "SERVFAIL", "NXDOMAIN", "NOTIMP", "REFUSED"};
+
+    /**
+     * A decoded response.
+     *
+     * @param records
+     *            data of the answer records whose type matches the question
+     * @param ttlSeconds
+     *            smallest TTL along the answer chain, or the negative-caching TTL
+     *            from the SOA for empty answers, or {@link DnsAnswer#UNKNOWN_TTL}
+     */
+    record Response(int id, boolean truncated, int rcode, String questionName, int questionType, List<String> records,
+            long ttlSeconds) {
+
+        DnsAnswer toAnswer() {
+            return switch (rcode) {
+                case 0 ->
+                    records.isEmpty() ? DnsAnswer.negative("NOERROR", ttlSeconds) : DnsAnswer.of(records, ttlSeconds);
+                case 3 -> DnsAnswer.negative("NXDOMAIN", ttlSeconds);
+                default -> DnsAnswer.failure(rcodeName(rcode), "server answered " + rcodeName(rcode));
+            };
+        }
+    }
+
+    private DnsMessage() {
+    }
+
+    /**
+     * @param type
+     *            a mnemonic such as {@code AAAA}, or {@code TYPEnnn}
+     * @return the numeric record type
+     * @throws IllegalArgumentException
+     *             for unknown mnemonics
+     */
+    static int typeCode(String type) {
+        String upper = type.toUpperCase(Locale.ROOT);
+        Integer code = TYPE_CODES.get(upper);
+        if (code != null) {
+            return code;
+        }
+        if (upper.startsWith("TYPE")) {
+            try {
+                int value = Integer.parseInt(upper.substring(4));
+                if (value > 0 && value <= 0xFFFF) {
+                    return value;
+                }
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+        throw new IllegalArgumentException("Unsupported record type: " + type);
+    }
+
+    static String rcodeName(int rcode) {
+        return (rcode < RCODE_NAMES.length) ? RCODE_NAMES[rcode] : "RCODE" + rcode;
+    }
+
+    /**
+     * Lower-cases {@code name} and strips a trailing dot so names from the command
+     * line and from responses can be compared.
+     */
+    static String normalizeName(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".") ? lower.substring(0, lower.length() - 1) : lower;
+    }
+
+    /**
+     * The name as it is sent in a query: converted to ASCII with IDNA, then
+     * normalized as by {@link #normalizeName}.
+     *
+     * @throws IllegalArgumentException
+     *             if the name cannot be converted
+     */
+    static String wireName(String name) {
+        return normalizeName(IDN.toASCII(name, IDN.ALLOW_UNASSIGNED));
+    }
+
+    /**
+     * Build the {@code in-addr.arpa} or {@code ip6.arpa} name for a 4- or 16-byte
+     * address.
+     */
+    static String reverseName(byte[] address) {
+        var name = new StringBuilder(address.length == 4 ? 29 : 73);
+        if (address.length == 4) {
+            for (int i = 3; i >= 0; i--) {
+                name.append(address[i] & 0xFF).append('.');
+            }
+            return name.append("in-addr.arpa").toString();
+        }
+        for (int i = 15; i >= 0; i--) {
+            name.append(Character.forDigit(address[i] & 0xF, 16)).append('.')
+                    .append(Character.forDigit((address[i] >> 4) & 0xF, 16)).append('.');
+        }
+        return name.append("ip6.arpa").toString();
+    }
+
+    /**
+     * Encode a recursive query for one name.
+     *
+     * @throws IllegalArgumentException
+     *             if the name is not a valid domain name
+     */
+    static byte[] encodeQuery(int id, String name, int type) {
+        String ascii = wireName(name);
+        var labels = ascii.isEmpty() ? new String[0] : ascii.split("\\.", -1);
+
+        int nameLength = 1;
+        for (var label : labels) {
+            if (label.isEmpty() || label.length() > 63) {
+                throw new IllegalArgumentException("Invalid domain name: " + name);
+            }
+            nameLength += label.length() + 1;
+        }
+        if (nameLength > 255) {
+            throw new IllegalArgumentException("Domain name too long: " + name);
+        }
+
+        var packet = new byte[HEADER_LENGTH + nameLength + 4];
+        putShort(packet, 0, id);
+        putShort(packet, 2, FLAG_RD);
+        putShort(packet, 4, 1); // QDCOUNT
+
+        int pos = HEADER_LENGTH;
+        for (var label : labels) {
+            packet[pos++] = (byte) label.length();
+            for (int i = 0; i < label.length(); i++) {
+                packet[pos++] = (byte) label.charAt(i);
+            }
+        }
+        packet[pos++] = 0;
+        putShort(packet, pos, type);
+        putShort(packet, pos + 2, CLASS_IN);
+        return packet;
+    }
+
+    /**
+     * @return the transaction ID of a message, or -1 if it is too short
+     */
+    static int peekId(byte[] message, int length) {
+        return (length < HEADER_LENGTH) ? -1 : getShort(message, 0);
+    }
+
+    /**
+     * Decode a response to a single-question query.
+     *
+     * @throws IllegalArgumentException
+     *             if the message is not a well-formed response
+     */
+    static Response decode(byte[] message, int length) {
+        if (length < HEADER_LENGTH) {
+            throw new IllegalArgumentException("Message shorter than header");
+        }
+        int id = getShort(message, 0);
+        int flags = getShort(message, 2);
+        if ((flags & FLAG_QR) == 0) {
+            throw new IllegalArgumentException("Not a response");
+        }
+        int questions = getShort(message, 4);
+        int answers = getShort(message, 6);
+        int authorities = getShort(message, 8);
+        boolean truncated = (flags & FLAG_TC) != 0;
+        if (questions != 1) {
+            throw new IllegalArgumentException("Expected exactly one question, got " + questions);
+        }
+
+        var name = new StringBuilder();
+        int pos = readName(message, length, HEADER_LENGTH, name);
+        checkAvailable(length, pos, 4);
+        int questionType = getShort(message, pos);
+        pos += 4;
+
+        if (truncated) {
+            // the rest is unreliable; the caller retries over TCP
+            return new Response(id, true, flags & 0xF, name.toString(), questionType, List.of(), DnsAnswer.UNKNOWN_TTL);
+        }
+
+        List<String> records = new ArrayList<>();
+        long ttl = Long.MAX_VALUE;
+        var scratch = new StringBuilder();
+        for (int i = 0; i < answers; i++) {
+            scratch.setLength(0);
+            pos = readName(message, length, pos, scratch);
+            checkAvailable(length, pos, 10);
+            int type = getShort(message, pos);
+            long recordTtl = getInt(message, pos + 4) & 0xFFFFFFFFL;
+            int rdLength = getShort(message, pos + 8);
+            pos += 10;
+            checkAvailable(length, pos, rdLength);
+
+            // CNAMEs leading to the answer limit how long the answer may be cached
+            if (type == questionType || type == TYPE_CNAME) {
+                ttl = Math.min(ttl, recordTtl);
+            }
+            if (type == questionType || questionType == 255) {
+                records.add(formatRdata(message, length, type, pos, rdLength));
+            }
+            pos += rdLength;
+        }
+
+        if (records.isEmpty()) {
+            // RFC 2308: negative answers are cached for min(SOA TTL, SOA MINIMUM)
+            ttl = DnsAnswer.UNKNOWN_TTL;
+            for (int i = 0; i < authorities; i++) {
+                scratch.setLength(0);
+                pos = readName(message, length, pos, scratch);
+                checkAvailable(length, pos, 10);
+                int type = getShort(message, pos);
+                long recordTtl = getInt(message, pos + 4) & 0xFFFFFFFFL;
+                int rdLength = getShort(message, pos + 8);
+                pos += 10;
+                checkAvailable(length, pos, rdLength);
+                if (type == TYPE_SOA) {
+                    int end = pos + rdLength;
+                    int p = readName(message, length, pos, scratch);
+                    p = readName(message, length, p, scratch);
+                    checkAvailable(end, p, 20);
+                    long minimum = getInt(message, p + 16) & 0xFFFFFFFFL;
+                    ttl = Math.min(recordTtl, minimum);
+                    break;
+                }
+                pos += rdLength;
+            }
+        }
+
+        return new Response(id, false, flags & 0xF, name.toString(), questionType, records,
+                ttl == Long.MAX_VALUE ? DnsAnswer.UNKNOWN_TTL : ttl);
+    }
+
+    private static String formatRdata(byte[] m, int length, int type, int pos, int rdLength) {
+        var out = new StringBuilder();
+        switch (type) {
+            case TYPE_A, TYPE_AAAA -> {
+                if (rdLength != 4 && rdLength != 16) {
+                    throw new IllegalArgumentException("Bad address length " + rdLength);
+                }
+                var bytes = new byte[rdLength];
+                System.arraycopy(m, pos, bytes, 0, rdLength);
+                try {
+                    out.append(InetAddress.getByAddress(bytes).getHostAddress());
+                } catch (UnknownHostException e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+            case TYPE_NS, TYPE_CNAME, TYPE_PTR -> readName(m, length, pos, out);
+            case TYPE_MX -> {
+                checkAvailable(pos + rdLength, pos, 2);
+                out.append(getShort(m, pos)).append(' ');
+                readName(m, length, pos + 2, out);
+            }
+            case TYPE_SRV -> {
+                checkAvailable(pos + rdLength, pos, 6);
+                out.append(getShort(m, pos)).append(' ').append(getShort(m, pos + 2)).append(' ')
+                        .append(getShort(m, pos + 4)).append(' ');
+                readName(m, length, pos + 6, out);
+            }
+            case TYPE_SOA -> {
+                int p = readName(m, length, pos, out);
+                out.append(' ');
+                p = readName(m, length, p, out);
+                checkAvailable(pos + rdLength, p, 20);
+                for (int i = 0; i < 5; i++) {
+                    out.append(' ').append(getInt(m, p + i * 4) & 0xFFFFFFFFL);
+                }
+            }
+            case TYPE_TXT -> {
+                int end = pos + rdLength;
+                while (pos < end) {
+                    int len = m[pos++] & 0xFF;
+                    checkAvailable(end, pos, len);
+                    if (out.length() > 0) {
+                        out.append(' ');
+                    }
+                    out.append('"');
+                    for (int i = 0; i < len; i++) {
+                        char c = (char) (m[pos + i] & 0xFF);
+                        if (c == '"' || c == '\\') {
+                            out.append('\\');
+                        }
+                        out.append(c);
+                    }
+                    out.append('"');
+                    pos += len;
+                }
+            }
+            default -> {
+                // RFC 3597 generic encoding
+                out.append("\\# ").append(rdLength);
+                if (rdLength > 0) {
+                    out.append(' ');
+                }
+                for (int i = 0; i < rdLength; i++) {
+                    out.append(Character.forDigit((m[pos + i] >> 4) & 0xF, 16))
+                            .append(Character.forDigit(m[pos + i] & 0xF, 16));
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Append the (possibly compressed) name at {@code pos} to {@code out} in
+     * absolute form with a trailing dot.
+     *
+     * @return the offset just past the name in the original position
+     */
+    private static int readName(byte[] m, int length, int pos, StringBuilder out) {
+        int end = -1;
+        int jumps = 0;
+        int start = out.length();
+        while (true) {
+            checkAvailable(length, pos, 1);
+            int len = m[pos] & 0xFF;
+            if ((len & 0xC0) == 0xC0) {
+                checkAvailable(length, pos, 2);
+                if (end < 0) {
+                    end = pos + 2;
+                }
+                if (++jumps > MAX_POINTER_JUMPS) {
+                    throw new IllegalArgumentException("Compression loop");
+                }
+                pos = ((len & 0x3F) << 8) | (m[pos + 1] & 0xFF);
+                continue;
+            }
+            if ((len & 0xC0) != 0) {
+                throw new IllegalArgumentException("Unsupported label type");
+            }
+            pos++;
+            if (len == 0) {
+                break;
+            }
+            checkAvailable(length, pos, len);
+            for (int i = 0; i < len; i++) {
+                char c = (char) (m[pos + i] & 0xFF);
+                if (c == '.' || c == '\\') {
+                    out.append('\\');
+                }
+                out.append(c);
+            }
+            out.append('.');
+            pos += len;
+        }
+        if (out.length() == start) {
+            out.append('.');
+        }
+        return (end < 0) ? pos : end;
+    }
+
+    private static void checkAvailable(int length, int pos, int needed) {
+        if (pos < 0 || pos + needed > length) {
+            throw new IllegalArgumentException("Truncated message");
+        }
+    }
+
+    private static int getShort(byte[] b, int pos) {
+        return ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+    }
+
+    private static int getInt(byte[] b, int pos) {
+        return (getShort(b, pos) << 16) | getShort(b, pos + 2);
+    }
+
+    private static void putShort(byte[] b, int pos, int value) {
+        b[pos] = (byte) (value >>> 8);
+        b[pos + 1] = (byte) value;
+    }
+}
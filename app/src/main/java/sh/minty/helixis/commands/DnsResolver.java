@@ -0,0 +1,22 @@
+package sh.minty.helixis.commands;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous DNS lookups. Implementations decide how many queries run at
+ * once; callers are expected to bound how many futures they keep outstanding.
+ */
+interface DnsResolver extends AutoCloseable {
+    /**
+     * @param name
+     *            the name to look up
+     * @param type
+     *            record type mnemonic such as {@code A} or {@code PTR}
+     * @return a future that always completes normally; failures are reported
+     *         through {@link DnsAnswer#failure(String)}
+     */
+    CompletableFuture<DnsAnswer> resolve(String name, String type);
+
+    @Override
+    void close();
+}
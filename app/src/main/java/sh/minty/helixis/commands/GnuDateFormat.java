@@ -0,0 +1,332 @@
+package sh.minty.helixis.commands;
+
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.SignStyle;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.time.temporal.Temporal;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalField;
+import java.time.temporal.TemporalUnit;
+import java.time.temporal.UnsupportedTemporalTypeException;
+import java.time.temporal.ValueRange;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles GNU {@code date} formats ({@code %Y-%m-%d %H:%M:%S}) into
+ * {@link DateTimeFormatter}s.
+ *
+ * <p>
+ * A format is read once from left to right and every conversion becomes the
+ * matching formatter element, with the text between conversions kept as
+ * literals, so characters that are pattern letters to
+ * {@link DateTimeFormatter#ofPattern} need no quoting. {@code %s} is the
+ * instant's epoch second and {@code %N} its fraction of a second, which the
+ * formatter prints from any zoned value and resolves when parsing. The flags
+ * {@code -} (no padding), {@code _} (spaces) and {@code 0} (zeros) and a field
+ * width apply to numeric conversions; {@code %3N} gives milliseconds.
+ * Conversions that are not understood are kept as text, as GNU {@code date}
+ * does.
+ * </p>
+ *
+ * <p>
+ * Compiled formatters are immutable and cached by format, so a format used for
+ * every line of a large input is compiled once.
+ * </p>
+ */
+final class GnuDateFormat {
+    private static final ConcurrentHashMap<String, DateTimeFormatter> CACHE = new ConcurrentHashMap<>();
+
+    private static final Map<Long, String> UPPER_AM_PM = Map.of(0L, "AM", 1L, "PM");
+    private static final Map<Long, String> LOWER_AM_PM = Map.of(0L, "am", 1L, "pm");
+
+    private final DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder();
+    private final StringBuilder literal = new StringBuilder();
+
+    private GnuDateFormat() {
+    }
+
+    /**
+     * @return the formatter for {@code format}, compiled on first use
+     */
+    static DateTimeFormatter compile(String format) {
+        return CACHE.computeIfAbsent(format, f -> {
+            var compiler = new GnuDateFormat();
+            compiler.append(f);
+            compiler.flush();
+            return compiler.builder.toFormatter();
+        });
+    }
+
+    private void append(String format) {
+        int n = format.length();
+        int i = 0;
+        while (i < n) {
+            char c = format.charAt(i++);
+            if (c != '%' || i == n) {
+                literal.append(c);
+                continue;
+            }
+            int start = i - 1;
+            char pad = 0;
+            while (i < n && "-_0^#".indexOf(format.charAt(i)) >= 0) {
+                char flag = format.charAt(i++);
+                if (flag != '^' && flag != '#') {
+                    pad = flag;
+                }
+            }
+            int width = 0;
+            while (i < n && format.charAt(i) >= '0' && format.charAt(i) <= '9' && width < 100) {
+                width = width * 10 + (format.charAt(i++) - '0');
+            }
+            int colons = 0;
+            while (i < n && format.charAt(i) == ':') {
+                colons++;
+                i++;
+            }
+            // alternative representations are the same as the plain ones
+            if (colons == 0 && i < n && (format.charAt(i) == 'E' || format.charAt(i) == 'O')) {
+                i++;
+            }
+            if (i == n) {
+                literal.append(format, start, n);
+                break;
+            }
+            char conversion = format.charAt(i++);
+            if (colons > 0 && (conversion != 'z' || colons > 3)) {
+                literal.append(format, start, i);
+                continue;
+            }
+            switch (conversion) {
+                case '%' -> literal.append('%');
+                case 'n' -> literal.append('\n');
+                case 't' -> literal.append('\t');
+                case 'a' -> text(ChronoField.DAY_OF_WEEK, TextStyle.SHORT);
+                case 'A' -> text(ChronoField.DAY_OF_WEEK, TextStyle.FULL);
+                case 'b', 'h' -> text(ChronoField.MONTH_OF_YEAR, TextStyle.SHORT);
+                case 'B' -> text(ChronoField.MONTH_OF_YEAR, TextStyle.FULL);
+                case 'c' -> append("%a %b %e %H:%M:%S %Y");
+                case 'C' -> number(GnuField.CENTURY, 2, 8, '0', pad, width);
+                case 'd' -> number(ChronoField.DAY_OF_MONTH, 2, 2, '0', pad, width);
+                case 'D', 'x' -> append("%m/%d/%y");
+                case 'e' -> number(ChronoField.DAY_OF_MONTH, 2, 2, '_', pad, width);
+                case 'F' -> append("%Y-%m-%d");
+                case 'g' -> reduced(IsoFields.WEEK_BASED_YEAR);
+                case 'G' -> number(IsoFields.WEEK_BASED_YEAR, 4, 10, '0', pad, width);
+                case 'H' -> number(ChronoField.HOUR_OF_DAY, 2, 2, '0', pad, width);
+                case 'I' -> number(ChronoField.CLOCK_HOUR_OF_AMPM, 2, 2, '0', pad, width);
+                case 'j' -> number(ChronoField.DAY_OF_YEAR, 3, 3, '0', pad, width);
+                case 'k' -> number(ChronoField.HOUR_OF_DAY, 2, 2, '_', pad, width);
+                case 'l' -> number(ChronoField.CLOCK_HOUR_OF_AMPM, 2, 2, '_', pad, width);
+                case 'm' -> number(ChronoField.MONTH_OF_YEAR, 2, 2, '0', pad, width);
+                case 'M' -> number(ChronoField.MINUTE_OF_HOUR, 2, 2, '0', pad, width);
+                case 'N' -> {
+                    flush();
+                    int digits = width == 0 ? 9 : Math.min(width, 9);
+                    builder.appendFraction(ChronoField.NANO_OF_SECOND, digits, digits, false);
+                }
+                case 'p' -> {
+                    flush();
+                    builder.appendText(ChronoField.AMPM_OF_DAY, UPPER_AM_PM);
+                }
+                case 'P' -> {
+                    flush();
+                    builder.appendText(ChronoField.AMPM_OF_DAY, LOWER_AM_PM);
+                }
+                case 'q' -> number(IsoFields.QUARTER_OF_YEAR, 1, 1, '0', pad, width);
+                case 'r' -> append("%I:%M:%S %p");
+                case 'R' -> append("%H:%M");
+                case 's' -> number(ChronoField.INSTANT_SECONDS, 1, 19, '0', pad, width);
+                case 'S' -> number(ChronoField.SECOND_OF_MINUTE, 2, 2, '0', pad, width);
+                case 'T', 'X' -> append("%H:%M:%S");
+                case 'u' -> number(ChronoField.DAY_OF_WEEK, 1, 1, '0', pad, width);
+                case 'U' -> number(GnuField.SUNDAY_WEEK_OF_YEAR, 2, 2, '0', pad, width);
+                case 'V' -> number(IsoFields.WEEK_OF_WEEK_BASED_YEAR, 2, 2, '0', pad, width);
+                case 'w' -> number(GnuField.SUNDAY_DAY_OF_WEEK, 1, 1, '0', pad, width);
+                case 'W' -> number(GnuField.MONDAY_WEEK_OF_YEAR, 2, 2, '0', pad, width);
+                case 'y' -> reduced(ChronoField.YEAR);
+                case 'Y' -> number(ChronoField.YEAR, 4, 10, '0', pad, width);
+                case 'z' -> {
+                    flush();
+                    switch (colons) {
+                        case 0 -> builder.appendOffset("+HHMM", "+0000");
+                        case 1 -> builder.appendOffset("+HH:MM", "+00:00");
+                        case 2 -> builder.appendOffset("+HH:MM:SS", "+00:00:00");
+                        default -> builder.appendOffset("+HH:mm", "+00");
+                    }
+                }
+                case 'Z' -> {
+                    flush();
+                    builder.appendZoneText(TextStyle.SHORT);
+                }
+                default -> literal.append(format, start, i);
+            }
+        }
+    }
+
+    /** Append the pending literal text to the formatter. */
+    private void flush() {
+        if (!literal.isEmpty()) {
+            builder.appendLiteral(literal.toString());
+            literal.setLength(0);
+        }
+    }
+
+    private void text(TemporalField field, TextStyle style) {
+        flush();
+        builder.appendText(field, style);
+    }
+
+    /**
+     * Two-digit years read as 1969 to 2068, the POSIX convention for {@code %y}.
+     */
+    private void reduced(TemporalField field) {
+        flush();
+        builder.appendValueReduced(field, 2, 2, 1969);
+    }
+
+    /**
+     * @param width
+     *            the minimum width asked for in the format, or 0 for
+     *            {@code defaultWidth}
+     * @param defaultPad
+     *            {@code '0'} or {@code '_'}, used unless the format has a flag
+     */
+    private void number(TemporalField field, int defaultWidth, int maxWidth, char defaultPad, char pad, int width) {
+        flush();
+        int minWidth = Math.min(width == 0 ? defaultWidth : width, 19);
+        maxWidth = Math.max(maxWidth, minWidth);
+        switch (pad == 0 ? defaultPad : pad) {
+            case '-' -> builder.appendValue(field, 1, maxWidth, SignStyle.NORMAL);
+            case '_' -> {
+                builder.padNext(minWidth);
+                builder.appendValue(field, 1, maxWidth, SignStyle.NORMAL);
+            }
+            default -> {
+                if (minWidth == maxWidth) {
+                    builder.appendValue(field, minWidth);
+                } else {
+                    builder.appendValue(field, minWidth, maxWidth, SignStyle.NORMAL);
+                }
+            }
+        }
+    }
+
+    /**
+     * The numbers GNU {@code date} prints that have no {@link ChronoField}. They
+     * can be printed and parsed, but do not resolve to a date on their own; when
+     * parsed next to a full date they are checked against it.
+     */
+    private enum GnuField implements TemporalField {
+        /** {@code %C}: the year divided by 100. */
+        CENTURY("Century", ChronoUnit.CENTURIES, ChronoUnit.FOREVER, ValueRange.of(-10_000_000, 9_999_999)) {
+            @Override
+            public boolean isSupportedBy(TemporalAccessor temporal) {
+                return temporal.isSupported(ChronoField.YEAR);
+            }
+
+            @Override
+            public long getFrom(TemporalAccessor temporal) {
+                return Math.floorDiv(temporal.getLong(ChronoField.YEAR), 100);
+            }
+        },
+        /** {@code %w}: the day of the week, 0 for Sunday to 6 for Saturday. */
+        SUNDAY_DAY_OF_WEEK("DayOfWeekFromSunday", ChronoUnit.DAYS, ChronoUnit.WEEKS, ValueRange.of(0, 6)) {
+            @Override
+            public boolean isSupportedBy(TemporalAccessor temporal) {
+                return temporal.isSupported(ChronoField.DAY_OF_WEEK);
+            }
+
+            @Override
+            public long getFrom(TemporalAccessor temporal) {
+                return temporal.get(ChronoField.DAY_OF_WEEK) % 7;
+            }
+        },
+        /**
+         * {@code %U}: the week of the year, weeks starting on Sunday and the days
+         * before the first Sunday in week 0.
+         */
+        SUNDAY_WEEK_OF_YEAR("WeekOfYearFromSunday", ChronoUnit.WEEKS, ChronoUnit.YEARS, ValueRange.of(0, 53)) {
+            @Override
+            public long getFrom(TemporalAccessor temporal) {
+                return weekOfYear(temporal, temporal.get(ChronoField.DAY_OF_WEEK) % 7);
+            }
+        },
+        /** {@code %W}: as {@code %U} with weeks starting on Monday. */
+        MONDAY_WEEK_OF_YEAR("WeekOfYearFromMonday", ChronoUnit.WEEKS, ChronoUnit.YEARS, ValueRange.of(0, 53)) {
+            @Override
+            public long getFrom(TemporalAccessor temporal) {
+                return weekOfYear(temporal, temporal.get(ChronoField.DAY_OF_WEEK) - 1);
+            }
+        };
+
+        private final String name;
+        private final TemporalUnit baseUnit;
+        private final TemporalUnit rangeUnit;
+        private final ValueRange range;
+
+        GnuField(String name, TemporalUnit baseUnit, TemporalUnit rangeUnit, ValueRange range) {
+            this.name = name;
+            this.baseUnit = baseUnit;
+            this.rangeUnit = rangeUnit;
+            this.range = range;
+        }
+
+        /**
+         * @param dayOfWeek
+         *            the day of the week counted from 0 on the first day of the week
+         */
+        private static long weekOfYear(TemporalAccessor temporal, int dayOfWeek) {
+            return (temporal.get(ChronoField.DAY_OF_YEAR) - 1 + 7 - dayOfWeek) / 7;
+        }
+
+        @Override
+        public boolean isSupportedBy(TemporalAccessor temporal) {
+            return temporal.isSupported(ChronoField.DAY_OF_YEAR) && temporal.isSupported(ChronoField.DAY_OF_WEEK);
+        }
+
+        @Override
+        public TemporalUnit getBaseUnit() {
+            return baseUnit;
+        }
+
+        @Override
+        public TemporalUnit getRangeUnit() {
+            return rangeUnit;
+        }
+
+        @Override
+        public ValueRange range() {
+            return range;
+        }
+
+        @Override
+        public ValueRange rangeRefinedBy(TemporalAccessor temporal) {
+            return range;
+        }
+
+        @Override
+        public boolean isDateBased() {
+            return true;
+        }
+
+        @Override
+        public boolean isTimeBased() {
+            return false;
+        }
+
+        @Override
+        public <R extends Temporal> R adjustInto(R temporal, long newValue) {
+            throw new UnsupportedTemporalTypeException("Cannot set " + name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
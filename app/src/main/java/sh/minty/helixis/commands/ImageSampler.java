@@ -0,0 +1,182 @@
+package sh.minty.helixis.commands;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+
+/**
+ * Reads an evenly spaced grid of pixels from an image, without holding the
+ * whole image in memory.
+ *
+ * <p>
+ * Formats supported by {@link ImageIO} (PNG, JPEG, GIF, BMP) are decoded with
+ * source subsampling, so only the sampled pixels are kept. Netpbm images (PPM
+ * and PGM, binary or plain), which {@code ImageIO} cannot read, are streamed a
+ * row at a time. Pixels are returned as {@code 0xRRGGBB}; pixels that are
+ * mostly transparent are left out.
+ * </p>
+ */
+final class ImageSampler {
+    private ImageSampler() {
+    }
+
+    /**
+     * @return the sampled pixels; about {@code maxSamples} of them, or every pixel
+     *         of a smaller image
+     */
+    static int[] sample(Path file, int maxSamples) throws IOException {
+        try (var in = new BufferedInputStream(Files.newInputStream(file))) {
+            in.mark(2);
+            int first = in.read();
+            int second = in.read();
+            in.reset();
+            if (first == 'P' && second >= '2' && second <= '6' && second != '4') {
+                return sampleNetpbm(in, maxSamples);
+            }
+        }
+        return sampleImageIo(file, maxSamples);
+    }
+
+    /**
+     * @return the grid step that keeps the samples of a {@code width} by
+     *         {@code height} image to about {@code maxSamples}
+     */
+    private static int step(long width, long height, int maxSamples) {
+        return (int) Math.max(1, Math.ceil(Math.sqrt((double) width * height / maxSamples)));
+    }
+
+    private static int[] sampleImageIo(Path file, int maxSamples) throws IOException {
+        try (var input = ImageIO.createImageInputStream(file.toFile())) {
+            if (input == null) {
+                throw new IOException("cannot open " + file);
+            }
+            var readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException(file + " is not in a supported image format");
+            }
+            var reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int step = step(reader.getWidth(0), reader.getHeight(0), maxSamples);
+                var param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                var image = reader.read(0, param);
+
+                int width = image.getWidth();
+                int height = image.getHeight();
+                var pixels = image.getRGB(0, 0, width, height, null, 0, width);
+                int count = 0;
+                for (int argb : pixels) {
+                    if (argb >>> 24 >= 0x80) {
+                        pixels[count++] = argb & 0xFFFFFF;
+                    }
+                }
+                return Arrays.copyOf(pixels, count);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Read a PPM ({@code P3}, {@code P6}) or PGM ({@code P2}, {@code P5}) image,
+     * keeping every {@code step}th pixel of every {@code step}th row.
+     */
+    private static int[] sampleNetpbm(InputStream in, int maxSamples) throws IOException {
+        in.read();
+        int format = in.read() - '0';
+        int width = headerNumber(in);
+        int height = headerNumber(in);
+        int maxValue = headerNumber(in);
+        if (width <= 0 || height <= 0 || maxValue <= 0 || maxValue > 65535) {
+            throw new IOException("invalid Netpbm header");
+        }
+        boolean plain = format == 2 || format == 3;
+        int channels = format == 3 || format == 6 ? 3 : 1;
+        int sampleBytes = maxValue > 255 ? 2 : 1;
+        int step = step(width, height, maxSamples);
+
+        var pixels = new int[(int) (((long) width + step - 1) / step * (((long) height + step - 1) / step))];
+        int count = 0;
+        var row = new byte[plain ? 0 : width * channels * sampleBytes];
+        var values = new int[channels];
+        for (int y = 0; y < height; y++) {
+            boolean sampledRow = y % step == 0;
+            if (!plain) {
+                readFully(in, row);
+                if (!sampledRow) {
+                    continue;
+                }
+            }
+            for (int x = 0; x < width; x++) {
+                for (int c = 0; c < channels; c++) {
+                    if (plain) {
+                        values[c] = headerNumber(in);
+                    } else {
+                        int at = (x * channels + c) * sampleBytes;
+                        values[c] = sampleBytes == 2 ? (row[at] & 0xFF) << 8 | (row[at + 1] & 0xFF) : row[at] & 0xFF;
+                    }
+                }
+                if (sampledRow && x % step == 0) {
+                    int r = scale(values[0], maxValue);
+                    int g = channels == 3 ? scale(values[1], maxValue) : r;
+                    int b = channels == 3 ? scale(values[2], maxValue) : r;
+                    pixels[count++] = ColorMath.rgb(r, g, b);
+                }
+            }
+        }
+        return Arrays.copyOf(pixels, count);
+    }
+
+    private static int scale(int value, int maxValue) {
+        if (value > maxValue) {
+            value = maxValue;
+        }
+        return maxValue == 255 ? value : (value * 255 + maxValue / 2) / maxValue;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int filled = 0;
+        while (filled < buffer.length) {
+            int read = in.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                throw new EOFException("image data ends early");
+            }
+            filled += read;
+        }
+    }
+
+    /**
+     * Read a decimal number of the header or of a plain image, skipping whitespace
+     * and {@code #} comments before it and consuming one whitespace character after
+     * it.
+     */
+    private static int headerNumber(InputStream in) throws IOException {
+        int c = in.read();
+        while (c == '#' || Character.isWhitespace(c)) {
+            if (c == '#') {
+                while (c != '\n' && c != -1) {
+                    c = in.read();
+                }
+            }
+            c = in.read();
+        }
+        if (c < '0' || c > '9') {
+            throw new IOException(c < 0 ? "image data ends early" : "invalid Netpbm number");
+        }
+        long value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Netpbm number out of range");
+            }
+            c = in.read();
+        }
+        return (int) value;
+    }
+}
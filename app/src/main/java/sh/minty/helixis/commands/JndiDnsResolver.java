@@ -0,0 +1,79 @@
+package sh.minty.helixis.commands;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+/**
+ * {@link DnsResolver} backed by the JDK's JNDI DNS provider. JNDI lookups
+ * block, so concurrency comes from a fixed pool of threads, each holding its
+ * own {@link DirContext}. JNDI does not expose TTLs.
+ */
+final class JndiDnsResolver implements DnsResolver {
+    private final ExecutorService executor;
+    private final ThreadLocal<DirContext> contexts = ThreadLocal.withInitial(() -> {
+        try {
+            return newContext();
+        } catch (NamingException e) {
+            throw new IllegalStateException("Unable to create DNS context: " + e.getMessage(), e);
+        }
+    });
+
+    JndiDnsResolver(int threads) {
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "dns-jndi");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static DirContext newContext() throws NamingException {
+        Hashtable<String, String> env = new Hashtable<>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+        return new InitialDirContext(env);
+    }
+
+    @Override
+    public CompletableFuture<DnsAnswer> resolve(String name, String type) {
+        return CompletableFuture.supplyAsync(() -> {
+            long begin = System.nanoTime();
+            return lookup(name, type).withLatency(System.nanoTime() - begin);
+        }, executor);
+    }
+
+    private DnsAnswer lookup(String name, String type) {
+        try {
+            var attributes = contexts.get().getAttributes(name, new String[]{type});
+            Attribute attribute = attributes.get(type);
+            if (attribute == null) {
+                return DnsAnswer.of(List.of(), DnsAnswer.UNKNOWN_TTL);
+            }
+
+            List<String> records = new ArrayList<>(attribute.size());
+            NamingEnumeration<?> all = attribute.getAll();
+            while (all.hasMore()) {
+                records.add(String.valueOf(all.next()));
+            }
+            return DnsAnswer.of(records, DnsAnswer.UNKNOWN_TTL);
+        } catch (NameNotFoundException e) {
+            return DnsAnswer.negative("NXDOMAIN", DnsAnswer.UNKNOWN_TTL);
+        } catch (NamingException | IllegalStateException e) {
+            return DnsAnswer.failure(e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,231 @@
+package sh.minty.helixis.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * k-means clustering of colors in CIELAB, seeded with k-means++.
+ *
+ * <p>
+ * Colors are converted and assigned to clusters in fixed-size blocks on a pool,
+ * and the per-block sums are merged in block order, so with a seeded
+ * {@link Random} the result does not depend on the number of threads.
+ * </p>
+ */
+final class LabKMeans {
+    // colors per task in the parallel steps
+    private static final int BLOCK = 1 << 14;
+
+    /**
+     * Cluster centers in Lab, three components each, and the number of colors in
+     * each cluster. There may be fewer clusters than asked for when the input has
+     * fewer distinct colors.
+     */
+    record Clusters(double[] centers, long[] sizes) {
+        int count() {
+            return sizes.length;
+        }
+    }
+
+    /** Sums of the colors assigned to each cluster by one block. */
+    private record Partial(double[] sums, long[] sizes, int changed) {
+    }
+
+    private final int threads;
+    private ExecutorService executor;
+    private double[] lab;
+    private int[] assignment;
+
+    private LabKMeans(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param colors
+     *            colors as {@code 0xRRGGBB}
+     * @param k
+     *            the number of clusters wanted
+     * @param maxIterations
+     *            assignment rounds after which to stop even if clusters still
+     *            change
+     */
+    static Clusters cluster(int[] colors, int k, int maxIterations, int threads, Random random)
+            throws InterruptedException {
+        var kMeans = new LabKMeans(threads);
+        kMeans.executor = Executors.newFixedThreadPool(threads);
+        try {
+            return kMeans.run(colors, k, maxIterations, random);
+        } finally {
+            kMeans.executor.shutdownNow();
+        }
+    }
+
+    private Clusters run(int[] colors, int k, int maxIterations, Random random) throws InterruptedException {
+        int n = colors.length;
+        lab = new double[n * 3];
+        assignment = new int[n];
+        forEachBlock(n, (from, to) -> {
+            var components = new double[3];
+            for (int i = from; i < to; i++) {
+                ColorMath.toLab(colors[i], components);
+                System.arraycopy(components, 0, lab, i * 3, 3);
+                assignment[i] = -1;
+            }
+            return null;
+        });
+
+        double[] centers = seed(n, k, random);
+        int clusters = centers.length / 3;
+        var sizes = new long[clusters];
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            double[] current = centers;
+            var partials = forEachBlock(n, (from, to) -> assign(from, to, current, clusters));
+
+            var sums = new double[clusters * 3];
+            sizes = new long[clusters];
+            int changed = 0;
+            for (var partial : partials) {
+                for (int c = 0; c < sums.length; c++) {
+                    sums[c] += partial.sums()[c];
+                }
+                for (int c = 0; c < clusters; c++) {
+                    sizes[c] += partial.sizes()[c];
+                }
+                changed += partial.changed();
+            }
+            if (changed == 0) {
+                break;
+            }
+            centers = centers.clone();
+            for (int c = 0; c < clusters; c++) {
+                // an emptied cluster keeps its old center
+                if (sizes[c] > 0) {
+                    centers[c * 3] = sums[c * 3] / sizes[c];
+                    centers[c * 3 + 1] = sums[c * 3 + 1] / sizes[c];
+                    centers[c * 3 + 2] = sums[c * 3 + 2] / sizes[c];
+                }
+            }
+        }
+        return new Clusters(centers, sizes);
+    }
+
+    /**
+     * Choose the initial centers by k-means++: each new center is a color drawn
+     * with probability proportional to its squared distance from the nearest center
+     * chosen so far.
+     */
+    private double[] seed(int n, int k, Random random) {
+        var centers = new double[k * 3];
+        if (n == 0) {
+            return new double[0];
+        }
+        var distances = new double[n];
+        int first = random.nextInt(n);
+        System.arraycopy(lab, first * 3, centers, 0, 3);
+        int chosen = 1;
+        for (int i = 0; i < n; i++) {
+            distances[i] = squaredDistance(i, centers, 0);
+        }
+        while (chosen < k) {
+            double total = 0;
+            for (double d : distances) {
+                total += d;
+            }
+            // every color already is a center
+            if (total == 0) {
+                break;
+            }
+            double target = random.nextDouble() * total;
+            int pick = n - 1;
+            for (int i = 0; i < n; i++) {
+                target -= distances[i];
+                if (target < 0) {
+                    pick = i;
+                    break;
+                }
+            }
+            System.arraycopy(lab, pick * 3, centers, chosen * 3, 3);
+            for (int i = 0; i < n; i++) {
+                distances[i] = Math.min(distances[i], squaredDistance(i, centers, chosen));
+            }
+            chosen++;
+        }
+        return chosen == k ? centers : Arrays.copyOf(centers, chosen * 3);
+    }
+
+    private double squaredDistance(int i, double[] centers, int c) {
+        double dl = lab[i * 3] - centers[c * 3];
+        double da = lab[i * 3 + 1] - centers[c * 3 + 1];
+        double db = lab[i * 3 + 2] - centers[c * 3 + 2];
+        return dl * dl + da * da + db * db;
+    }
+
+    private Partial assign(int from, int to, double[] centers, int clusters) {
+        var sums = new double[clusters * 3];
+        var sizes = new long[clusters];
+        int changed = 0;
+        for (int i = from; i < to; i++) {
+            int best = 0;
+            double bestDistance = Double.MAX_VALUE;
+            for (int c = 0; c < clusters; c++) {
+                double d = squaredDistance(i, centers, c);
+                if (d < bestDistance) {
+                    bestDistance = d;
+                    best = c;
+                }
+            }
+            if (assignment[i] != best) {
+                assignment[i] = best;
+                changed++;
+            }
+            sums[best * 3] += lab[i * 3];
+            sums[best * 3 + 1] += lab[i * 3 + 1];
+            sums[best * 3 + 2] += lab[i * 3 + 2];
+            sizes[best]++;
+        }
+        return new Partial(sums, sizes, changed);
+    }
+
+    @FunctionalInterface
+    private interface BlockTask<T> {
+        T run(int from, int to);
+    }
+
+    /**
+     * Run {@code task} over {@code [0, n)} in blocks of {@link #BLOCK}, on the pool
+     * unless there is only one block or one thread.
+     *
+     * @return the blocks' results in block order
+     */
+    private <T> ArrayList<T> forEachBlock(int n, BlockTask<T> task) throws InterruptedException {
+        var results = new ArrayList<T>();
+        if (threads == 1 || n <= BLOCK) {
+            for (int from = 0; from < n; from += BLOCK) {
+                results.add(task.run(from, Math.min(n, from + BLOCK)));
+            }
+            return results;
+        }
+        var tasks = new ArrayList<Callable<T>>();
+        for (int from = 0; from < n; from += BLOCK) {
+            int start = from;
+            tasks.add(() -> task.run(start, Math.min(n, start + BLOCK)));
+        }
+        for (Future<T> future : executor.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+}
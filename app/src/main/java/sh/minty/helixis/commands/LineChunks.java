@@ -0,0 +1,136 @@
+package sh.minty.helixis.commands;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Line-oriented bulk input: the input is cut into chunks of whole lines on the
+ * reading thread, chunks are processed on a pool, and the results come back on
+ * the reading thread in input order.
+ */
+final class LineChunks {
+    /** Receives the input cut into chunks of whole lines. */
+    @FunctionalInterface
+    interface Sink {
+        void accept(byte[] lines) throws IOException, InterruptedException;
+    }
+
+    /** Receives chunk results, in input order, on the reading thread. */
+    @FunctionalInterface
+    interface Collector<T> {
+        void accept(T result) throws IOException;
+    }
+
+    /**
+     * Visits one line; {@code end} excludes the newline and any carriage return
+     * before it.
+     */
+    @FunctionalInterface
+    interface LineVisitor {
+        void line(byte[] data, int start, int end);
+    }
+
+    private LineChunks() {
+    }
+
+    /**
+     * Process {@code in} a chunk at a time with {@code work} on {@code threads}
+     * threads, handing each result to {@code collector} in input order. At most
+     * {@code 2 * threads} chunks are in flight, which bounds memory while keeping
+     * every thread busy.
+     */
+    static <T> void process(InputStream in, int chunkBytes, int threads, Function<byte[], T> work,
+            Collector<T> collector) throws IOException, InterruptedException {
+        var executor = Executors.newFixedThreadPool(threads);
+        // chunks in flight, oldest first
+        var pending = new ArrayDeque<Future<T>>();
+        try {
+            read(in, chunkBytes, data -> {
+                pending.add(executor.submit(() -> work.apply(data)));
+                while (!pending.isEmpty() && (pending.size() > threads * 2 || pending.peek().isDone())) {
+                    collector.accept(await(pending.poll()));
+                }
+            });
+            while (!pending.isEmpty()) {
+                collector.accept(await(pending.poll()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Cut {@code in} at line boundaries into chunks of about {@code chunkBytes} on
+     * the calling thread, so that each chunk can be processed independently. The
+     * last line of the input may lack its newline.
+     */
+    static void read(InputStream in, int chunkBytes, Sink sink) throws IOException, InterruptedException {
+        var buffer = new byte[chunkBytes];
+        int filled = 0;
+        boolean eof = false;
+        while (!eof) {
+            int read = in.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                eof = true;
+            } else {
+                filled += read;
+                if (filled < buffer.length) {
+                    continue;
+                }
+            }
+
+            int cut = eof ? filled : lastNewline(buffer, filled) + 1;
+            if (cut == 0) {
+                if (!eof) {
+                    // a single line longer than the buffer
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                continue;
+            }
+            sink.accept(Arrays.copyOf(buffer, cut));
+            System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+            filled -= cut;
+        }
+    }
+
+    /**
+     * Call {@code visitor} for every line of a chunk.
+     */
+    static void forEachLine(byte[] data, LineVisitor visitor) {
+        int start = 0;
+        while (start < data.length) {
+            int end = start;
+            while (end < data.length && data[end] != '\n') {
+                end++;
+            }
+            visitor.line(data, start, (end > start && data[end - 1] == '\r') ? end - 1 : end);
+            start = end + 1;
+        }
+    }
+
+    private static int lastNewline(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package sh.minty.helixis.commands;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Counts the lines of log files per time bucket.
+ *
+ * <p>
+ * Each file is memory-mapped and cut into segments that are scanned on a pool.
+ * A segment owns the lines that start inside it, so a task skips the partial
+ * line at its start and reads past its end to finish its last line. Mapped
+ * bytes are copied into a reused window a megabyte at a time, and lines are
+ * handed to the extractor from there. Each task counts into its own
+ * open-addressing table of bucket numbers, and the tables are merged at the
+ * end.
+ * </p>
+ */
+final class LogScan {
+    // largest segment of a file scanned by one task
+    private static final long MAX_SEGMENT_BYTES = 64L << 20;
+    private static final long MIN_SEGMENT_BYTES = 1L << 20;
+    private static final int WINDOW_BYTES = 1 << 20;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    /** Finds the timestamp of a log line. */
+    @FunctionalInterface
+    interface Extractor {
+        /**
+         * @return the epoch second of the timestamp in {@code line[start..end)}, or
+         *         {@link Long#MIN_VALUE} if the line has none
+         */
+        long epochSecond(byte[] line, int start, int end);
+    }
+
+    /** Line counts per bucket, and the number of lines without a timestamp. */
+    record Histogram(Counts counts, long skipped) {
+    }
+
+    /**
+     * Counts per bucket number, in open addressing over primitive arrays.
+     */
+    static final class Counts {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys = new long[64];
+        private long[] values = new long[64];
+        private int size;
+        // consecutive log lines usually fall in the same bucket
+        private long lastKey = EMPTY;
+        private int lastSlot;
+
+        Counts() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void add(long key, long count) {
+            if (key == lastKey) {
+                values[lastSlot] += count;
+                return;
+            }
+            int slot = slot(keys, key);
+            if (keys[slot] == EMPTY) {
+                if (2 * (size + 1) > keys.length) {
+                    grow();
+                    slot = slot(keys, key);
+                }
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] += count;
+            lastKey = key;
+            lastSlot = slot;
+        }
+
+        void addAll(Counts other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] != EMPTY) {
+                    add(other.keys[i], other.values[i]);
+                }
+            }
+        }
+
+        long get(long key) {
+            int slot = slot(keys, key);
+            return keys[slot] == EMPTY ? 0 : values[slot];
+        }
+
+        /**
+         * @return the bucket numbers with a count, in ascending order
+         */
+        long[] sortedKeys() {
+            var sorted = new long[size];
+            int n = 0;
+            for (long key : keys) {
+                if (key != EMPTY) {
+                    sorted[n++] = key;
+                }
+            }
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        private static int slot(long[] keys, long key) {
+            int mask = keys.length - 1;
+            // the top log2(capacity) bits of the product are the best mixed
+            int slot = (int) ((key * 0x9E37_79B9_7F4A_7C15L) >>> (64 - Integer.numberOfTrailingZeros(keys.length)));
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            var oldKeys = keys;
+            var oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slot(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+            lastKey = EMPTY;
+        }
+    }
+
+    /** The part of a file whose lines one task counts. */
+    private record Segment(FileChannel channel, long size, long from, long to) {
+    }
+
+    private LogScan() {
+    }
+
+    /**
+     * Count the lines of {@code files} per bucket of {@code bucketSeconds} of local
+     * time in the zone of {@code offsets}. Bucket {@code n} covers local times from
+     * {@code n * bucketSeconds} seconds after 1970-01-01T00:00. Lines without a
+     * timestamp are counted as skipped; blank lines are ignored.
+     */
+    static Histogram scan(List<Path> files, Extractor extractor, ZoneOffsets offsets, long bucketSeconds, int threads)
+            throws IOException, InterruptedException {
+        var channels = new ArrayList<FileChannel>();
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            var tasks = new ArrayList<Callable<Histogram>>();
+            for (var file : files) {
+                var channel = FileChannel.open(file, StandardOpenOption.READ);
+                channels.add(channel);
+                long size = channel.size();
+                long segmentBytes = Math.clamp(size / (threads * 4L), MIN_SEGMENT_BYTES, MAX_SEGMENT_BYTES);
+                for (long from = 0; from < size; from += segmentBytes) {
+                    var segment = new Segment(channel, size, from, Math.min(size, from + segmentBytes));
+                    tasks.add(() -> scan(segment, extractor, offsets, bucketSeconds));
+                }
+            }
+            var counts = new Counts();
+            long skipped = 0;
+            for (Future<Histogram> future : executor.invokeAll(tasks)) {
+                var histogram = LineChunks.await(future);
+                counts.addAll(histogram.counts());
+                skipped += histogram.skipped();
+            }
+            return new Histogram(counts, skipped);
+        } finally {
+            executor.shutdownNow();
+            for (var channel : channels) {
+                channel.close();
+            }
+        }
+    }
+
+    private static Histogram scan(Segment segment, Extractor extractor, ZoneOffsets offsets, long bucketSeconds)
+            throws IOException {
+        // from the byte before the segment, to see whether it starts a line
+        long mapStart = Math.max(0, segment.from() - 1);
+        long tail = WINDOW_BYTES;
+        MappedByteBuffer map = map(segment, mapStart, tail);
+        int limit = map.limit();
+        int end = (int) (segment.to() - mapStart);
+        boolean partial = segment.from() > 0;
+
+        var counts = new Counts();
+        long skipped = 0;
+        var window = new byte[WINDOW_BYTES];
+        // offset in the mapping of the window, always at a line start
+        int position = 0;
+        while (position < end) {
+            int length = Math.min(window.length, limit - position);
+            map.get(position, window, 0, length);
+            boolean last = mapStart + position + length == segment.size();
+            int lineStart = 0;
+            while (position + lineStart < end) {
+                int newline = lineStart;
+                while (newline < length && window[newline] != '\n') {
+                    newline++;
+                }
+                if (newline == length && !last) {
+                    break;
+                }
+                if (partial) {
+                    // the line started in the previous segment
+                    partial = false;
+                } else {
+                    int lineEnd = newline > lineStart && window[newline - 1] == '\r' ? newline - 1 : newline;
+                    if (lineEnd > lineStart) {
+                        long instant = extractor.epochSecond(window, lineStart, lineEnd);
+                        if (instant == NO_TIMESTAMP) {
+                            skipped++;
+                        } else {
+                            counts.add(Math.floorDiv(instant + offsets.offsetAt(instant), bucketSeconds), 1);
+                        }
+                    }
+                }
+                lineStart = newline + 1;
+            }
+            if (lineStart == 0) {
+                if (position + length == limit) {
+                    // the last line runs past the mapped tail
+                    tail *= 2;
+                    map = map(segment, mapStart, tail);
+                    if (map.limit() == limit) {
+                        throw new IOException("Line at byte " + (mapStart + position) + " is longer than 2 GiB");
+                    }
+                    limit = map.limit();
+                } else {
+                    // a line longer than the window
+                    window = new byte[window.length * 2];
+                }
+            }
+            position += lineStart;
+        }
+        return new Histogram(counts, skipped);
+    }
+
+    /**
+     * Map the segment from {@code mapStart}, and up to {@code tail} bytes past its
+     * end for the line that crosses it.
+     */
+    private static MappedByteBuffer map(Segment segment, long mapStart, long tail) throws IOException {
+        long length = Math.min(segment.size(), segment.to() + tail) - mapStart;
+        return segment.channel().map(FileChannel.MapMode.READ_ONLY, mapStart, Math.min(length, Integer.MAX_VALUE));
+    }
+}
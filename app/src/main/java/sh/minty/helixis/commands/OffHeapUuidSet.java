@@ -0,0 +1,127 @@
+package sh.minty.helixis.commands;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Open-addressing hash set of 128-bit UUIDs stored as packed {@code long} pairs
+ * in direct buffers, outside the Java heap.
+ *
+ * <p>
+ * Each slot is 16 bytes and an all-zero slot is empty, so the nil UUID is
+ * tracked with a separate flag. Probing is linear; the table is not limited to
+ * powers of two, which keeps large tables close to their target load instead of
+ * rounding up to double the memory. Not thread-safe.
+ * </p>
+ */
+final class OffHeapUuidSet {
+    private static final int SLOT_BYTES = 16;
+    // 2^26 slots of 16 bytes = 1 GiB per buffer, below the 2 GiB buffer limit
+    private static final int SEGMENT_SHIFT = 26;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private static final double MAX_LOAD = 0.75;
+
+    private ByteBuffer[] segments;
+    private long capacity;
+    private long threshold;
+    private long size;
+    private boolean containsNil;
+
+    /**
+     * @param expected
+     *            number of distinct UUIDs expected; the table grows past it, but
+     *            growing needs the old and new table at the same time
+     */
+    OffHeapUuidSet(long expected) {
+        allocate(Math.max(16, (long) Math.ceil(Math.max(1, expected) / MAX_LOAD)));
+    }
+
+    /**
+     * @return {@code true} if the UUID was not in the set before
+     */
+    boolean add(long msb, long lsb) {
+        if (msb == 0 && lsb == 0) {
+            if (containsNil) {
+                return false;
+            }
+            containsNil = true;
+            size++;
+            return true;
+        }
+
+        if (size >= threshold) {
+            grow();
+        }
+        if (!insert(msb, lsb)) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    long size() {
+        return size;
+    }
+
+    private boolean insert(long msb, long lsb) {
+        long slot = Math.unsignedMultiplyHigh(mix(msb, lsb), capacity);
+        while (true) {
+            var segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            int offset = (int) (slot & SEGMENT_MASK) * SLOT_BYTES;
+            long storedMsb = segment.getLong(offset);
+            long storedLsb = segment.getLong(offset + 8);
+            if (storedMsb == 0 && storedLsb == 0) {
+                segment.putLong(offset, msb);
+                segment.putLong(offset + 8, lsb);
+                return true;
+            }
+            if (storedMsb == msb && storedLsb == lsb) {
+                return false;
+            }
+            if (++slot == capacity) {
+                slot = 0;
+            }
+        }
+    }
+
+    private void grow() {
+        var oldSegments = segments;
+        long oldCapacity = capacity;
+        allocate(oldCapacity * 2);
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            var segment = oldSegments[(int) (slot >>> SEGMENT_SHIFT)];
+            int offset = (int) (slot & SEGMENT_MASK) * SLOT_BYTES;
+            long msb = segment.getLong(offset);
+            long lsb = segment.getLong(offset + 8);
+            if (msb != 0 || lsb != 0) {
+                insert(msb, lsb);
+            }
+        }
+    }
+
+    private void allocate(long slots) {
+        int count = (int) ((slots + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        var fresh = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long remaining = slots - ((long) i << SEGMENT_SHIFT);
+            int bytes = (int) Math.min(1L << SEGMENT_SHIFT, remaining) * SLOT_BYTES;
+            // direct buffers start zeroed, i.e. every slot empty
+            fresh[i] = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+        segments = fresh;
+        capacity = slots;
+        threshold = (long) (slots * MAX_LOAD);
+    }
+
+    // time-based UUIDs share most of their bits, so spread them before reducing
+    // to a slot
+    private static long mix(long msb, long lsb) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,25 +1,46 @@
 package sh.minty.helixis.commands;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.security.SecureRandom;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
 
 record GenerationParams(int length, int numUppercase, int numLowercase, int numDigits, int numSpecial,
         String specialChars, char separator, int separatorFrequency) {
 }
 
-@Command(name = "password", mixinStandardHelpOptions = true, description = "Generate X number of random passwords.")
+@Command(name = "password", mixinStandardHelpOptions = true, description = "Generate X number of random passwords.", subcommands = {
+        PasswordCommand.ScreenCommand.class, PasswordCommand.AnalyzeCommand.class,
+        PasswordCommand.PassphraseCommand.class})
 public class PasswordCommand implements Callable<Integer> {
     private static final Logger LOGGER = Logger.getLogger(PasswordCommand.class.getName());
-    private SecureRandom random = new SecureRandom();
+    static final String DEFAULT_SPECIAL_CHARS = "!@#$%^&*()-_=+[{]}\\|;:'\",<.>/?";
+
+    // passwords per output chunk; each is built in one buffer and written at once
+    private static final int CHUNK = 4096;
 
     @Option(names = {"-n", "--number"}, description = "generate x passwords (default: 1)")
     private int numPasswords = 1;
@@ -27,6 +48,12 @@ public class PasswordCommand implements Callable<Integer> {
     @Option(names = {"-f", "--file"}, description = "write passwords to filename")
     private String filename;
 
+    @Option(names = {"-p", "--parallel"}, description = "number of generator threads (default: 1)")
+    private int threads = 1;
+
+    @Mixin
+    private RandomSource.Options randomOptions = new RandomSource.Options();
+
     @Option(names = {"-l",
             "--length"}, description = "Total length of the password (default: 18). This length excludes separators.")
     private int length = 18;
@@ -49,7 +76,7 @@ public class PasswordCommand implements Callable<Integer> {
 
     @Option(names = {
             "--special-chars"}, description = "Allowed special characters (default: !@#$%^&*()-_=+[{]}\\|;:'\",<.>/?).")
-    private String specialChars = "!@#$%^&*()-_=+[{]}\\|;:'\",<.>/?";
+    private String specialChars = DEFAULT_SPECIAL_CHARS;
 
     @Option(names = {"--separator"}, description = "Separator character (default: -).")
     private char separator = '-';
@@ -60,6 +87,7 @@ public class PasswordCommand implements Callable<Integer> {
 
     @Override
     public Integer call() {
+        randomOptions.apply();
         if (numPasswords <= 0) {
             System.err.println("Error: Invalid number of passwords.");
             return 1;
@@ -85,81 +113,192 @@ public class PasswordCommand implements Callable<Integer> {
             return 1;
         }
 
+        if (threads < 1) {
+            System.err.println("Error: --parallel must be at least 1.");
+            return 1;
+        }
+
         var params = new GenerationParams(length, numUppercase, numLowercase, numDigits, numSpecial, specialChars,
                 separator, separatorFrequency);
 
-        List<String> passwords = new ArrayList<>();
-        for (int i = 0; i < numPasswords; i++) {
-            passwords.add(generatePassword(params));
-        }
-
         if (filename != null) {
             var f = new File(filename);
             if (!isValidFilename(f.getName())) {
                 System.err.println("Invalid argument error while writing passwords: Invalid filename!");
                 return 1;
             }
-            try (var writer = new FileWriter(f)) {
-                for (var password : passwords) {
-                    writer.write(password + System.lineSeparator());
-                }
+            try (var writer = new BufferedWriter(new FileWriter(f), 1 << 16)) {
+                generate(writer, params);
                 LOGGER.info("File written!");
             } catch (IOException e) {
                 System.err.println("Runtime error while writing passwords: " + e.getMessage());
                 return 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Error: Password generation interrupted.");
+                return 1;
             }
         } else {
-            for (var password : passwords) {
-                System.out.println(password);
+            // not closed: that would close System.out
+            System.out.flush();
+            var writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), 1 << 16);
+            try {
+                generate(writer, params);
+                writer.flush();
+            } catch (IOException e) {
+                System.err.println("Runtime error while writing passwords: " + e.getMessage());
+                return 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Error: Password generation interrupted.");
+                return 1;
             }
         }
 
         return 0;
     }
 
-    private String generatePassword(GenerationParams params) {
-        final String lowercaseChars = "abcdefghijklmnopqrstuvwxyz";
-        final String uppercaseChars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-        final String digitChars = "0123456789";
-
-        List<Character> passwordChars = new ArrayList<>();
+    /**
+     * Generate {@code numPasswords} passwords into {@code out}. Each thread fills
+     * whole chunks of lines in its own buffer and writes a chunk at a time, so no
+     * password is held beyond its chunk.
+     */
+    private void generate(Writer out, GenerationParams params) throws IOException, InterruptedException {
+        long chunks = (numPasswords + CHUNK - 1) / CHUNK;
+        var nextChunk = new AtomicLong();
+        // seeded output must not depend on which worker finishes first
+        var writeTurn = RandomSource.isSeeded() ? new Turnstile() : null;
+        if (threads == 1 || chunks == 1) {
+            generateChunks(out, params, nextChunk, chunks, null);
+            return;
+        }
 
-        // add required uppercase letters
-        for (int i = 0; i < params.numUppercase(); i++) {
-            passwordChars.add(uppercaseChars.charAt(random.nextInt(uppercaseChars.length())));
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    generateChunks(out, params, nextChunk, chunks, writeTurn);
+                    return null;
+                }));
+            }
+            for (var result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (writeTurn != null) {
+                        // release anyone waiting for a turn the failed worker will never take
+                        writeTurn.abort();
+                    }
+                    if (e.getCause() instanceof IOException io) {
+                        throw io;
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
         }
+    }
+
+    private void generateChunks(Writer out, GenerationParams params, AtomicLong nextChunk, long chunks,
+            Turnstile writeTurn) throws IOException, InterruptedException {
+        var generator = new PasswordGenerator(params);
+        var lineSeparator = System.lineSeparator().toCharArray();
+        var buffer = new char[CHUNK * (generator.maxLength() + lineSeparator.length)];
 
-        // add required digits
-        for (int i = 0; i < params.numDigits(); i++) {
-            passwordChars.add(digitChars.charAt(random.nextInt(digitChars.length())));
+        long chunk;
+        while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+            var random = RandomSource.forChunk(chunk);
+            int count = (int) Math.min(CHUNK, numPasswords - chunk * CHUNK);
+            int len = 0;
+            for (int i = 0; i < count; i++) {
+                len = generator.next(random, buffer, len);
+                System.arraycopy(lineSeparator, 0, buffer, len, lineSeparator.length);
+                len += lineSeparator.length;
+            }
+            if (writeTurn != null) {
+                writeTurn.await(chunk);
+                try {
+                    out.write(buffer, 0, len);
+                } finally {
+                    writeTurn.advance();
+                }
+            } else {
+                synchronized (out) {
+                    out.write(buffer, 0, len);
+                }
+            }
         }
+    }
+
+    /**
+     * Builds passwords straight into a caller-supplied {@code char[]}: required
+     * characters are drawn per class, shuffled in place with Fisher–Yates and
+     * copied out with separators. Instances are confined to one thread.
+     */
+    static final class PasswordGenerator {
+        private static final char[] LOWERCASE = "abcdefghijklmnopqrstuvwxyz".toCharArray();
+        private static final char[] UPPERCASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+        private static final char[] DIGITS = "0123456789".toCharArray();
 
-        // add required special characters
-        for (int i = 0; i < params.numSpecial(); i++) {
-            passwordChars.add(params.specialChars().charAt(random.nextInt(params.specialChars().length())));
+        private final GenerationParams params;
+        private final char[] special;
+        private final char[] chars;
+
+        PasswordGenerator(GenerationParams params) {
+            this.params = params;
+            this.special = params.specialChars().toCharArray();
+            this.chars = new char[params.length()];
         }
 
-        // fill the rest with lowercase letters
-        for (int i = 0; i < params.numLowercase(); i++) {
-            passwordChars.add(lowercaseChars.charAt(random.nextInt(lowercaseChars.length())));
+        /**
+         * @return the longest password {@link #next} can write, separators included
+         */
+        int maxLength() {
+            int frequency = params.separatorFrequency();
+            int separators = (frequency > 0 && params.length() > 0) ? (params.length() - 1) / frequency : 0;
+            return params.length() + separators;
         }
 
-        Collections.shuffle(passwordChars, random);
+        /**
+         * Write one password drawn from {@code random} at {@code dst[off]}.
+         *
+         * @return the offset just past the password
+         */
+        int next(Random random, char[] dst, int off) {
+            int n = 0;
+            n = draw(random, UPPERCASE, params.numUppercase(), n);
+            n = draw(random, DIGITS, params.numDigits(), n);
+            n = draw(random, special, params.numSpecial(), n);
+            draw(random, LOWERCASE, params.numLowercase(), n);
 
-        // build the password string
-        var passwordBuilder = new StringBuilder();
-        for (int i = 0; i < passwordChars.size(); i++) {
-            passwordBuilder.append(passwordChars.get(i));
-            if (params.separatorFrequency() > 0 && (i + 1) % params.separatorFrequency() == 0
-                    && (i + 1) < params.length()) {
-                passwordBuilder.append(params.separator());
+            for (int i = chars.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                char tmp = chars[i];
+                chars[i] = chars[j];
+                chars[j] = tmp;
             }
+
+            int frequency = params.separatorFrequency();
+            for (int i = 0; i < chars.length; i++) {
+                dst[off++] = chars[i];
+                if (frequency > 0 && (i + 1) % frequency == 0 && (i + 1) < params.length()) {
+                    dst[off++] = params.separator();
+                }
+            }
+            return off;
         }
 
-        return passwordBuilder.toString();
+        private int draw(Random random, char[] alphabet, int count, int n) {
+            for (int i = 0; i < count; i++) {
+                chars[n++] = alphabet[random.nextInt(alphabet.length)];
+            }
+            return n;
+        }
     }
 
-    private boolean isValidFilename(String filename) {
+    private static boolean isValidFilename(String filename) {
         String invalidChars = "/\\:*?\"<>|";
         for (char c : filename.toCharArray()) {
             if (invalidChars.indexOf(c) != -1) {
@@ -169,4 +308,391 @@ public class PasswordCommand implements Callable<Integer> {
         }
         return true;
     }
+
+    @Command(name = "screen", mixinStandardHelpOptions = true, description = "Screen passwords against an offline corpus of breached SHA-1 hashes.", subcommands = {
+            PasswordCommand.ScreenBuildCommand.class, PasswordCommand.ScreenCheckCommand.class})
+    static class ScreenCommand implements Callable<Integer> {
+        @Override
+        public Integer call() {
+            // This command acts as a container for sub-subcommands
+            return 0;
+        }
+    }
+
+    @Command(name = "build", mixinStandardHelpOptions = true, description = "Build a sorted, memory-mappable index with a Bloom filter from a corpus of hex SHA-1 hashes (one per line, optional ':count' suffix).")
+    static class ScreenBuildCommand implements Callable<Integer> {
+        @Parameters(index = "0", description = "Corpus file, or '-' for standard input.")
+        private String corpus;
+
+        @Option(names = {"-i", "--index"}, required = true, description = "Index file to write.")
+        private Path index;
+
+        @Option(names = {
+                "--temp-dir"}, description = "Directory for the temporary sort buckets, which need about as much space as the hashes themselves (default: next to the index).")
+        private Path tempDir;
+
+        @Option(names = {
+                "--bloom-bits"}, description = "Bloom filter bits per hash (default: 10, about 1% false positives).")
+        private int bloomBitsPerEntry = 10;
+
+        @Override
+        public Integer call() {
+            if (bloomBitsPerEntry < 1 || bloomBitsPerEntry > 64) {
+                System.err.println("Error: --bloom-bits must be between 1 and 64.");
+                return 1;
+            }
+            var dir = tempDir != null ? tempDir : index.toAbsolutePath().getParent();
+            try (var in = corpus.equals("-") ? System.in : Files.newInputStream(Path.of(corpus))) {
+                var stats = BreachIndex.build(in, index, dir, bloomBitsPerEntry);
+                System.err.println("Indexed " + stats.distinct() + " distinct hashes from " + stats.lines() + " lines"
+                        + (stats.invalid() > 0 ? " (" + stats.invalid() + " invalid lines skipped)" : "") + ".");
+            } catch (IOException e) {
+                System.err.println("Error: Could not build index: " + e.getMessage());
+                return 1;
+            }
+            return 0;
+        }
+    }
+
+    @Command(name = "check", mixinStandardHelpOptions = true, description = "Check passwords, one per line, against a breach index. Prints the passwords that are not in the corpus, in input order.")
+    static class ScreenCheckCommand implements Callable<Integer> {
+        // bytes of candidates hashed per task
+        private static final int CHUNK_BYTES = 1 << 18;
+
+        @Parameters(index = "0", arity = "0..1", description = "File with one password per line. Reads standard input if omitted or '-'.")
+        private String input = "-";
+
+        @Option(names = {"-i", "--index"}, required = true, description = "Index built by 'password screen build'.")
+        private Path index;
+
+        @Option(names = {"--breached"}, description = "Print the breached passwords instead of the clean ones.")
+        private boolean printBreached = false;
+
+        @Option(names = {"-p",
+                "--parallel"}, description = "Number of hashing threads (default: number of processors).")
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /** Output of one chunk of candidates. */
+        private record Checked(byte[] lines, int length, long checked, long breached) {
+        }
+
+        @Override
+        public Integer call() {
+            if (threads < 1) {
+                System.err.println("Error: --parallel must be at least 1.");
+                return 1;
+            }
+
+            BreachIndex breaches;
+            try {
+                breaches = BreachIndex.open(index);
+            } catch (IOException e) {
+                System.err.println("Error: Could not open index: " + e.getMessage());
+                return 1;
+            }
+
+            var digests = ThreadLocal.withInitial(() -> {
+                try {
+                    return MessageDigest.getInstance("SHA-1");
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException("SHA-1 is not available", e);
+                }
+            });
+
+            // updated from the chunk callback
+            long[] checked = {0};
+            long[] breached = {0};
+            System.out.flush();
+            var out = new FileOutputStream(FileDescriptor.out);
+            try (var in = input.equals("-") ? System.in : Files.newInputStream(Path.of(input))) {
+                // written in input order, so the output follows the input
+                LineChunks.process(in, CHUNK_BYTES, threads, data -> check(data, breaches, digests.get()), result -> {
+                    out.write(result.lines(), 0, result.length());
+                    checked[0] += result.checked();
+                    breached[0] += result.breached();
+                });
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Error: Could not check passwords: " + e.getMessage());
+                return 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Error: Password screening interrupted.");
+                return 1;
+            }
+
+            System.err.println(checked[0] + " passwords checked, " + breached[0] + " found in the breach corpus.");
+            return 0;
+        }
+
+        private Checked check(byte[] data, BreachIndex breaches, MessageDigest sha1) {
+            var result = new byte[data.length + 1];
+            int[] length = {0};
+            long[] counts = {0, 0};
+            LineChunks.forEachLine(data, (line, start, end) -> {
+                counts[0]++;
+                sha1.update(line, start, end - start);
+                boolean found = breaches.contains(sha1.digest());
+                if (found) {
+                    counts[1]++;
+                }
+                if (found == printBreached) {
+                    System.arraycopy(line, start, result, length[0], end - start);
+                    length[0] += end - start;
+                    result[length[0]++] = '\n';
+                }
+            });
+            return new Checked(result, length[0], counts[0], counts[1]);
+        }
+    }
+
+    @Command(name = "analyze", mixinStandardHelpOptions = true, description = "Report length, character classes, charset entropy and weak patterns over a list of passwords, one per line.")
+    static class AnalyzeCommand implements Callable<Integer> {
+        // bytes of passwords analyzed per task
+        private static final int CHUNK_BYTES = 1 << 20;
+
+        @Parameters(index = "0", arity = "0..1", description = "File with one password per line. Reads standard input if omitted or '-'.")
+        private String input = "-";
+
+        @Option(names = {
+                "--special-chars"}, description = "Characters counted as special (default: the generator's special characters).")
+        private String specialChars = DEFAULT_SPECIAL_CHARS;
+
+        @Option(names = {
+                "--per-password"}, description = "Print length, class counts, entropy and patterns of every password, tab-separated and in input order, with the report on stderr.")
+        private boolean perPassword = false;
+
+        @Option(names = {"-p",
+                "--parallel"}, description = "Number of analyzing threads (default: number of processors).")
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /** Statistics and optional per-password lines of one chunk. */
+        private record Analyzed(PasswordStats stats, byte[] lines) {
+        }
+
+        @Override
+        public Integer call() {
+            if (threads < 1) {
+                System.err.println("Error: --parallel must be at least 1.");
+                return 1;
+            }
+
+            var total = new PasswordStats(specialChars);
+            System.out.flush();
+            var out = new FileOutputStream(FileDescriptor.out);
+            try (var in = input.equals("-") ? System.in : Files.newInputStream(Path.of(input))) {
+                // merged in input order, so per-password lines follow the input
+                LineChunks.process(in, CHUNK_BYTES, threads, this::analyze, result -> {
+                    total.merge(result.stats());
+                    if (result.lines() != null) {
+                        out.write(result.lines());
+                    }
+                });
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Error: Could not analyze passwords: " + e.getMessage());
+                return 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Error: Password analysis interrupted.");
+                return 1;
+            }
+
+            total.print(perPassword ? System.err : System.out);
+            return 0;
+        }
+
+        private Analyzed analyze(byte[] data) {
+            var stats = new PasswordStats(specialChars);
+            var lines = perPassword ? new StringBuilder() : null;
+            LineChunks.forEachLine(data, (line, start, end) -> {
+                stats.add(line, start, end);
+                if (lines != null) {
+                    lines.append(stats.lastLength());
+                    for (int c = PasswordStats.UPPERCASE; c <= PasswordStats.OTHER; c++) {
+                        lines.append('\t').append(stats.lastClassCount(c));
+                    }
+                    // one decimal without String.format, which would dominate the per-password cost
+                    long tenths = Math.round(stats.lastEntropy() * 10);
+                    lines.append('\t').append(tenths / 10).append('.').append(tenths % 10);
+                    lines.append('\t').append(stats.lastPatterns()).append('\n');
+                }
+            });
+            return new Analyzed(stats, lines == null ? null : lines.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Command(name = "passphrase", mixinStandardHelpOptions = true, description = "Generate Diceware-style passphrases from a word list, one word per line (the 'number<tab>word' Diceware layout works as is).")
+    static class PassphraseCommand implements Callable<Integer> {
+        // passphrases per output chunk
+        private static final int CHUNK = 4096;
+        // far beyond any useful entropy, and keeps each thread's chunk buffer small
+        private static final int MAX_WORDS = 100;
+
+        @Option(names = {"-w", "--wordlist"}, required = true, description = "Word list file.")
+        private Path wordlistFile;
+
+        @Option(names = {"-n", "--number"}, description = "generate x passphrases (default: 1)")
+        private long number = 1;
+
+        @Option(names = {"-k", "--words"}, description = "Words per passphrase, at most 100 (default: 6).")
+        private int words = 6;
+
+        @Option(names = {"--separator"}, description = "Separator between words (default: -).")
+        private String separator = "-";
+
+        @Option(names = {"-f", "--file"}, description = "write passphrases to filename")
+        private String filename;
+
+        @Option(names = {"-p", "--parallel"}, description = "number of generator threads (default: 1)")
+        private int threads = 1;
+
+        @Mixin
+        private RandomSource.Options randomOptions = new RandomSource.Options();
+
+        @Override
+        public Integer call() {
+            randomOptions.apply();
+            if (number <= 0 || words <= 0) {
+                System.err.println("Error: Invalid number of passphrases or words.");
+                return 1;
+            }
+            if (words > MAX_WORDS) {
+                System.err.println("Error: --words must be at most " + MAX_WORDS + ".");
+                return 1;
+            }
+            if (threads < 1) {
+                System.err.println("Error: --parallel must be at least 1.");
+                return 1;
+            }
+
+            Wordlist wordlist;
+            try {
+                wordlist = Wordlist.open(wordlistFile);
+            } catch (IOException e) {
+                System.err.println("Error: Could not read word list: " + e.getMessage());
+                return 1;
+            }
+            int bufferBytes;
+            try {
+                bufferBytes = bufferBytes(wordlist);
+            } catch (ArithmeticException e) {
+                System.err.println("Error: Passphrases from this word list and separator are too long.");
+                return 1;
+            }
+            // words are drawn independently and uniformly; each adds log2(list size) bits
+            double bits = words * Math.log(wordlist.size()) / Math.log(2);
+            System.err.printf("Each passphrase: %d words from a list of %d, %.1f bits of entropy.%n", words,
+                    wordlist.size(), bits);
+
+            try {
+                if (filename != null) {
+                    var f = new File(filename);
+                    if (!isValidFilename(f.getName())) {
+                        System.err.println("Invalid argument error while writing passphrases: Invalid filename!");
+                        return 1;
+                    }
+                    try (var out = new FileOutputStream(f)) {
+                        generate(out, wordlist, bufferBytes);
+                    }
+                    LOGGER.info("File written!");
+                } else {
+                    System.out.flush();
+                    generate(new FileOutputStream(FileDescriptor.out), wordlist, bufferBytes);
+                }
+            } catch (IOException e) {
+                System.err.println("Runtime error while writing passphrases: " + e.getMessage());
+                return 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Error: Passphrase generation interrupted.");
+                return 1;
+            }
+            return 0;
+        }
+
+        /**
+         * @return bytes needed to buffer one chunk of the longest possible passphrases
+         * @throws ArithmeticException
+         *             if that does not fit in an array
+         */
+        private int bufferBytes(Wordlist wordlist) {
+            int separatorBytes = separator.getBytes(StandardCharsets.UTF_8).length;
+            int lineSeparatorBytes = System.lineSeparator().length();
+            int maxLine = Math.addExact(Math.addExact(Math.multiplyExact(words, wordlist.maxWordBytes()),
+                    Math.multiplyExact(words - 1, separatorBytes)), lineSeparatorBytes);
+            return Math.multiplyExact(CHUNK, maxLine);
+        }
+
+        private void generate(OutputStream out, Wordlist wordlist, int bufferBytes)
+                throws IOException, InterruptedException {
+            long chunks = (number + CHUNK - 1) / CHUNK;
+            var nextChunk = new AtomicLong();
+            var writeTurn = RandomSource.isSeeded() ? new Turnstile() : null;
+            if (threads == 1 || chunks == 1) {
+                generateChunks(out, wordlist, bufferBytes, nextChunk, chunks, null);
+                return;
+            }
+
+            var executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Void>> results = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    results.add(executor.submit(() -> {
+                        generateChunks(out, wordlist, bufferBytes, nextChunk, chunks, writeTurn);
+                        return null;
+                    }));
+                }
+                for (var result : results) {
+                    try {
+                        LineChunks.await(result);
+                    } catch (IOException e) {
+                        if (writeTurn != null) {
+                            writeTurn.abort();
+                        }
+                        throw e;
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private void generateChunks(OutputStream out, Wordlist wordlist, int bufferBytes, AtomicLong nextChunk,
+                long chunks, Turnstile writeTurn) throws IOException, InterruptedException {
+            var separatorBytes = separator.getBytes(StandardCharsets.UTF_8);
+            var lineSeparator = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+            var buffer = new byte[bufferBytes];
+
+            long chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                var random = RandomSource.forChunk(chunk);
+                int count = (int) Math.min(CHUNK, number - chunk * CHUNK);
+                int len = 0;
+                for (int i = 0; i < count; i++) {
+                    for (int w = 0; w < words; w++) {
+                        if (w > 0) {
+                            System.arraycopy(separatorBytes, 0, buffer, len, separatorBytes.length);
+                            len += separatorBytes.length;
+                        }
+                        len = wordlist.copyWord(random.nextInt(wordlist.size()), buffer, len);
+                    }
+                    System.arraycopy(lineSeparator, 0, buffer, len, lineSeparator.length);
+                    len += lineSeparator.length;
+                }
+                if (writeTurn != null) {
+                    writeTurn.await(chunk);
+                    try {
+                        out.write(buffer, 0, len);
+                    } finally {
+                        writeTurn.advance();
+                    }
+                } else {
+                    synchronized (out) {
+                        out.write(buffer, 0, len);
+                    }
+                }
+            }
+        }
+    }
 }
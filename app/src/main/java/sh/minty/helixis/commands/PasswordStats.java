@@ -0,0 +1,301 @@
+package sh.minty.helixis.commands;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Strength statistics over a list of passwords.
+ *
+ * <p>
+ * Everything is kept in primitive counters, so each chunk of a large list can
+ * be analyzed by its own instance on its own thread and the results merged
+ * afterwards. Passwords are read as UTF-8 bytes; the character classes are the
+ * ones {@link GenerationParams} builds passwords from, plus "other" for
+ * anything outside them (spaces, non-ASCII).
+ * </p>
+ */
+final class PasswordStats {
+    static final int UPPERCASE = 0;
+    static final int LOWERCASE = 1;
+    static final int DIGIT = 2;
+    static final int SPECIAL = 3;
+    static final int OTHER = 4;
+    private static final String[] CLASS_NAMES = {"uppercase", "lowercase", "digits", "special", "other"};
+
+    /** Three or more identical characters in a row, e.g. {@code aaa}. */
+    static final int RUN = 1;
+    /**
+     * Three or more ascending or descending characters, e.g. {@code abc} or
+     * {@code 321}.
+     */
+    static final int SEQUENCE = 1 << 1;
+    /** The whole password is a shorter unit repeated, e.g. {@code abcabc}. */
+    static final int REPEATED = 1 << 2;
+    private static final String[] PATTERN_NAMES = {"run", "sequence", "repeated"};
+
+    // lengths from this one up share the last histogram bucket
+    private static final int MAX_LENGTH = 64;
+    private static final int ENTROPY_BUCKET_BITS = 10;
+    private static final int ENTROPY_BUCKETS = 16;
+    // assumed alphabet size contributed by characters outside the known classes
+    private static final int OTHER_POOL = 32;
+
+    private final byte[] classOf = new byte[128];
+    // log2 of every pool size a combination of classes can give, by class bitmask
+    private final double[] log2Pool = new double[1 << 5];
+
+    private long count;
+    private long lengthSum;
+    private double entropySum;
+    private int minLength = Integer.MAX_VALUE;
+    private int maxLength;
+    private final long[] lengths = new long[MAX_LENGTH + 1];
+    private final long[] entropy = new long[ENTROPY_BUCKETS];
+    private final long[] withClass = new long[CLASS_NAMES.length];
+    private final long[] classesUsed = new long[CLASS_NAMES.length + 1];
+    private final long[] withPattern = new long[PATTERN_NAMES.length];
+
+    // results for the password most recently passed to add()
+    private final int[] lastClassCounts = new int[CLASS_NAMES.length];
+    private int lastLength;
+    private double lastEntropy;
+    private int lastPatterns;
+
+    /**
+     * @param specialChars
+     *            characters counted as special, as in
+     *            {@link GenerationParams#specialChars()}
+     */
+    PasswordStats(String specialChars) {
+        for (int c = 0; c < 128; c++) {
+            classOf[c] = OTHER;
+        }
+        int specialPool = 0;
+        for (char c : specialChars.toCharArray()) {
+            if (c < 128 && classOf[c] == OTHER) {
+                classOf[c] = SPECIAL;
+                specialPool++;
+            }
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            classOf[c] = UPPERCASE;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            classOf[c] = LOWERCASE;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            classOf[c] = DIGIT;
+        }
+
+        int[] poolSizes = {26, 26, 10, Math.max(1, specialPool), OTHER_POOL};
+        for (int mask = 1; mask < log2Pool.length; mask++) {
+            int pool = 0;
+            for (int c = 0; c < poolSizes.length; c++) {
+                if ((mask & (1 << c)) != 0) {
+                    pool += poolSizes[c];
+                }
+            }
+            log2Pool[mask] = Math.log(pool) / Math.log(2);
+        }
+    }
+
+    /**
+     * Analyze the password in {@code data[start..end)} and count it. Its own
+     * figures stay available through the {@code last*} accessors until the next
+     * call.
+     */
+    void add(byte[] data, int start, int end) {
+        var classCounts = lastClassCounts;
+        for (int c = 0; c < classCounts.length; c++) {
+            classCounts[c] = 0;
+        }
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            int b = data[i] & 0xFF;
+            if (b < 128) {
+                classCounts[classOf[b]]++;
+                length++;
+            } else if ((b & 0xC0) != 0x80) {
+                // lead byte of a multi-byte character; continuation bytes are not counted
+                classCounts[OTHER]++;
+                length++;
+            }
+        }
+
+        int mask = 0;
+        for (int c = 0; c < classCounts.length; c++) {
+            if (classCounts[c] > 0) {
+                mask |= 1 << c;
+                withClass[c]++;
+            }
+        }
+        classesUsed[Integer.bitCount(mask)]++;
+
+        // charset entropy: every character drawn from the union of the classes present
+        double bits = mask == 0 ? 0 : length * log2Pool[mask];
+        int patterns = patterns(data, start, end);
+        for (int p = 0; p < PATTERN_NAMES.length; p++) {
+            if ((patterns & (1 << p)) != 0) {
+                withPattern[p]++;
+            }
+        }
+
+        count++;
+        lengthSum += length;
+        entropySum += bits;
+        minLength = Math.min(minLength, length);
+        maxLength = Math.max(maxLength, length);
+        lengths[Math.min(length, MAX_LENGTH)]++;
+        entropy[Math.min((int) (bits / ENTROPY_BUCKET_BITS), ENTROPY_BUCKETS - 1)]++;
+
+        lastLength = length;
+        lastEntropy = bits;
+        lastPatterns = patterns;
+    }
+
+    private static int patterns(byte[] data, int start, int end) {
+        int found = 0;
+        for (int i = start; i + 2 < end; i++) {
+            int a = data[i];
+            int b = data[i + 1];
+            int c = data[i + 2];
+            if (a == b && b == c) {
+                found |= RUN;
+            } else if (isAlphanumeric(a) && isAlphanumeric(b) && isAlphanumeric(c) && b - a == c - b
+                    && Math.abs(b - a) == 1) {
+                found |= SEQUENCE;
+            }
+        }
+
+        int n = end - start;
+        for (int period = 1; period <= n / 2; period++) {
+            if (n % period != 0) {
+                continue;
+            }
+            int i = start + period;
+            while (i < end && data[i] == data[i - period]) {
+                i++;
+            }
+            if (i == end) {
+                found |= REPEATED;
+                break;
+            }
+        }
+        return found;
+    }
+
+    private static boolean isAlphanumeric(int c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Add the counts of {@code other}, which must use the same special characters.
+     */
+    void merge(PasswordStats other) {
+        count += other.count;
+        lengthSum += other.lengthSum;
+        entropySum += other.entropySum;
+        minLength = Math.min(minLength, other.minLength);
+        maxLength = Math.max(maxLength, other.maxLength);
+        addAll(lengths, other.lengths);
+        addAll(entropy, other.entropy);
+        addAll(withClass, other.withClass);
+        addAll(classesUsed, other.classesUsed);
+        addAll(withPattern, other.withPattern);
+    }
+
+    private static void addAll(long[] into, long[] from) {
+        for (int i = 0; i < into.length; i++) {
+            into[i] += from[i];
+        }
+    }
+
+    long count() {
+        return count;
+    }
+
+    int lastLength() {
+        return lastLength;
+    }
+
+    int lastClassCount(int characterClass) {
+        return lastClassCounts[characterClass];
+    }
+
+    double lastEntropy() {
+        return lastEntropy;
+    }
+
+    /**
+     * @return names of the patterns found in the last password, comma separated, or
+     *         {@code -}
+     */
+    String lastPatterns() {
+        if (lastPatterns == 0) {
+            return "-";
+        }
+        var names = new StringBuilder();
+        for (int p = 0; p < PATTERN_NAMES.length; p++) {
+            if ((lastPatterns & (1 << p)) != 0) {
+                names.append(names.isEmpty() ? "" : ",").append(PATTERN_NAMES[p]);
+            }
+        }
+        return names.toString();
+    }
+
+    /**
+     * Print the aggregate report.
+     */
+    void print(PrintStream out) {
+        out.printf(Locale.ROOT, "Passwords:        %d%n", count);
+        if (count == 0) {
+            return;
+        }
+        out.printf(Locale.ROOT, "Length:           min %d, mean %.1f, max %d%n", minLength, (double) lengthSum / count,
+                maxLength);
+        out.printf(Locale.ROOT, "Entropy (bits):   mean %.1f%n", entropySum / count);
+
+        out.println();
+        out.println("Character classes:");
+        for (int c = 0; c < CLASS_NAMES.length; c++) {
+            out.printf(Locale.ROOT, "  %-10s %12d  %5.1f%%%n", CLASS_NAMES[c], withClass[c], percent(withClass[c]));
+        }
+        out.println("Classes used:");
+        for (int n = 0; n < classesUsed.length; n++) {
+            out.printf(Locale.ROOT, "  %-10d %12d  %5.1f%%%n", n, classesUsed[n], percent(classesUsed[n]));
+        }
+        out.println("Patterns:");
+        for (int p = 0; p < PATTERN_NAMES.length; p++) {
+            out.printf(Locale.ROOT, "  %-10s %12d  %5.1f%%%n", PATTERN_NAMES[p], withPattern[p],
+                    percent(withPattern[p]));
+        }
+
+        out.println();
+        out.println("Length histogram:");
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            if (lengths[length] > 0) {
+                String label = length == MAX_LENGTH ? MAX_LENGTH + "+" : Integer.toString(length);
+                printBar(out, label, lengths[length]);
+            }
+        }
+        out.println("Entropy histogram (bits):");
+        for (int bucket = 0; bucket < ENTROPY_BUCKETS; bucket++) {
+            if (entropy[bucket] > 0) {
+                int from = bucket * ENTROPY_BUCKET_BITS;
+                String label = bucket == ENTROPY_BUCKETS - 1
+                        ? from + "+"
+                        : from + "-" + (from + ENTROPY_BUCKET_BITS - 1);
+                printBar(out, label, entropy[bucket]);
+            }
+        }
+    }
+
+    private double percent(long part) {
+        return 100.0 * part / count;
+    }
+
+    private void printBar(PrintStream out, String label, long value) {
+        int width = (int) Math.round(40.0 * value / count);
+        out.printf(Locale.ROOT, "  %-10s %12d  %s%n", label, value, "#".repeat(width));
+    }
+}
@@ -1,9 +1,30 @@
 package sh.minty.helixis.commands;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -11,8 +32,12 @@ import picocli.CommandLine.Parameters;
 
 @Command(name = "portscan", mixinStandardHelpOptions = true, description = "Scans for open ports on a given host.")
 public class PortScanCommand implements Callable<Integer> {
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    // how many probes may be outstanding per worker before the dispatcher waits
+    // for the writer
+    private static final int WINDOW_PER_WORKER = 16;
 
-    @Parameters(index = "0", description = "The target host (IP address or hostname).")
+    @Parameters(index = "0", description = "The target host (IP address, hostname or CIDR range such as '10.0.0.0/16').")
     private String host;
 
     @Parameters(index = "1", description = "The port range to scan (e.g., '1-1024').")
@@ -24,9 +49,40 @@ public class PortScanCommand implements Callable<Integer> {
     @Option(names = {"-w", "--workers"}, description = "Number of concurrent workers. Defaults to 100.")
     private int workers = 100;
 
+    @Option(names = {"-F", "--format"}, description = "Output format: text, jsonl or csv. Defaults to text.")
+    private String format = "text";
+
+    @Option(names = {"-o", "--output"}, description = "Write results to this file instead of standard output.")
+    private Path outputFile;
+
+    @Option(names = {"-a", "--all"}, description = "Report closed ports as well as open ones.")
+    private boolean reportClosed;
+
+    @Option(names = {"--checkpoint"}, description = "Periodically record scan progress to this file.")
+    private Path checkpointFile;
+
+    @Option(names = {"--checkpoint-interval"}, description = "Seconds between checkpoint writes. Defaults to 5.")
+    private int checkpointInterval = 5;
+
+    @Option(names = {"--resume"}, description = "Continue an interrupted scan from the --checkpoint file.")
+    private boolean resume;
+
+    @Option(names = {
+            "--shard"}, paramLabel = "k/n", description = "Scan only the k-th of n equal slices of the targets (e.g., '2/4').")
+    private String shard = "1/1";
+
+    private record ScanResult(long index, boolean open, long latencyNanos) {
+    }
+
+    private CidrRange range;
+    private InetAddress singleAddress;
+    private int startPort;
+    private int portCount;
+    // the output file, whose position the checkpoint records
+    private FileChannel outputChannel;
+
     @Override
     public Integer call() {
-        int startPort;
         int endPort;
 
         try {
@@ -52,35 +108,324 @@ public class PortScanCommand implements Callable<Integer> {
             System.err.println("Error: Invalid port number in range. " + e.getMessage());
             return 1;
         }
+        portCount = endPort - startPort + 1;
 
-        System.out.println("Scanning " + host + " for open ports in range " + portRange + "...");
+        format = format.toLowerCase(Locale.ROOT);
+        if (!format.equals("text") && !format.equals("jsonl") && !format.equals("csv")) {
+            System.err.println("Error: Unknown output format '" + format + "'. Use text, jsonl or csv.");
+            return 1;
+        }
+        if (workers < 1) {
+            System.err.println("Error: Number of workers must be at least 1.");
+            return 1;
+        }
+        if (resume && checkpointFile == null) {
+            System.err.println("Error: --resume requires --checkpoint.");
+            return 1;
+        }
 
-        var executor = Executors.newFixedThreadPool(workers);
+        long hostCount;
+        try {
+            if (host.indexOf('/') >= 0) {
+                range = CidrRange.parse(host);
+                hostCount = range.size();
+            } else {
+                // resolve once up front instead of once per probe
+                singleAddress = InetAddress.getByName(host);
+                hostCount = 1;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: Invalid CIDR range. " + e.getMessage());
+            return 1;
+        } catch (UnknownHostException e) {
+            System.err.println("Error: Unknown host " + host);
+            return 1;
+        }
 
-        for (int port = startPort; port <= endPort; port++) {
-            final int currentPort = port;
-            executor.submit(() -> {
-                try {
-                    var socket = new Socket();
-                    socket.connect(new InetSocketAddress(host, currentPort), timeout);
-                    socket.close();
-                    System.out.println("Port " + currentPort + " is open.");
-                } catch (Exception e) {
-                    // Port is closed or unreachable
+        // every (host, port) pair gets a stable index, so shards and checkpoints are
+        // just index ranges
+        long total;
+        try {
+            total = Math.multiplyExact(hostCount, portCount);
+        } catch (ArithmeticException e) {
+            System.err.println("Error: Too many host/port combinations to scan.");
+            return 1;
+        }
+        long from;
+        long to;
+        try {
+            String[] parts = shard.split("/");
+            if (parts.length != 2) {
+                throw new NumberFormatException("expected k/n");
+            }
+            int k = Integer.parseInt(parts[0]);
+            int n = Integer.parseInt(parts[1]);
+            if (n < 1 || k < 1 || k > n) {
+                throw new NumberFormatException("k must be between 1 and n");
+            }
+            from = shardStart(total, k - 1, n);
+            to = shardStart(total, k, n);
+        } catch (NumberFormatException e) {
+            System.err.println("Error: Invalid shard '" + shard + "'. " + e.getMessage());
+            return 1;
+        }
+
+        long next = from;
+        // bytes of the output file that the checkpoint covers, or -1 to start it afresh
+        long outputBytes = -1;
+        if (resume) {
+            if (!Files.exists(checkpointFile)) {
+                System.err.println("Error: Checkpoint " + checkpointFile + " does not exist.");
+                return 1;
+            }
+            try {
+                var saved = new Properties();
+                try (var reader = Files.newBufferedReader(checkpointFile)) {
+                    saved.load(reader);
+                }
+                if (!host.equals(saved.getProperty("target")) || !portRange.equals(saved.getProperty("ports"))
+                        || !shard.equals(saved.getProperty("shard"))) {
+                    System.err.println("Error: Checkpoint " + checkpointFile + " belongs to a different scan.");
+                    return 1;
+                }
+                // the output so far must not change shape halfway through the file
+                if (!format.equals(saved.getProperty("format"))
+                        || !Boolean.toString(reportClosed).equals(saved.getProperty("all"))) {
+                    System.err.println("Error: Checkpoint " + checkpointFile + " was written with --format "
+                            + saved.getProperty("format")
+                            + (Boolean.parseBoolean(saved.getProperty("all")) ? " --all" : "")
+                            + "; resume with the same options.");
+                    return 1;
                 }
-            });
+                next = Long.parseLong(saved.getProperty("next"));
+                if (next < from || next > to) {
+                    System.err.println("Error: Checkpoint position is outside of this shard.");
+                    return 1;
+                }
+                if (outputFile != null) {
+                    outputBytes = Long.parseLong(saved.getProperty("outputBytes", "-1"));
+                    if (outputBytes < 0 || !Files.exists(outputFile) || Files.size(outputFile) < outputBytes) {
+                        System.err.println("Error: Output file " + outputFile
+                                + " does not match the checkpoint; scan again without --resume.");
+                        return 1;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Error reading checkpoint: " + e.getMessage());
+                return 1;
+            }
         }
 
-        executor.shutdown();
-        try {
-            executor.awaitTermination(1, TimeUnit.MINUTES);
+        // keep stdout clean for machine-readable output
+        PrintStream status = (format.equals("text") && outputFile == null) ? System.out : System.err;
+        if (next > from) {
+            status.println("Resuming scan of " + host + " at " + describe(next) + "...");
+        } else {
+            status.println("Scanning " + host + " for open ports in range " + portRange + "...");
+        }
+
+        // a checkpoint may come before the first result, with only the header written
+        boolean header = outputFile != null ? outputBytes <= 0 : next == from;
+        try (var out = openOutput(outputBytes)) {
+            if (format.equals("csv") && header) {
+                out.write("host,port,state,latency_ms\n");
+            }
+            if (!scan(out, next, to)) {
+                return 1;
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing scan results: " + e.getMessage());
+            return 1;
         } catch (InterruptedException e) {
             System.err.println("Port scan interrupted.");
             Thread.currentThread().interrupt();
             return 1;
         }
 
-        System.out.println("Scan complete.");
+        status.println("Scan complete.");
         return 0;
     }
+
+    /**
+     * Probe indices {@code [from, to)} and write the results in index order. The
+     * calling thread is the only one touching {@code out}; a dispatcher thread
+     * feeds the worker pool and the workers hand results back through a queue.
+     */
+    private boolean scan(Writer out, long from, long to) throws IOException, InterruptedException {
+        int window = workers * WINDOW_PER_WORKER;
+        var permits = new Semaphore(window);
+        BlockingQueue<ScanResult> results = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+
+        var dispatcher = new Thread(() -> {
+            try {
+                for (long i = from; i < to; i++) {
+                    // bounds the reorder buffer: index i is never over `window` ahead of the writer
+                    permits.acquire();
+                    final long index = i;
+                    executor.execute(() -> results.add(probe(index)));
+                }
+            } catch (InterruptedException | RejectedExecutionException e) {
+                // scan is being torn down
+            }
+        }, "portscan-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        var pending = new ScanResult[window];
+        long next = from;
+        long checkpointNanos = TimeUnit.SECONDS.toNanos(checkpointInterval);
+        long lastCheckpoint = System.nanoTime();
+        try {
+            while (next < to) {
+                var result = results.take();
+                pending[(int) ((result.index() - from) % window)] = result;
+
+                int slot;
+                while (next < to && pending[slot = (int) ((next - from) % window)] != null) {
+                    write(out, pending[slot]);
+                    pending[slot] = null;
+                    next++;
+                    permits.release();
+                }
+
+                if (checkpointFile != null && System.nanoTime() - lastCheckpoint >= checkpointNanos) {
+                    // results must be on disk before the checkpoint claims them
+                    out.flush();
+                    writeCheckpoint(next);
+                    lastCheckpoint = System.nanoTime();
+                }
+            }
+            out.flush();
+            if (checkpointFile != null) {
+                writeCheckpoint(next);
+            }
+            return true;
+        } finally {
+            dispatcher.interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    private ScanResult probe(long index) {
+        long begin = System.nanoTime();
+        boolean open;
+        try (var socket = new Socket()) {
+            socket.connect(new InetSocketAddress(hostAt(index), portAt(index)), timeout);
+            open = true;
+        } catch (Exception e) {
+            // Port is closed or unreachable
+            open = false;
+        }
+        return new ScanResult(index, open, System.nanoTime() - begin);
+    }
+
+    private void write(Writer out, ScanResult result) throws IOException {
+        if (!result.open() && !reportClosed) {
+            return;
+        }
+        String state = result.open() ? "open" : "closed";
+        int port = portAt(result.index());
+        String address = hostNameAt(result.index());
+
+        switch (format) {
+            case "jsonl" -> {
+                out.write("{\"host\":\"");
+                out.write(address);
+                out.write("\",\"port\":");
+                out.write(Integer.toString(port));
+                out.write(",\"state\":\"");
+                out.write(state);
+                out.write("\",\"latency_ms\":");
+                out.write(Long.toString(TimeUnit.NANOSECONDS.toMillis(result.latencyNanos())));
+                out.write("}\n");
+            }
+            case "csv" -> {
+                out.write(address);
+                out.write(',');
+                out.write(Integer.toString(port));
+                out.write(',');
+                out.write(state);
+                out.write(',');
+                out.write(Long.toString(TimeUnit.NANOSECONDS.toMillis(result.latencyNanos())));
+                out.write('\n');
+            }
+            default -> {
+                out.write("Port " + port + " is " + state);
+                if (range != null) {
+                    out.write(" on " + address);
+                }
+                out.write(".\n");
+            }
+        }
+    }
+
+    private void writeCheckpoint(long next) throws IOException {
+        var state = new Properties();
+        if (outputChannel != null) {
+            // results up to next are flushed, so a resumed scan continues the file here
+            state.setProperty("outputBytes", Long.toString(outputChannel.position()));
+        }
+        state.setProperty("target", host);
+        state.setProperty("ports", portRange);
+        state.setProperty("shard", shard);
+        state.setProperty("format", format);
+        state.setProperty("all", Boolean.toString(reportClosed));
+        state.setProperty("next", Long.toString(next));
+        state.setProperty("resumeAt", describe(next));
+
+        // write-then-rename so an interrupted scan never leaves a torn checkpoint
+        var tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (var writer = Files.newBufferedWriter(tmp)) {
+            state.store(writer, "helixis portscan checkpoint");
+        }
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param resumeAt
+     *            for an output file, the length to cut it to and continue from, or
+     *            -1 to start it empty
+     */
+    private Writer openOutput(long resumeAt) throws IOException {
+        if (outputFile == null) {
+            return new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    // flush but leave System.out open
+                    flush();
+                }
+            };
+        }
+        outputChannel = FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // results written after the last checkpoint would otherwise be written again
+        outputChannel.truncate(Math.max(resumeAt, 0));
+        outputChannel.position(Math.max(resumeAt, 0));
+        var stream = Channels.newOutputStream(outputChannel);
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+    }
+
+    // start index of the i-th of n slices; the first total % n slices get one more
+    private static long shardStart(long total, int i, int n) {
+        return (total / n) * i + Math.min(i, total % n);
+    }
+
+    private InetAddress hostAt(long index) {
+        return (range != null) ? range.addressAt(index / portCount) : singleAddress;
+    }
+
+    private String hostNameAt(long index) {
+        return (range != null) ? range.addressAt(index / portCount).getHostAddress() : host;
+    }
+
+    private int portAt(long index) {
+        return startPort + (int) (index % portCount);
+    }
+
+    private String describe(long index) {
+        if (index >= (long) portCount * (range != null ? range.size() : 1)) {
+            return "end";
+        }
+        return hostNameAt(index) + ":" + portAt(index);
+    }
 }
@@ -0,0 +1,446 @@
+package sh.minty.helixis.commands;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+
+/**
+ * Parses date strings to epoch seconds, reading the common fixed layouts
+ * directly from the text and leaving everything else to a
+ * {@link DateTimeFormatter}.
+ *
+ * <p>
+ * The fast path recognises {@code yyyy-MM-dd HH:mm:ss} and
+ * {@code yyyy-MM-dd'T'HH:mm:ss} (as {@link DateTimeFormatter} or GNU patterns),
+ * GNU {@code %s}, and the named layouts {@code iso}, {@code rfc3339},
+ * {@code epoch} and {@code epoch-millis}. It checks digits and field ranges,
+ * computes the epoch day arithmetically and finds the zone's offset in
+ * {@link ZoneOffsets}, creating no objects. Text it does not accept goes to the
+ * formatter, which either parses it the same way or reports the error, so both
+ * paths give the same results.
+ * </p>
+ */
+final class TimestampParser {
+    // returned by the fast path for text it leaves to the formatter
+    private static final long NO_MATCH = Long.MIN_VALUE;
+
+    private static final long SECONDS_PER_DAY = 86_400;
+    private static final int MAX_OFFSET_HOURS = 18;
+    // "Jan" to "Dec" as three bytes in an int
+    private static final int[] MONTHS = {0x4A616E, 0x466562, 0x4D6172, 0x417072, 0x4D6179, 0x4A756E, 0x4A756C, 0x417567,
+            0x536570, 0x4F6374, 0x4E6F76, 0x446563};
+
+    static final DateTimeFormatter RFC_3339 = new DateTimeFormatterBuilder().parseCaseInsensitive()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE).appendPattern("[' ']['T']")
+            .append(DateTimeFormatter.ISO_LOCAL_TIME).appendOffset("+HH:MM", "Z").toFormatter();
+
+    private enum Layout {
+        /** {@code yyyy-MM-dd HH:mm:ss} with a given separator, in the zone. */
+        LOCAL,
+        /** ISO 8601 date-time with optional seconds, fraction and offset. */
+        ISO,
+        /** RFC 3339: seconds and offset required, 'T', 't' or space. */
+        RFC_3339,
+        /** Seconds since the epoch. */
+        EPOCH_SECONDS,
+        /** Milliseconds since the epoch. */
+        EPOCH_MILLIS
+    }
+
+    private final Layout layout;
+    private final byte separator;
+    /** Null when the layout has no formatter equivalent. */
+    private final DateTimeFormatter fallback;
+    private final String description;
+    private final ZoneOffsets offsets;
+
+    private TimestampParser(Layout layout, char separator, DateTimeFormatter fallback, String description,
+            ZoneId zone) {
+        this.layout = layout;
+        this.separator = (byte) separator;
+        this.fallback = fallback == null ? null : fallback.withZone(zone);
+        this.description = description;
+        this.offsets = ZoneOffsets.of(zone);
+    }
+
+    /**
+     * @param format
+     *            a named layout, or a pattern in {@link DateTimeFormatter} or, with
+     *            {@code gnu}, GNU {@code date} syntax
+     * @param zone
+     *            the zone of date-times that have no offset
+     * @throws IllegalArgumentException
+     *             if the pattern is invalid
+     */
+    static TimestampParser of(String format, boolean gnu, ZoneId zone) {
+        return switch (format) {
+            case "iso" -> new TimestampParser(Layout.ISO, 'T', DateTimeFormatter.ISO_DATE_TIME, format, zone);
+            case "rfc3339" -> new TimestampParser(Layout.RFC_3339, ' ', RFC_3339, format, zone);
+            case "epoch" -> new TimestampParser(Layout.EPOCH_SECONDS, ' ', null, "epoch second", zone);
+            case "epoch-millis" -> new TimestampParser(Layout.EPOCH_MILLIS, ' ', null, "epoch millisecond", zone);
+            default -> {
+                var formatter = DateCommand.formatter(format, gnu);
+                char separator = localSeparator(format, gnu);
+                Layout layout = separator != 0
+                        ? Layout.LOCAL
+                        : gnu && format.equals("%s") ? Layout.EPOCH_SECONDS : null;
+                yield new TimestampParser(layout, separator, formatter, format, zone);
+            }
+        };
+    }
+
+    /**
+     * @return the character between date and time if {@code format} is
+     *         {@code yyyy-MM-dd HH:mm:ss} or {@code yyyy-MM-dd'T'HH:mm:ss} (or a
+     *         GNU equivalent), otherwise 0
+     */
+    static char localSeparator(String format, boolean gnu) {
+        if (gnu ? format.equals("%Y-%m-%d %H:%M:%S") || format.equals("%F %T") : format.equals("yyyy-MM-dd HH:mm:ss")) {
+            return ' ';
+        }
+        if (gnu
+                ? format.equals("%Y-%m-%dT%H:%M:%S") || format.equals("%FT%T")
+                : format.equals("yyyy-MM-dd'T'HH:mm:ss")) {
+            return 'T';
+        }
+        return 0;
+    }
+
+    long epochSecond(String text) {
+        var bytes = text.getBytes(StandardCharsets.UTF_8);
+        return epochSecond(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return the epoch second of {@code text[start..end)}
+     * @throws DateTimeException
+     *             if the text is not a date-time in the layout
+     */
+    long epochSecond(byte[] text, int start, int end) {
+        if (layout != null) {
+            long seconds = parse(text, start, end);
+            if (seconds != NO_MATCH) {
+                return seconds;
+            }
+        }
+        var string = DateColumn.text(text, start, end);
+        if (fallback == null) {
+            throw new DateTimeParseException("Text '" + string + "' is not an " + description, string, 0);
+        }
+        return fallback.parse(string).getLong(ChronoField.INSTANT_SECONDS);
+    }
+
+    /**
+     * @return the epoch second of the date-time at the start of
+     *         {@code text[start..end)}, which may be followed by other text, or
+     *         {@link Long#MIN_VALUE} if the text does not start with one
+     */
+    long leadingEpochSecond(byte[] text, int start, int end) {
+        if (layout != null) {
+            int timestampEnd = switch (layout) {
+                case LOCAL -> Math.min(end, start + 19);
+                case EPOCH_SECONDS, EPOCH_MILLIS -> {
+                    int i = start < end && text[start] == '-' ? start + 1 : start;
+                    while (i < end && text[i] >= '0' && text[i] <= '9') {
+                        i++;
+                    }
+                    yield i;
+                }
+                // up to the first space after the date, which may separate it from the time
+                default -> {
+                    int i = Math.min(end, start + 11);
+                    while (i < end && text[i] != ' ') {
+                        i++;
+                    }
+                    yield i;
+                }
+            };
+            long seconds = parse(text, start, timestampEnd);
+            if (seconds != NO_MATCH || fallback == null) {
+                return seconds;
+            }
+        }
+        // parsing as a Format reports failure without throwing, which matters for lines
+        // without a timestamp
+        var parsed = (TemporalAccessor) fallback.toFormat().parseObject(DateColumn.text(text, start, end),
+                new ParsePosition(0));
+        if (parsed == null || !parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+            return NO_MATCH;
+        }
+        return parsed.getLong(ChronoField.INSTANT_SECONDS);
+    }
+
+    private long parse(byte[] s, int i, int end) {
+        if (layout == Layout.EPOCH_SECONDS) {
+            return integer(s, i, end);
+        }
+        if (layout == Layout.EPOCH_MILLIS) {
+            long millis = integer(s, i, end);
+            return millis == NO_MATCH ? NO_MATCH : Math.floorDiv(millis, 1000);
+        }
+
+        if (end - i < 16) {
+            return NO_MATCH;
+        }
+        long epochDay = date(s, i);
+        if (epochDay == NO_MATCH) {
+            return NO_MATCH;
+        }
+        byte between = s[i + 10];
+        boolean separated = switch (layout) {
+            case LOCAL -> between == separator;
+            case ISO -> between == 'T';
+            default -> between == 'T' || between == 't' || between == ' ';
+        };
+        int hour = twoDigits(s, i + 11);
+        int minute = twoDigits(s, i + 14);
+        if (!separated || hour < 0 || hour > 23 || minute < 0 || minute > 59 || s[i + 13] != ':') {
+            return NO_MATCH;
+        }
+        int p = i + 16;
+        int second = 0;
+        if (p + 3 <= end && s[p] == ':') {
+            second = twoDigits(s, p + 1);
+            if (second < 0 || second > 59) {
+                return NO_MATCH;
+            }
+            p += 3;
+            if (p < end && s[p] == '.' && layout != Layout.LOCAL) {
+                // the fraction does not change the epoch second
+                int fractionStart = ++p;
+                while (p < end && s[p] >= '0' && s[p] <= '9') {
+                    p++;
+                }
+                if (p == fractionStart || p - fractionStart > 9) {
+                    return NO_MATCH;
+                }
+            }
+        } else if (layout != Layout.ISO) {
+            return NO_MATCH;
+        }
+        long local = epochDay * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+
+        if (p == end) {
+            return layout == Layout.RFC_3339 ? NO_MATCH : offsets.toEpochSecond(local);
+        }
+        if (layout == Layout.LOCAL) {
+            return NO_MATCH;
+        }
+        byte c = s[p];
+        if (c == 'Z' || (c == 'z' && layout == Layout.RFC_3339)) {
+            return p + 1 == end ? local : NO_MATCH;
+        }
+        if ((c == '+' || c == '-') && p + 6 == end && s[p + 3] == ':') {
+            int hours = twoDigits(s, p + 1);
+            int minutes = twoDigits(s, p + 4);
+            if (hours < 0 || hours > MAX_OFFSET_HOURS || minutes < 0 || minutes > 59
+                    || (hours == MAX_OFFSET_HOURS && minutes > 0)) {
+                return NO_MATCH;
+            }
+            int offset = hours * 3600 + minutes * 60;
+            return c == '+' ? local - offset : local + offset;
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * Find the first timestamp in a line of a log: an ISO 8601 date-time
+     * ({@code 2024-03-01T12:00:00}, a space instead of {@code T}, an optional
+     * fraction and an optional {@code Z} or {@code +hh:mm} offset) or a Common Log
+     * Format one ({@code 01/Mar/2024:12:00:00 +0000}). Times without an offset are
+     * in the zone of {@code offsets}.
+     *
+     * @return the epoch second of the timestamp, or {@link Long#MIN_VALUE} if the
+     *         line has none
+     */
+    static long find(byte[] s, int start, int end, ZoneOffsets offsets) {
+        for (int i = start; i + 19 <= end; i++) {
+            byte b = s[i];
+            if (b < '0' || b > '9') {
+                continue;
+            }
+            long found = NO_MATCH;
+            if (s[i + 4] == '-') {
+                found = findIso(s, i, end, offsets);
+            } else if (s[i + 2] == '/' && i + 20 <= end) {
+                found = findCommonLog(s, i, end, offsets);
+            }
+            if (found != NO_MATCH) {
+                return found;
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private static long findIso(byte[] s, int i, int end, ZoneOffsets offsets) {
+        long epochDay = date(s, i);
+        if (epochDay == NO_MATCH || (s[i + 10] != 'T' && s[i + 10] != ' ')) {
+            return NO_MATCH;
+        }
+        int time = time(s, i + 11);
+        if (time < 0) {
+            return NO_MATCH;
+        }
+        long local = epochDay * SECONDS_PER_DAY + time;
+        int p = i + 19;
+        if (p < end && (s[p] == '.' || s[p] == ',')) {
+            do {
+                p++;
+            } while (p < end && s[p] >= '0' && s[p] <= '9');
+        }
+        if (p < end && s[p] == 'Z') {
+            return local;
+        }
+        if (p + 5 <= end && (s[p] == '+' || s[p] == '-')) {
+            int hours = twoDigits(s, p + 1);
+            int minutesAt = s[p + 3] == ':' ? p + 4 : p + 3;
+            int minutes = minutesAt + 2 <= end ? twoDigits(s, minutesAt) : -1;
+            if (hours >= 0 && hours <= MAX_OFFSET_HOURS && minutes >= 0 && minutes <= 59) {
+                int offset = hours * 3600 + minutes * 60;
+                return s[p] == '+' ? local - offset : local + offset;
+            }
+        }
+        return offsets.toEpochSecond(local);
+    }
+
+    private static long findCommonLog(byte[] s, int i, int end, ZoneOffsets offsets) {
+        int day = twoDigits(s, i);
+        int month = month(s, i + 3);
+        int century = twoDigits(s, i + 7);
+        int yearOfCentury = twoDigits(s, i + 9);
+        int year = century * 100 + yearOfCentury;
+        if (day < 1 || month < 0 || century < 0 || yearOfCentury < 0 || year == 0 || day > lengthOfMonth(year, month)
+                || s[i + 6] != '/' || s[i + 11] != ':') {
+            return NO_MATCH;
+        }
+        int time = time(s, i + 12);
+        if (time < 0) {
+            return NO_MATCH;
+        }
+        long local = epochDay(year, month, day) * SECONDS_PER_DAY + time;
+        int p = i + 20;
+        if (p + 6 <= end && s[p] == ' ' && (s[p + 1] == '+' || s[p + 1] == '-')) {
+            int hours = twoDigits(s, p + 2);
+            int minutes = twoDigits(s, p + 4);
+            if (hours >= 0 && hours <= MAX_OFFSET_HOURS && minutes >= 0 && minutes <= 59) {
+                int offset = hours * 3600 + minutes * 60;
+                return s[p + 1] == '+' ? local - offset : local + offset;
+            }
+        }
+        return offsets.toEpochSecond(local);
+    }
+
+    /**
+     * @return the seconds into the day of {@code HH:mm:ss} at {@code i}, or -1
+     */
+    private static int time(byte[] s, int i) {
+        int hour = twoDigits(s, i);
+        int minute = twoDigits(s, i + 3);
+        int second = twoDigits(s, i + 6);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || s[i + 2] != ':'
+                || s[i + 5] != ':') {
+            return -1;
+        }
+        return hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * @return the month, from 1, of the English abbreviation at {@code i}, or -1
+     */
+    private static int month(byte[] s, int i) {
+        int key = (s[i] & 0xFF) << 16 | (s[i + 1] & 0xFF) << 8 | (s[i + 2] & 0xFF);
+        for (int month = 0; month < MONTHS.length; month++) {
+            if (MONTHS[month] == key) {
+                return month + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the epoch day of the {@code yyyy-MM-dd} date that is all of
+     *         {@code text[start..end)}, or {@link Long#MIN_VALUE} if the text is
+     *         not one
+     */
+    static long isoEpochDay(byte[] text, int start, int end) {
+        return end - start == 10 ? date(text, start) : NO_MATCH;
+    }
+
+    /**
+     * @return the epoch day of a {@code yyyy-MM-dd} date from year 1 to 9999 at
+     *         {@code i}, or {@link #NO_MATCH}
+     */
+    private static long date(byte[] s, int i) {
+        int century = twoDigits(s, i);
+        int yearOfCentury = twoDigits(s, i + 2);
+        int year = century * 100 + yearOfCentury;
+        int month = twoDigits(s, i + 5);
+        int day = twoDigits(s, i + 8);
+        if (century < 0 || yearOfCentury < 0 || year == 0 || month < 1 || month > 12 || day < 1
+                || day > lengthOfMonth(year, month) || s[i + 4] != '-' || s[i + 7] != '-') {
+            return NO_MATCH;
+        }
+        return epochDay(year, month, day);
+    }
+
+    /**
+     * @return the value of the two decimal digits at {@code at}, or -1
+     */
+    private static int twoDigits(byte[] s, int at) {
+        int tens = s[at] - '0';
+        int ones = s[at + 1] - '0';
+        if ((tens | ones) < 0 || tens > 9 || ones > 9) {
+            return -1;
+        }
+        return tens * 10 + ones;
+    }
+
+    /**
+     * @return the value of an optionally negative integer of up to 18 digits, or
+     *         {@link #NO_MATCH}
+     */
+    private static long integer(byte[] s, int i, int end) {
+        boolean negative = i < end && s[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return NO_MATCH;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = s[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return NO_MATCH;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * @return days since 1970-01-01 of a proleptic Gregorian date, counting years
+     *         from March so that the leap day is the last day of a year
+     */
+    static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+}
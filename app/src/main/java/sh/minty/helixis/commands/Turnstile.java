@@ -0,0 +1,30 @@
+package sh.minty.helixis.commands;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Lets chunk {@code n} proceed only after chunks {@code 0..n-1} have passed.
+ */
+final class Turnstile {
+    private long current;
+    private boolean aborted;
+
+    synchronized void await(long turn) throws InterruptedException {
+        while (current != turn) {
+            if (aborted) {
+                throw new CancellationException("another worker failed");
+            }
+            wait();
+        }
+    }
+
+    synchronized void advance() {
+        current++;
+        notifyAll();
+    }
+
+    synchronized void abort() {
+        aborted = true;
+        notifyAll();
+    }
+}
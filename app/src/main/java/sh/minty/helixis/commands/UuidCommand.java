@@ -1,33 +1,76 @@
 package sh.minty.helixis.commands;
 
-import java.security.SecureRandom;
-import java.util.Random;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
+import java.util.function.LongFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import picocli.CommandLine.ArgGroup;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
 
-@Command(name = "uuid", mixinStandardHelpOptions = true, description = "Generate an UUID")
+@Command(name = "uuid", mixinStandardHelpOptions = true, description = "Generate an UUID", subcommands = {
+        UuidCommand.CheckCommand.class, UuidCommand.DedupCommand.class})
 public class UuidCommand implements Callable<Integer> {
     private static final BiFunction<UUID, String, UUID> UUID_V3_FN = UuidFactory::uuidV3;
     private static final BiFunction<UUID, String, UUID> UUID_V5_FN = UuidFactory::uuidV5;
 
     private static final Logger LOGGER = Logger.getLogger(UuidCommand.class.getName());
-    private Random random = new Random();
+
+    // UUIDs per output chunk; a chunk is formatted into one buffer and written at
+    // once
+    private static final int CHUNK = 1 << 14;
+    private static final int LINE = UuidText.LENGTH + 1;
+    // bytes of names read per chunk in --names-file mode
+    private static final int NAME_CHUNK_BYTES = 1 << 20;
+    // bytes read at a time by check/dedup; a multiple of the 16-byte binary record
+    private static final int SCAN_BUFFER_BYTES = 1 << 20;
+    private static final int BINARY_UUID = 16;
 
     @Option(names = {"-n", "--number"}, description = "generate x uuids (default: 1)")
-    private int amount = 1;
+    private long amount = 1;
 
     @Option(names = {"-V", "--uuid-version"}, description = "uuid version (default: 4)")
     private int version = 4;
 
-    @Option(names = {"-s", "--secure"}, description = "use secure random (default: false)")
+    @Option(names = {"-s",
+            "--secure"}, description = "kept for compatibility; v4 uuids always come from the ChaCha20 generator seeded from SecureRandom")
     private boolean useSecureRandom = false;
 
+    @Mixin
+    private RandomSource.Options randomOptions = new RandomSource.Options();
+
+    @Option(names = {"-o", "--output"}, description = "write uuids to this file instead of stdout")
+    private Path outputFile;
+
+    @Option(names = {"-p", "--parallel"}, description = "number of generator threads (default: 1)")
+    private int threads = 1;
+
+    @Option(names = {
+            "--ordered"}, description = "with --parallel, write uuids in generation order, so v6/v7 output stays sorted (default: false)")
+    private boolean ordered = false;
+
     @ArgGroup(exclusive = false, multiplicity = "0..1")
     Version2Options version2Options;
 
@@ -47,32 +90,76 @@ public class UuidCommand implements Callable<Integer> {
         @Option(names = {"-ns", "--namespace"}, description = "namespace for UUIDv3/v5", required = true)
         UUID namespace;
 
-        @Option(names = {"-N", "--name"}, description = "name for UUIDv3/v5", required = true)
+        @Option(names = {"-N", "--name"}, description = "name for UUIDv3/v5")
         String name;
+
+        @Option(names = {
+                "--names-file"}, description = "derive one UUIDv3/v5 per line of this file ('-' for stdin), in input order")
+        String namesFile;
+
+        @Option(names = {
+                "--echo-names"}, description = "with --names-file, print each uuid followed by a tab and its name")
+        boolean echoNames;
+    }
+
+    /**
+     * Produces successive UUIDs into {@code bits[0]} (most significant) and
+     * {@code bits[1]} (least significant). Instances are made per chunk and
+     * confined to one thread.
+     */
+    @FunctionalInterface
+    private interface UuidSource {
+        void next(long[] bits);
     }
 
     @Override
     public Integer call() {
-        UUID uuid;
-
-        if (useSecureRandom) {
-            random = new SecureRandom();
+        if (amount < 0 || threads < 1) {
+            LOGGER.log(Level.SEVERE, "--number must not be negative and --parallel must be at least 1.");
+            return 1;
         }
 
-        var data = new byte[16];
+        randomOptions.apply();
+
+        // called with the chunk number at the start of each chunk, on the thread
+        // generating it
+        LongFunction<UuidSource> sources;
+        // time-based versions must also be generated in output order with --ordered
+        boolean timeBased = false;
         switch (version) {
-            case 1 -> uuid = UuidFactory.uuidV1();
+            case 1 -> {
+                timeBased = true;
+                sources = chunk -> UuidFactory::nextV1;
+            }
             case 2 -> {
                 if (version2Options == null) {
                     LOGGER.log(Level.SEVERE, "For UUIDv2, --local and --domain are required.");
                     return 1;
                 }
-                uuid = UuidFactory.uuidV2(version2Options.localIdentifier, version2Options.localDomain);
+                if (amount > 1) {
+                    // only time_mid and time_hi remain, which change every 7 minutes or so
+                    LOGGER.log(Level.SEVERE, "UUIDv2 replaces the low timestamp bits with --local, so -n would only "
+                            + "repeat the same value.");
+                    return 1;
+                }
+                int localIdentifier = version2Options.localIdentifier;
+                int localDomain = version2Options.localDomain;
+                timeBased = true;
+                sources = chunk -> bits -> copy(UuidFactory.uuidV2(localIdentifier, localDomain), bits);
             }
             case 3, 5 -> {
                 if (version3Or5Options == null || version3Or5Options.namespace == null
-                        || version3Or5Options.name == null) {
-                    LOGGER.log(Level.SEVERE, "For UUIDv" + version + ", --namespace and --name are required.");
+                        || (version3Or5Options.name == null) == (version3Or5Options.namesFile == null)) {
+                    LOGGER.log(Level.SEVERE,
+                            "For UUIDv" + version + ", --namespace and one of --name or --names-file are required.");
+                    return 1;
+                }
+                if (version3Or5Options.namesFile != null) {
+                    return deriveFromNames();
+                }
+                if (amount > 1) {
+                    LOGGER.log(Level.SEVERE, "UUIDv" + version + " is derived from the name, so -n would only "
+                            + "repeat the same value.");
                     return 1;
                 }
                 // choose function by mapping: compute index 0 for v3, 1 for v5 without
@@ -80,38 +167,547 @@ public class UuidCommand implements Callable<Integer> {
                 // version 3 -> 0, version 5 -> 1
                 int idx = (version - 3) / 2;
                 var fn = (idx == 0) ? UUID_V3_FN : UUID_V5_FN;
-                uuid = fn.apply(version3Or5Options.namespace, version3Or5Options.name);
+                var uuid = fn.apply(version3Or5Options.namespace, version3Or5Options.name);
+                sources = chunk -> bits -> copy(uuid, bits);
             }
             case 4 -> {
-                random.nextBytes(data);
+                sources = chunk -> {
+                    // per chunk rather than per thread, so seeded runs do not depend on scheduling
+                    var random = RandomSource.forChunk(chunk);
+                    return bits -> UuidFactory.nextV4(random, bits);
+                };
+            }
+            case 6 -> {
+                timeBased = true;
+                sources = chunk -> UuidFactory::nextV6;
+            }
+            case 7 -> {
+                timeBased = true;
+                sources = chunk -> UuidFactory::nextV7;
+            }
+            default -> {
+                LOGGER.log(Level.SEVERE, "Invalid UUID version: " + version);
+                return 1;
+            }
+        }
 
-                // set version 4 bits
-                data[6] &= 0x0f; // clear version
-                data[6] |= 0x40; // set version 4
-                data[8] &= 0x3f; // clear variant
-                data[8] |= 0x80; // set IETF variant
+        try {
+            if (outputFile != null) {
+                try (var out = Files.newOutputStream(outputFile)) {
+                    generate(out, sources, ordered && timeBased);
+                }
+            } else {
+                // write straight to the descriptor; System.out adds a lock and a small buffer
+                System.out.flush();
+                generate(new FileOutputStream(FileDescriptor.out), sources, ordered && timeBased);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error writing uuids: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.SEVERE, "UUID generation interrupted.");
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        return 0;
+    }
 
-                long mostSigBits = 0;
-                for (int i = 0; i < 8; i++) {
-                    mostSigBits = (mostSigBits << 8) | (data[i] & 0xff);
+    private void generate(OutputStream out, LongFunction<UuidSource> sources, boolean serialGeneration)
+            throws IOException, InterruptedException {
+        if (threads == 1 || amount <= CHUNK) {
+            var bits = new long[2];
+            var buffer = new byte[(int) Math.min(CHUNK, amount) * LINE];
+            for (long done = 0; done < amount;) {
+                var source = sources.apply(done / CHUNK);
+                int count = (int) Math.min(CHUNK, amount - done);
+                int len = 0;
+                for (int i = 0; i < count; i++) {
+                    source.next(bits);
+                    len = appendLine(bits[0], bits[1], buffer, len);
                 }
+                out.write(buffer, 0, len);
+                done += count;
+            }
+            out.flush();
+            return;
+        }
+
+        long chunks = (amount + CHUNK - 1) / CHUNK;
+        var nextChunk = new AtomicLong();
+        var generationTurn = new Turnstile();
+        var writeTurn = new Turnstile();
+        // seeded output must not depend on which worker finishes first
+        boolean inOrder = ordered || RandomSource.isSeeded();
+
+        List<Callable<Void>> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.add(() -> {
+                var bits = new long[2];
+                var buffer = new byte[CHUNK * LINE];
+                var values = serialGeneration ? new long[CHUNK * 2] : null;
 
-                long leastSigBits = 0;
-                for (int i = 8; i < 16; i++) {
-                    leastSigBits = (leastSigBits << 8) | (data[i] & 0xff);
+                long chunk;
+                try {
+                    while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                        var source = sources.apply(chunk);
+                        int count = (int) Math.min(CHUNK, amount - chunk * CHUNK);
+                        int len = 0;
+                        if (serialGeneration) {
+                            // take timestamps in chunk order, but format outside the turn
+                            generationTurn.await(chunk);
+                            try {
+                                for (int i = 0; i < count; i++) {
+                                    source.next(bits);
+                                    values[i * 2] = bits[0];
+                                    values[i * 2 + 1] = bits[1];
+                                }
+                            } finally {
+                                generationTurn.advance();
+                            }
+                            for (int i = 0; i < count; i++) {
+                                len = appendLine(values[i * 2], values[i * 2 + 1], buffer, len);
+                            }
+                        } else {
+                            for (int i = 0; i < count; i++) {
+                                source.next(bits);
+                                len = appendLine(bits[0], bits[1], buffer, len);
+                            }
+                        }
+
+                        if (inOrder) {
+                            writeTurn.await(chunk);
+                            try {
+                                out.write(buffer, 0, len);
+                            } finally {
+                                writeTurn.advance();
+                            }
+                        } else {
+                            synchronized (out) {
+                                out.write(buffer, 0, len);
+                            }
+                        }
+                    }
+                } catch (RuntimeException | IOException e) {
+                    // release the workers waiting for turns this one will never take
+                    generationTurn.abort();
+                    writeTurn.abort();
+                    throw e;
                 }
+                return null;
+            });
+        }
 
-                uuid = new UUID(mostSigBits, leastSigBits);
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (var worker : workers) {
+                results.add(executor.submit(worker));
             }
-            default -> {
-                LOGGER.log(Level.SEVERE, "Invalid UUID version: " + version);
-                return 1;
+            Throwable failure = null;
+            for (var result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    // prefer the worker that failed over those it cancelled
+                    if (failure == null || failure instanceof CancellationException) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            if (failure instanceof IOException io) {
+                throw io;
             }
+            if (failure != null) {
+                throw new IOException(failure);
+            }
+        } finally {
+            executor.shutdownNow();
         }
+        out.flush();
+    }
 
-        for (int i = 0; i < amount; i++) {
-            LOGGER.log(Level.INFO, uuid.toString());
+    private int deriveFromNames() {
+        var namespace = version3Or5Options.namespace;
+        String namesFile = version3Or5Options.namesFile;
+        try (var in = namesFile.equals("-") ? System.in : Files.newInputStream(Path.of(namesFile))) {
+            if (outputFile != null) {
+                try (var out = Files.newOutputStream(outputFile)) {
+                    deriveFromNames(in, out, namespace);
+                }
+            } else {
+                System.out.flush();
+                deriveFromNames(in, new FileOutputStream(FileDescriptor.out), namespace);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error deriving uuids: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.SEVERE, "UUID generation interrupted.");
+            Thread.currentThread().interrupt();
+            return 1;
         }
         return 0;
     }
+
+    /**
+     * Hash every line of {@code in} as a name. The input is cut into chunks at line
+     * boundaries on this thread; chunks are hashed in parallel and written back in
+     * input order, so output line {@code i} belongs to input line {@code i}.
+     */
+    private void deriveFromNames(InputStream in, OutputStream out, UUID namespace)
+            throws IOException, InterruptedException {
+        var generators = ThreadLocal.withInitial(() -> new UuidFactory.NameBasedGenerator(namespace, version));
+        var writeTurn = new Turnstile();
+        // enough chunks in flight to keep every thread busy while one waits for its
+        // write turn
+        var inFlight = new Semaphore(threads * 2);
+        var executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            var buffer = new byte[NAME_CHUNK_BYTES];
+            int filled = 0;
+            long chunk = 0;
+            boolean eof = false;
+            while (!eof) {
+                int read = in.read(buffer, filled, buffer.length - filled);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    filled += read;
+                    if (filled < buffer.length) {
+                        continue;
+                    }
+                }
+
+                // hand off everything up to the last newline; at EOF, everything that is left
+                int cut = eof ? filled : lastNewline(buffer, filled) + 1;
+                if (cut == 0) {
+                    if (!eof) {
+                        // a single line longer than the buffer
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                    continue;
+                }
+
+                var data = Arrays.copyOf(buffer, cut);
+                long turn = chunk++;
+                inFlight.acquire();
+                pending.add(executor.submit(() -> {
+                    try {
+                        var lines = hashLines(generators.get(), data);
+                        writeTurn.await(turn);
+                        try {
+                            out.write(lines);
+                        } finally {
+                            writeTurn.advance();
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                    return null;
+                }));
+                System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+                filled -= cut;
+
+                checkFailures(pending, writeTurn);
+                pending.removeIf(Future::isDone);
+            }
+
+            for (var future : pending) {
+                await(future, writeTurn);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        out.flush();
+    }
+
+    private byte[] hashLines(UuidFactory.NameBasedGenerator generator, byte[] data) {
+        boolean echo = version3Or5Options.echoNames;
+        int lines = 0;
+        for (byte b : data) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+        if (data.length > 0 && data[data.length - 1] != '\n') {
+            lines++; // last line of the input without a trailing newline
+        }
+
+        var result = new byte[lines * LINE + (echo ? data.length + lines : 0)];
+        var bits = new long[2];
+        int pos = 0;
+        int start = 0;
+        while (start < data.length) {
+            int end = start;
+            while (end < data.length && data[end] != '\n') {
+                end++;
+            }
+            int nameEnd = (end > start && data[end - 1] == '\r') ? end - 1 : end;
+
+            generator.next(data, start, nameEnd - start, bits);
+            pos = UuidText.format(bits[0], bits[1], result, pos);
+            if (echo) {
+                result[pos++] = '\t';
+                System.arraycopy(data, start, result, pos, nameEnd - start);
+                pos += nameEnd - start;
+            }
+            result[pos++] = '\n';
+            start = end + 1;
+        }
+        return (pos == result.length) ? result : Arrays.copyOf(result, pos);
+    }
+
+    private static int lastNewline(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void checkFailures(List<Future<?>> pending, Turnstile turnstile)
+            throws IOException, InterruptedException {
+        for (var future : pending) {
+            if (future.isDone()) {
+                await(future, turnstile);
+            }
+        }
+    }
+
+    private static void await(Future<?> future, Turnstile turnstile) throws IOException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            // release anyone waiting for a turn the failed chunk will never take
+            turnstile.abort();
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static int appendLine(long msb, long lsb, byte[] buffer, int off) {
+        off = UuidText.format(msb, lsb, buffer, off);
+        buffer[off] = '\n';
+        return off + 1;
+    }
+
+    private static void copy(UUID uuid, long[] bits) {
+        bits[0] = uuid.getMostSignificantBits();
+        bits[1] = uuid.getLeastSignificantBits();
+    }
+
+    /**
+     * Receives every UUID read by a scan, with {@code added} telling whether it was
+     * seen for the first time.
+     */
+    @FunctionalInterface
+    private interface ScanSink {
+        void accept(long msb, long lsb, boolean added) throws IOException;
+    }
+
+    /**
+     * Streams UUIDs from files or stdin into an {@link OffHeapUuidSet}, so that
+     * lists far larger than the heap can be checked without creating a {@link UUID}
+     * or {@link String} per value.
+     */
+    abstract static class UuidScanCommand implements Callable<Integer> {
+        @Parameters(arity = "0..*", paramLabel = "FILE", description = "files to read, one uuid per line ('-' or none for stdin)")
+        List<String> files = new ArrayList<>();
+
+        @Option(names = {"--binary-input"}, description = "input is raw 16-byte big-endian uuids instead of text lines")
+        boolean binaryInput = false;
+
+        @Option(names = {
+                "--expected"}, description = "number of distinct uuids to size the table for; it grows past this, at the cost of a rehash (default: 16777216)")
+        long expected = 1 << 24;
+
+        long total;
+        long invalid;
+
+        @Override
+        public Integer call() {
+            if (expected < 1) {
+                LOGGER.log(Level.SEVERE, "--expected must be at least 1.");
+                return 1;
+            }
+            try {
+                return run(new OffHeapUuidSet(expected));
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Error reading uuids: " + e.getMessage());
+                return 1;
+            } catch (OutOfMemoryError e) {
+                // the table lives in direct memory, which is capped separately from the heap
+                LOGGER.log(Level.SEVERE, "Not enough memory for the uuid table (" + e.getMessage()
+                        + "); raise -XX:MaxDirectMemorySize or lower --expected.");
+                return 1;
+            }
+        }
+
+        abstract int run(OffHeapUuidSet set) throws IOException;
+
+        void scan(OffHeapUuidSet set, ScanSink sink) throws IOException {
+            var inputs = files.isEmpty() ? List.of("-") : files;
+            for (String file : inputs) {
+                try (var in = file.equals("-") ? System.in : Files.newInputStream(Path.of(file))) {
+                    if (binaryInput) {
+                        scanBinary(in, set, sink, file);
+                    } else {
+                        scanText(in, set, sink);
+                    }
+                }
+            }
+            if (invalid > 0) {
+                LOGGER.log(Level.WARNING, "Skipped " + invalid + " lines that are not uuids.");
+            }
+        }
+
+        private void scanText(InputStream in, OffHeapUuidSet set, ScanSink sink) throws IOException {
+            var buffer = new byte[SCAN_BUFFER_BYTES];
+            var bits = new long[2];
+            int filled = 0;
+            // inside a line that did not fit the buffer; dropped up to its newline
+            boolean overlong = false;
+            int read;
+            while ((read = in.read(buffer, filled, buffer.length - filled)) >= 0) {
+                filled += read;
+                int start = 0;
+                for (int i = 0; i < filled; i++) {
+                    if (buffer[i] == '\n') {
+                        if (overlong) {
+                            overlong = false;
+                        } else {
+                            scanLine(buffer, start, i, bits, set, sink);
+                        }
+                        start = i + 1;
+                    }
+                }
+                if (start == 0 && filled == buffer.length) {
+                    if (!overlong) {
+                        invalid++;
+                        overlong = true;
+                    }
+                    filled = 0;
+                } else {
+                    System.arraycopy(buffer, start, buffer, 0, filled - start);
+                    filled -= start;
+                }
+            }
+            if (filled > 0 && !overlong) {
+                scanLine(buffer, 0, filled, bits, set, sink);
+            }
+        }
+
+        private void scanLine(byte[] buffer, int start, int end, long[] bits, OffHeapUuidSet set, ScanSink sink)
+                throws IOException {
+            while (start < end && buffer[start] <= ' ') {
+                start++;
+            }
+            while (end > start && buffer[end - 1] <= ' ') {
+                end--;
+            }
+            if (start == end) {
+                return;
+            }
+            if (!UuidText.parse(buffer, start, end - start, bits)) {
+                invalid++;
+                return;
+            }
+            total++;
+            sink.accept(bits[0], bits[1], set.add(bits[0], bits[1]));
+        }
+
+        private void scanBinary(InputStream in, OffHeapUuidSet set, ScanSink sink, String file) throws IOException {
+            var buffer = new byte[SCAN_BUFFER_BYTES];
+            var view = ByteBuffer.wrap(buffer);
+            int filled = 0;
+            int read;
+            while ((read = in.read(buffer, filled, buffer.length - filled)) >= 0) {
+                filled += read;
+                int whole = filled - filled % BINARY_UUID;
+                for (int i = 0; i < whole; i += BINARY_UUID) {
+                    long msb = view.getLong(i);
+                    long lsb = view.getLong(i + 8);
+                    total++;
+                    sink.accept(msb, lsb, set.add(msb, lsb));
+                }
+                System.arraycopy(buffer, whole, buffer, 0, filled - whole);
+                filled -= whole;
+            }
+            if (filled > 0) {
+                throw new IOException(file + " ends with a partial record of " + filled + " bytes");
+            }
+        }
+    }
+
+    @Command(name = "check", mixinStandardHelpOptions = true, description = "Report duplicate uuids in large lists. "
+            + "Prints every repeated occurrence and exits with status 1 if any was found.")
+    static class CheckCommand extends UuidScanCommand {
+        @Option(names = {"-q", "--quiet"}, description = "only print the summary, not the duplicates")
+        boolean quiet = false;
+
+        @Override
+        int run(OffHeapUuidSet set) throws IOException {
+            var out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16);
+            var line = new byte[LINE];
+            long[] duplicates = {0};
+            System.out.flush();
+            scan(set, (msb, lsb, added) -> {
+                if (!added) {
+                    duplicates[0]++;
+                    if (!quiet) {
+                        out.write(line, 0, appendLine(msb, lsb, line, 0));
+                    }
+                }
+            });
+            out.flush();
+
+            System.err.println(total + " uuids, " + set.size() + " distinct, " + duplicates[0] + " duplicates");
+            return duplicates[0] == 0 ? 0 : 1;
+        }
+    }
+
+    @Command(name = "dedup", mixinStandardHelpOptions = true, description = "Remove duplicate uuids from large lists, "
+            + "keeping the first occurrence of each in input order.")
+    static class DedupCommand extends UuidScanCommand {
+        @Option(names = {"-o", "--output"}, description = "write unique uuids to this file instead of stdout")
+        Path outputFile;
+
+        @Option(names = {"--binary-output"}, description = "write raw 16-byte big-endian uuids instead of text lines")
+        boolean binaryOutput = false;
+
+        @Override
+        int run(OffHeapUuidSet set) throws IOException {
+            if (outputFile != null) {
+                try (var out = new BufferedOutputStream(Files.newOutputStream(outputFile), 1 << 16)) {
+                    dedup(set, out);
+                }
+            } else {
+                System.out.flush();
+                var out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16);
+                dedup(set, out);
+                out.flush();
+            }
+            return 0;
+        }
+
+        private void dedup(OffHeapUuidSet set, OutputStream out) throws IOException {
+            var record = new byte[LINE];
+            var view = ByteBuffer.wrap(record);
+            scan(set, (msb, lsb, added) -> {
+                if (!added) {
+                    return;
+                }
+                if (binaryOutput) {
+                    view.putLong(0, msb).putLong(8, lsb);
+                    out.write(record, 0, BINARY_UUID);
+                } else {
+                    out.write(record, 0, appendLine(msb, lsb, record, 0));
+                }
+            });
+        }
+    }
 }
@@ -5,35 +5,59 @@ import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Random;
 import java.util.UUID;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Utilities for RFC 4122 UUID versions 1, 2, 3 and 5.
+ * Utilities for RFC 4122 UUID versions 1, 2, 3, 4 and 5, and the time-ordered
+ * RFC 9562 versions 6 and 7.
  *
  * <p>
  * Note on v2: Java doesn't provide a cross-platform UID/GID API. This
  * implementation requires you to provide the 32-bit local identifier and an
  * 8-bit domain (0-255).
  * </p>
+ *
+ * <p>
+ * Time-based versions (1, 2, 6 and 7) are strictly increasing across all
+ * threads of the process: each keeps its last timestamp in an
+ * {@link AtomicLong} and advances it with a compare-and-set, so concurrent
+ * callers never block each other. Versions 1, 2 and 6 stall callers instead of
+ * letting that timestamp run more than a millisecond ahead of the clock.
+ * </p>
  */
 public final class UuidFactory {
     private static final long UUID_EPOCH_OFFSET = 0x01B21DD213814000L; // 122192928000000000L
     private static final SecureRandom secureRandom = new SecureRandom();
 
-    // State for v1/v2 generation:
-    private static long lastTimestamp;
-    private static int clockSequence; // 14-bit
-    private static final Object lock = new Object();
+    // State for v1/v2 generation: last 60-bit Gregorian timestamp handed out, in
+    // 100ns ticks. Timestamps never repeat within the process, so the clock
+    // sequence only has to tell this process apart from earlier runs on the node.
+    private static final AtomicLong lastV1Timestamp = new AtomicLong();
+    // how far past the clock a burst may push a v1, v2 or v6 timestamp: 1 ms
+    static final long MAX_RUN_AHEAD_TICKS = 10_000;
+    private static final int clockSequence = secureRandom.nextInt() & 0x3FFF; // 14-bit
     private static final long nodeIdentifier = createNodeIdentifier();
 
-    static {
-        // initialize clockSequence randomly 14-bit
-        clockSequence = secureRandom.nextInt() & 0x3FFF;
-    }
+    // MessageDigest.getInstance is a provider lookup; keep a digest per thread
+    private static final ThreadLocal<MessageDigest> MD5_DIGEST = ThreadLocal.withInitial(() -> newDigest("MD5"));
+    private static final ThreadLocal<MessageDigest> SHA1_DIGEST = ThreadLocal.withInitial(() -> newDigest("SHA-1"));
+
+    // State for v6: last 60-bit Gregorian timestamp handed out, in 100ns ticks.
+    private static final AtomicLong lastV6Timestamp = new AtomicLong();
+
+    // State for v7: unix milliseconds in the high bits, a 20-bit counter below.
+    // Counter overflow carries into the millisecond; the value simply increments.
+    private static final int V7_COUNTER_BITS = 20;
+    private static final long V7_MAX_MILLIS = 1L << (63 - V7_COUNTER_BITS); // year 2248
+    private static final AtomicLong lastV7State = new AtomicLong();
 
     private UuidFactory() {
     }
@@ -44,7 +68,9 @@ public final class UuidFactory {
      * @return java.util.UUID the generated UUID from the current time
      */
     public static UUID uuidV1() {
-        return generateV1(null, -1, false);
+        var bits = new long[2];
+        nextV1(bits);
+        return new UUID(bits[0], bits[1]);
     }
 
     /**
@@ -61,7 +87,7 @@ public final class UuidFactory {
         if (localDomain < 0 || localDomain > 0xFF) {
             throw new IllegalArgumentException("localDomain must be 0..255");
         }
-        return generateV1(localIdentifier, localDomain, true);
+        return generateV2(localIdentifier, localDomain);
     }
 
     /**
@@ -73,7 +99,7 @@ public final class UuidFactory {
      *            name string (UTF-8)
      */
     public static UUID uuidV3(UUID namespace, String name) {
-        return nameBased(namespace, name, "MD5", 3);
+        return nameBased(namespace, name, 3);
     }
 
     /**
@@ -85,51 +111,164 @@ public final class UuidFactory {
      *            name string (UTF-8)
      */
     public static UUID uuidV5(UUID namespace, String name) {
-        return nameBased(namespace, name, "SHA-1", 5);
+        return nameBased(namespace, name, 5);
     }
 
-    private static UUID generateV1(Integer maybeLocalIdentifier, int localDomain, boolean isV2) {
-        long timestamp100ns;
-        int clkSeq;
+    /**
+     * Generate a version-6 (reordered time-based) UUID. Its bytes, and therefore
+     * its text form, sort in creation order.
+     *
+     * @return java.util.UUID
+     */
+    public static UUID uuidV6() {
+        var bits = new long[2];
+        nextV6(bits);
+        return new UUID(bits[0], bits[1]);
+    }
 
-        synchronized (lock) {
-            long nowMillis = System.currentTimeMillis();
-            // try to add nanosecond precision using nanoTime, not perfect but helps
-            // uniqueness within
-            // same ms
-            long nanosPart = (System.nanoTime() % 10000L); // remainder in nanoseconds - best-effort
-            timestamp100ns = nowMillis * 10000L + nanosPart + UUID_EPOCH_OFFSET;
+    /**
+     * Generate a version-7 (Unix epoch time-based) UUID. Its bytes, and therefore
+     * its text form, sort in creation order.
+     *
+     * @return java.util.UUID
+     */
+    public static UUID uuidV7() {
+        var bits = new long[2];
+        nextV7(bits);
+        return new UUID(bits[0], bits[1]);
+    }
 
-            if (timestamp100ns <= lastTimestamp) {
-                // clock moved backwards or same timestamp - increment clockSequence
-                clockSequence = (clockSequence + 1) & 0x3FFF; // keep 14 bits
-            }
-            lastTimestamp = timestamp100ns;
-            clkSeq = clockSequence;
-        }
+    /**
+     * Allocation-free form of {@link #uuidV6()}.
+     *
+     * @param out
+     *            receives the most significant bits at index 0 and the least
+     *            significant bits at index 1
+     */
+    static void nextV6(long[] out) {
+        long timestamp = nextTimestamp(lastV6Timestamp);
 
-        // split timestamp into fields
-        long timeLow = timestamp100ns & 0xFFFFFFFFL;
-        long timeMid = (timestamp100ns >>> 32) & 0xFFFFL;
-        long timeHi = (timestamp100ns >>> 48) & 0x0FFFL; // 12 bits for time_hi
-        // apply version (1)
-        timeHi = timeHi | (1 << 12); // version 1 (or we'll overwrite for v2 later if needed)
-
-        // If v2: replace time_low with localIdentifier (32-bit) and set version to 2
-        if (isV2 && maybeLocalIdentifier != null) {
-            timeLow = ((long) maybeLocalIdentifier) & 0xFFFFFFFFL;
-            timeHi = (timeHi & 0x0FFF) | (2 << 12); // set version to 2
+        // time_high (32) | time_mid (16) | version (4) | time_low (12)
+        out[0] = ((timestamp >>> 12) << 16) | 0x6000L | (timestamp & 0x0FFFL);
+        // RFC 9562 recommends random clock_seq and node for v6; the timestamp orders
+        out[1] = (RandomSource.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+    }
+
+    /**
+     * Allocation-free form of {@link #uuidV7()}.
+     *
+     * <p>
+     * Uses RFC 9562 monotonic method 1: a 20-bit counter spread over {@code rand_a}
+     * and the top of {@code rand_b}, seeded randomly in its lower half each
+     * millisecond, leaving room for at least 2^19 UUIDs per millisecond before the
+     * timestamp runs ahead of the clock.
+     * </p>
+     *
+     * @param out
+     *            receives the most significant bits at index 0 and the least
+     *            significant bits at index 1
+     */
+    static void nextV7(long[] out) {
+        var random = RandomSource.current();
+        long millis = System.currentTimeMillis();
+        if (millis >= V7_MAX_MILLIS) {
+            throw new IllegalStateException("Clock is beyond the range supported for UUIDv7");
         }
 
-        // clock seq: 14 bits. For v2, clock_seq_low low byte is replaced by domain
-        // (8-bit)
-        int clockSeqLow = clkSeq & 0xFF;
-        int clockSeqHi = (clkSeq >>> 8) & 0x3F; // 6 bits (top 2 bits used for variant later)
+        long prev;
+        long state;
+        do {
+            prev = lastV7State.get();
+            if (millis > (prev >>> V7_COUNTER_BITS)) {
+                state = (millis << V7_COUNTER_BITS) | random.nextInt(1 << (V7_COUNTER_BITS - 1));
+            } else {
+                state = prev + 1;
+            }
+        } while (!lastV7State.compareAndSet(prev, state));
+
+        long unixMillis = state >>> V7_COUNTER_BITS;
+        int counter = (int) (state & ((1 << V7_COUNTER_BITS) - 1));
+        // unix_ts_ms (48) | version (4) | rand_a (12) = counter high bits
+        out[0] = (unixMillis << 16) | 0x7000L | (counter >>> 8);
+        // variant (2) | counter low 8 bits | 54 random bits
+        out[1] = 0x8000000000000000L | ((long) (counter & 0xFF) << 54) | (random.nextLong() & 0x003FFFFFFFFFFFFFL);
+    }
+
+    /**
+     * Generate a version-4 (random) UUID without allocating.
+     *
+     * @param random
+     *            source of the 122 random bits
+     * @param out
+     *            receives the most significant bits at index 0 and the least
+     *            significant bits at index 1
+     */
+    static void nextV4(Random random, long[] out) {
+        out[0] = (random.nextLong() & ~0xF000L) | 0x4000L; // version 4
+        out[1] = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L; // IETF variant
+    }
 
-        if (isV2) {
-            // replace low byte with domain
-            clockSeqLow = localDomain & 0xFF;
+    /**
+     * Allocation-free form of {@link #uuidV1()}.
+     *
+     * @param out
+     *            receives the most significant bits at index 0 and the least
+     *            significant bits at index 1
+     */
+    static void nextV1(long[] out) {
+        long timestamp = nextTimestamp(lastV1Timestamp);
+        // time_low (32) | time_mid (16) | version (4) | time_hi (12)
+        out[0] = (timestamp << 32) | ((timestamp >>> 16) & 0xFFFF0000L) | 0x1000L | ((timestamp >>> 48) & 0x0FFFL);
+        // variant (2) | clock_seq (14) | node (48)
+        out[1] = 0x8000000000000000L | ((long) clockSequence << 48) | nodeIdentifier;
+    }
+
+    /**
+     * Reserve the next 60-bit Gregorian timestamp from {@code last}: the current
+     * time in 100ns ticks, or one tick past the previous value if the clock has not
+     * advanced or has stepped back. Once that would put the timestamp more than
+     * {@link #MAX_RUN_AHEAD_TICKS} ahead of the clock, the caller stalls until the
+     * clock catches up (RFC 4122 section 4.2.1.2).
+     */
+    private static long nextTimestamp(AtomicLong last) {
+        long ticks = currentTicks();
+        while (true) {
+            long prev = last.get();
+            long timestamp = Math.max(ticks, prev + 1);
+            long excess = timestamp - ticks - MAX_RUN_AHEAD_TICKS;
+            if (excess > 0) {
+                // a burst only ever needs a few ticks; longer waits follow a clock step
+                if (excess > MAX_RUN_AHEAD_TICKS) {
+                    LockSupport.parkNanos(excess * 100);
+                } else {
+                    Thread.onSpinWait();
+                }
+                ticks = currentTicks();
+            } else if (last.compareAndSet(prev, timestamp)) {
+                return timestamp;
+            }
         }
+    }
+
+    /**
+     * @return the current time as a 60-bit Gregorian timestamp in 100ns ticks
+     */
+    static long currentTicks() {
+        var now = Instant.now();
+        return now.getEpochSecond() * 10_000_000L + now.getNano() / 100 + UUID_EPOCH_OFFSET;
+    }
+
+    private static UUID generateV2(int localIdentifier, int localDomain) {
+        long timestamp100ns = nextTimestamp(lastV1Timestamp);
+
+        // time_low is replaced by the local identifier; time_mid and time_hi remain
+        long timeLow = ((long) localIdentifier) & 0xFFFFFFFFL;
+        long timeMid = (timestamp100ns >>> 32) & 0xFFFFL;
+        long timeHi = ((timestamp100ns >>> 48) & 0x0FFFL) | (2 << 12); // 12 bits for time_hi, version 2
+
+        // clock seq: 14 bits, with the low byte replaced by the domain (8-bit)
+        int clockSeqLow = localDomain & 0xFF;
+        int clockSeqHi = (clockSequence >>> 8) & 0x3F; // 6 bits (top 2 bits used for variant later)
 
         // Build MSB and LSB
         long msb = 0L;
@@ -148,26 +287,83 @@ public final class UuidFactory {
         return new UUID(msb, lsb);
     }
 
-    private static UUID nameBased(UUID namespace, String name, String algorithm, int version) {
+    private static UUID nameBased(UUID namespace, String name, int version) {
+        var md = (version == 3) ? MD5_DIGEST.get() : SHA1_DIGEST.get();
+        // namespace as bytes (network byte order)
+        md.update(uuidToBytes(namespace));
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        md.update(nameBytes);
+        byte[] hash = md.digest(); // also resets the digest for the next call on this thread
+
+        return new UUID(withVersion(bytesToLong(hash, 0), version), withVariant(bytesToLong(hash, 8)));
+    }
+
+    /**
+     * Derives many name-based UUIDs in a single namespace. The digest and the
+     * serialized namespace are set up once and reused for every name, and names are
+     * hashed straight from a byte buffer. Instances are not thread-safe; give each
+     * thread its own.
+     */
+    static final class NameBasedGenerator {
+        private final MessageDigest digest;
+        private final byte[] namespaceBytes;
+        private final byte[] hash;
+        private final int version;
+
+        /**
+         * @param namespace
+         *            namespace UUID
+         * @param version
+         *            3 (MD5) or 5 (SHA-1)
+         */
+        NameBasedGenerator(UUID namespace, int version) {
+            if (version != 3 && version != 5) {
+                throw new IllegalArgumentException("Name-based UUIDs are version 3 or 5, not " + version);
+            }
+            this.digest = newDigest(version == 3 ? "MD5" : "SHA-1");
+            this.namespaceBytes = uuidToBytes(namespace);
+            this.hash = new byte[digest.getDigestLength()];
+            this.version = version;
+        }
+
+        /**
+         * @param name
+         *            buffer holding the UTF-8 encoded name
+         * @param offset
+         *            start of the name in {@code name}
+         * @param length
+         *            length of the name in bytes
+         * @param out
+         *            receives the most significant bits at index 0 and the least
+         *            significant bits at index 1
+         */
+        void next(byte[] name, int offset, int length, long[] out) {
+            // the 16 namespace bytes never fill a 64-byte MD5/SHA-1 block, so feeding them
+            // again costs a copy, not a compression round; nothing is gained by cloning a
+            // "pre-hashed" digest
+            digest.update(namespaceBytes);
+            digest.update(name, offset, length);
+            try {
+                digest.digest(hash, 0, hash.length);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+            out[0] = withVersion(bytesToLong(hash, 0), version);
+            out[1] = withVariant(bytesToLong(hash, 8));
+        }
+    }
+
+    private static long withVersion(long msb, int version) {
+        return (msb & ~0xF000L) | ((long) version << 12);
+    }
+
+    private static long withVariant(long lsb) {
+        return (lsb & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L; // 10xxxxxx
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
         try {
-            var md = MessageDigest.getInstance(algorithm);
-            // namespace as bytes (network byte order)
-            md.update(uuidToBytes(namespace));
-            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
-            md.update(nameBytes);
-            byte[] hash = md.digest();
-
-            byte[] out = new byte[16];
-            System.arraycopy(hash, 0, out, 0, 16); // for SHA-1 (20 bytes) take first 16 bytes
-
-            // set version nibble (byte 6)
-            out[6] = (byte) ((out[6] & 0x0F) | (version << 4));
-            // set variant (byte 8): 10xxxxxx
-            out[8] = (byte) ((out[8] & 0x3F) | 0x80);
-
-            long msb = bytesToLong(out, 0);
-            long lsb = bytesToLong(out, 8);
-            return new UUID(msb, lsb);
+            return MessageDigest.getInstance(algorithm);
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("Hash algorithm not available: " + algorithm, e);
         }
@@ -229,8 +425,9 @@ public final class UuidFactory {
         } catch (SocketException e) {
         }
 
-        // fallback: random 48-bit with multicast bit set (per RFC)
-        long node = ThreadLocalRandom.current().nextLong() & 0x0000FFFFFFFFFFFFL;
+        // fallback: random 48-bit with multicast bit set (per RFC); identifies the
+        // process, so never seeded
+        long node = secureRandom.nextLong() & 0x0000FFFFFFFFFFFFL;
         node = node | 0x010000000000L; // set multicast bit to indicate random node id
         return node;
     }
@@ -0,0 +1,134 @@
+package sh.minty.helixis.commands;
+
+import java.util.Arrays;
+
+/**
+ * Allocation-free conversion between UUIDs (as two {@code long}s) and their
+ * canonical 36-character text form, for bulk paths that cannot afford a
+ * {@link java.util.UUID} and a {@link String} per value.
+ */
+final class UuidText {
+    /** Length of {@code xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx}. */
+    static final int LENGTH = 36;
+
+    // two ASCII hex digits per byte value, so each byte is one table lookup
+    private static final byte[] HEX_PAIRS = new byte[512];
+
+    // value of each ASCII hex digit, -1 for everything else
+    private static final byte[] HEX_VALUES = new byte[256];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+
+        byte[] digits = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+        for (int i = 0; i < 256; i++) {
+            HEX_PAIRS[i * 2] = digits[i >>> 4];
+            HEX_PAIRS[i * 2 + 1] = digits[i & 0xF];
+        }
+    }
+
+    private UuidText() {
+    }
+
+    /**
+     * @return the value of a hex digit, or -1 if {@code b} is not one
+     */
+    static int hexValue(byte b) {
+        return HEX_VALUES[b & 0xFF];
+    }
+
+    /**
+     * Write the lowercase canonical form of a UUID into {@code dst}.
+     *
+     * @param msb
+     *            most significant 64 bits
+     * @param lsb
+     *            least significant 64 bits
+     * @param dst
+     *            destination buffer, at least {@code off + 36} bytes long
+     * @param off
+     *            where to start writing
+     * @return the offset just past the written text
+     */
+    static int format(long msb, long lsb, byte[] dst, int off) {
+        hexBytes(msb >>> 32, 4, dst, off);
+        dst[off + 8] = '-';
+        hexBytes(msb >>> 16, 2, dst, off + 9);
+        dst[off + 13] = '-';
+        hexBytes(msb, 2, dst, off + 14);
+        dst[off + 18] = '-';
+        hexBytes(lsb >>> 48, 2, dst, off + 19);
+        dst[off + 23] = '-';
+        hexBytes(lsb, 6, dst, off + 24);
+        return off + LENGTH;
+    }
+
+    /**
+     * Parse a UUID written as 36 characters with dashes or as 32 bare hex digits,
+     * in either case.
+     *
+     * @param src
+     *            buffer holding the text
+     * @param off
+     *            start of the text
+     * @param len
+     *            length of the text; surrounding whitespace must already be trimmed
+     * @param out
+     *            receives the most significant bits at index 0 and the least
+     *            significant bits at index 1
+     * @return {@code false} if the text is not a UUID, in which case {@code out} is
+     *         unspecified
+     */
+    static boolean parse(byte[] src, int off, int len, long[] out) {
+        boolean dashed;
+        if (len == LENGTH) {
+            dashed = true;
+            if (src[off + 8] != '-' || src[off + 13] != '-' || src[off + 18] != '-' || src[off + 23] != '-') {
+                return false;
+            }
+        } else if (len == 32) {
+            dashed = false;
+        } else {
+            return false;
+        }
+
+        long msb = 0;
+        long lsb = 0;
+        int digits = 0;
+        for (int i = 0; i < len; i++) {
+            if (dashed && (i == 8 || i == 13 || i == 18 || i == 23)) {
+                continue;
+            }
+            int nibble = HEX_VALUES[src[off + i] & 0xFF];
+            if (nibble < 0) {
+                return false;
+            }
+            if (digits++ < 16) {
+                msb = (msb << 4) | nibble;
+            } else {
+                lsb = (lsb << 4) | nibble;
+            }
+        }
+        out[0] = msb;
+        out[1] = lsb;
+        return true;
+    }
+
+    // writes the low `count` bytes of `value` as 2*count hex digits, most
+    // significant first
+    private static void hexBytes(long value, int count, byte[] dst, int off) {
+        for (int i = count - 1; i >= 0; i--) {
+            int pair = ((int) value & 0xFF) << 1;
+            dst[off + i * 2] = HEX_PAIRS[pair];
+            dst[off + i * 2 + 1] = HEX_PAIRS[pair + 1];
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package sh.minty.helixis.commands;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped word list with an offset index, so that picking a word costs
+ * one array lookup and a copy out of the page cache, and no word ever becomes a
+ * {@link String}.
+ *
+ * <p>
+ * The file holds one word per line as UTF-8. Blank lines and lines starting
+ * with {@code #} are skipped, and when a line has several whitespace-separated
+ * fields the last one is the word, which accepts Diceware lists in the
+ * {@code 11111<tab>word} layout as they are. Instances are safe to share
+ * between threads.
+ * </p>
+ */
+final class Wordlist {
+    // each index entry packs a word's byte offset above its byte length
+    private static final int LENGTH_BITS = 16;
+    private static final long MAX_WORD_BYTES = (1L << LENGTH_BITS) - 1;
+
+    private final MappedByteBuffer data;
+    private final long[] index;
+    private final int maxWordBytes;
+
+    private Wordlist(MappedByteBuffer data, long[] index, int maxWordBytes) {
+        this.data = data;
+        this.index = index;
+        this.maxWordBytes = maxWordBytes;
+    }
+
+    static Wordlist open(Path file) throws IOException {
+        MappedByteBuffer data;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GiB");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        int limit = data.limit();
+        var index = new long[Math.max(16, limit / 8)];
+        int words = 0;
+        int maxWordBytes = 0;
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && data.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+
+            // the word is the last whitespace-separated field of the line
+            int end = lineEnd;
+            while (end > lineStart && isSpace(data.get(end - 1))) {
+                end--;
+            }
+            int start = end;
+            while (start > lineStart && !isSpace(data.get(start - 1))) {
+                start--;
+            }
+            if (end > start && data.get(firstNonSpace(data, lineStart, end)) != '#') {
+                if (end - start > MAX_WORD_BYTES) {
+                    throw new IOException(file + " has a word longer than " + MAX_WORD_BYTES + " bytes");
+                }
+                if (words == index.length) {
+                    index = Arrays.copyOf(index, words * 2);
+                }
+                index[words++] = (long) start << LENGTH_BITS | (end - start);
+                maxWordBytes = Math.max(maxWordBytes, end - start);
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (words == 0) {
+            throw new IOException(file + " contains no words");
+        }
+        return new Wordlist(data, Arrays.copyOf(index, words), maxWordBytes);
+    }
+
+    private static int firstNonSpace(MappedByteBuffer data, int from, int to) {
+        while (from < to && isSpace(data.get(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    int size() {
+        return index.length;
+    }
+
+    int maxWordBytes() {
+        return maxWordBytes;
+    }
+
+    /**
+     * Copy word {@code i} into {@code dst} at {@code off}.
+     *
+     * @return the offset just past the word
+     */
+    int copyWord(int i, byte[] dst, int off) {
+        long entry = index[i];
+        int length = (int) (entry & MAX_WORD_BYTES);
+        // absolute bulk get leaves the shared buffer's position alone
+        data.get((int) (entry >>> LENGTH_BITS), dst, off, length);
+        return off + length;
+    }
+}
@@ -0,0 +1,125 @@
+package sh.minty.helixis.commands;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A zone's UTC offsets as sorted transition tables, for converting many
+ * instants or local date-times in the same zone.
+ *
+ * <p>
+ * {@link ZoneRules} keeps recent transitions as rules that are evaluated per
+ * year and builds objects on every lookup. Here the transitions from 1900 to
+ * 2100 are computed once per zone into arrays, indexed both by instant and by
+ * local time, and an offset is found by binary search. Times outside that range
+ * are left to {@link ZoneRules}. Tables are immutable and cached per zone.
+ * </p>
+ */
+final class ZoneOffsets {
+    private static final ConcurrentHashMap<ZoneId, ZoneOffsets> CACHE = new ConcurrentHashMap<>();
+
+    // 1900-01-01T00:00Z and 2100-01-01T00:00Z
+    private static final long FIRST = -2_208_988_800L;
+    private static final long LAST = 4_102_444_800L;
+    // no offset is larger, so local times this far inside the range are in it
+    private static final long MAX_OFFSET = 18 * 3600;
+
+    private final ZoneRules rules;
+    private final boolean fixed;
+    /** Instants of the transitions. */
+    private final long[] transitions;
+    /**
+     * Local times from which each transition's offset applies to local times: the
+     * later of the local times just before and after it, since local times in a gap
+     * or overlap take the offset before it.
+     */
+    private final long[] localTransitions;
+    /** The offset before the first transition, then after each one. */
+    private final int[] offsets;
+
+    private ZoneOffsets(ZoneId zone) {
+        rules = zone.getRules();
+        fixed = rules.isFixedOffset();
+        var instants = new long[16];
+        var locals = new long[16];
+        var after = new int[17];
+        after[0] = rules.getOffset(Instant.ofEpochSecond(FIRST)).getTotalSeconds();
+        int count = 0;
+        var transition = fixed ? null : rules.nextTransition(Instant.ofEpochSecond(FIRST));
+        while (transition != null && transition.toEpochSecond() < LAST) {
+            if (count == instants.length) {
+                instants = Arrays.copyOf(instants, count * 2);
+                locals = Arrays.copyOf(locals, count * 2);
+                after = Arrays.copyOf(after, count * 2 + 1);
+            }
+            long instant = transition.toEpochSecond();
+            int before = transition.getOffsetBefore().getTotalSeconds();
+            int offset = transition.getOffsetAfter().getTotalSeconds();
+            instants[count] = instant;
+            locals[count] = instant + Math.max(before, offset);
+            after[++count] = offset;
+            transition = rules.nextTransition(transition.getInstant());
+        }
+        transitions = Arrays.copyOf(instants, count);
+        localTransitions = Arrays.copyOf(locals, count);
+        offsets = Arrays.copyOf(after, count + 1);
+    }
+
+    static ZoneOffsets of(ZoneId zone) {
+        return CACHE.computeIfAbsent(zone, ZoneOffsets::new);
+    }
+
+    /**
+     * @return the offset in seconds at the instant {@code epochSecond}
+     */
+    int offsetAt(long epochSecond) {
+        if (fixed) {
+            return offsets[0];
+        }
+        if (epochSecond < FIRST || epochSecond >= LAST) {
+            return rules.getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+        }
+        return offsets[transitionsUpTo(transitions, epochSecond)];
+    }
+
+    /**
+     * @param localSecond
+     *            a local date-time as seconds since 1970-01-01T00:00
+     * @return its epoch second, resolved as {@link LocalDateTime#atZone} does: a
+     *         time in a gap moves forward by the gap, a time in an overlap takes
+     *         the earlier offset
+     */
+    long toEpochSecond(long localSecond) {
+        if (fixed) {
+            return localSecond - offsets[0];
+        }
+        if (localSecond < FIRST + MAX_OFFSET || localSecond >= LAST - MAX_OFFSET) {
+            var local = LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC);
+            return localSecond - rules.getOffset(local).getTotalSeconds();
+        }
+        return localSecond - offsets[transitionsUpTo(localTransitions, localSecond)];
+    }
+
+    /**
+     * @return the number of entries of the sorted {@code times} that are at most
+     *         {@code time}
+     */
+    private static int transitionsUpTo(long[] times, long time) {
+        int low = 0;
+        int high = times.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[middle] <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
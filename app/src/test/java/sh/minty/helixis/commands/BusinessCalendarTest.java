@@ -0,0 +1,109 @@
+package sh.minty.helixis.commands;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the closed-form business-day arithmetic against stepping through the
+ * days one at a time.
+ */
+class BusinessCalendarTest {
+    private static final LocalDate FIRST_HOLIDAY = LocalDate.of(2020, 1, 1);
+    private static final int HOLIDAY_SPAN = 6 * 365;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void matchesDayByDayCount() throws IOException {
+        var random = new Random(47);
+        for (int calendar = 0; calendar < 300; calendar++) {
+            var weekend = EnumSet.noneOf(DayOfWeek.class);
+            for (var day : DayOfWeek.values()) {
+                if (random.nextInt(4) == 0) {
+                    weekend.add(day);
+                }
+            }
+            if (weekend.size() == 7) {
+                weekend.remove(DayOfWeek.of(1 + random.nextInt(7)));
+            }
+            // from none to about a third of the days, weekends included
+            var holidays = new HashSet<LocalDate>();
+            int density = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(33);
+            for (int i = 0; i < HOLIDAY_SPAN; i++) {
+                if (random.nextInt(100) < density) {
+                    holidays.add(FIRST_HOLIDAY.plusDays(i));
+                }
+            }
+            var business = BusinessCalendar.of(weekend, holidayFile(holidays, calendar));
+
+            var holidayList = new ArrayList<>(holidays);
+            for (int i = 0; i < 200; i++) {
+                LocalDate start;
+                if (!holidayList.isEmpty() && random.nextInt(4) == 0) {
+                    start = holidayList.get(random.nextInt(holidayList.size()));
+                } else {
+                    // a year either side of the holidays, so starts and results fall
+                    // outside the holiday table too
+                    start = FIRST_HOLIDAY.plusDays(random.nextInt(HOLIDAY_SPAN + 2 * 365) - 365);
+                }
+                long days = random.nextInt(10) == 0 ? random.nextInt(1601) - 800 : random.nextInt(61) - 30;
+                assertEquals(stepThrough(start, days, weekend, holidays), business.plusBusinessDays(start, days),
+                        () -> start + " plus " + days + " business days, weekend " + weekend);
+            }
+        }
+    }
+
+    @Test
+    void startsOnWeekendsAndHolidays() throws IOException {
+        var weekend = EnumSet.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY);
+        var holidays = Set.of(LocalDate.of(2024, 12, 24), LocalDate.of(2024, 12, 25), LocalDate.of(2024, 12, 26),
+                LocalDate.of(2024, 12, 28), LocalDate.of(2025, 1, 1));
+        var business = BusinessCalendar.of(weekend, holidayFile(holidays, 0));
+        for (var start = LocalDate.of(2024, 12, 20); start
+                .isBefore(LocalDate.of(2025, 1, 6)); start = start.plusDays(1)) {
+            for (long days = -10; days <= 10; days++) {
+                assertEquals(stepThrough(start, days, weekend, holidays), business.plusBusinessDays(start, days),
+                        start + " plus " + days);
+            }
+        }
+    }
+
+    /**
+     * @return the date {@code days} business days from {@code start}, found one day
+     *         at a time
+     */
+    private static LocalDate stepThrough(LocalDate start, long days, Set<DayOfWeek> weekend, Set<LocalDate> holidays) {
+        var date = start;
+        long step = Long.signum(days);
+        for (long left = Math.abs(days); left > 0;) {
+            date = date.plusDays(step);
+            if (!weekend.contains(date.getDayOfWeek()) && !holidays.contains(date)) {
+                left--;
+            }
+        }
+        return date;
+    }
+
+    private Path holidayFile(Set<LocalDate> holidays, int index) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# generated holidays");
+        for (var holiday : holidays) {
+            lines.add(holiday + " holiday");
+        }
+        return Files.write(dir.resolve("holidays-" + index + ".txt"), lines);
+    }
+}
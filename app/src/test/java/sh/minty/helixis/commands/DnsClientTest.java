@@ -0,0 +1,255 @@
+package sh.minty.helixis.commands;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DnsClientTest {
+    private static final Duration TIMEOUT = Duration.ofMillis(300);
+
+    /** A query as received by the stub server. */
+    private record Received(byte[] packet, SocketAddress from) {
+        int id() {
+            return DnsClientTest.id(packet);
+        }
+    }
+
+    private DatagramChannel server;
+    private final BlockingQueue<Received> queries = new LinkedBlockingQueue<>();
+    private Thread receiver;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        receiver = new Thread(() -> {
+            var buffer = ByteBuffer.allocate(DnsMessage.MAX_UDP_PAYLOAD);
+            while (server.isOpen()) {
+                try {
+                    buffer.clear();
+                    var from = server.receive(buffer);
+                    queries.add(new Received(Arrays.copyOf(buffer.array(), buffer.position()), from));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.close();
+    }
+
+    private DnsClient client(int attempts) throws IOException {
+        return new DnsClient((InetSocketAddress) server.getLocalAddress(), TIMEOUT, attempts, 16);
+    }
+
+    private Received nextQuery() throws InterruptedException {
+        var query = queries.poll(5, TimeUnit.SECONDS);
+        assertTrue(query != null, "no query reached the server");
+        return query;
+    }
+
+    private void reply(Received query, byte[] response) throws IOException {
+        server.send(ByteBuffer.wrap(response), query.from());
+    }
+
+    @Test
+    void matchesOutOfOrderRepliesByTransactionId() throws Exception {
+        try (var client = client(1)) {
+            var first = client.resolve("first.example", "A");
+            var second = client.resolve("second.example", "A");
+            var firstQuery = nextQuery();
+            var secondQuery = nextQuery();
+
+            // an answer for a different question under the first query's ID must be ignored
+            reply(firstQuery, response(firstQuery.id(), question(secondQuery.packet()), false, 192, 0, 2, 99));
+            reply(secondQuery, response(secondQuery.packet(), false, 192, 0, 2, 2));
+            reply(firstQuery, response(firstQuery.packet(), false, 192, 0, 2, 1));
+
+            assertEquals(List.of("192.0.2.1"), first.get(5, TimeUnit.SECONDS).records());
+            assertEquals(List.of("192.0.2.2"), second.get(5, TimeUnit.SECONDS).records());
+        }
+    }
+
+    @Test
+    void resendsAfterTimeout() throws Exception {
+        try (var client = client(3)) {
+            var answer = client.resolve("retry.example", "A");
+            var lost = nextQuery();
+            var resent = nextQuery();
+            assertEquals(lost.id(), resent.id());
+            assertTrue(Arrays.equals(lost.packet(), resent.packet()));
+
+            reply(resent, response(resent.packet(), false, 192, 0, 2, 7));
+            assertEquals(List.of("192.0.2.7"), answer.get(5, TimeUnit.SECONDS).records());
+        }
+    }
+
+    @Test
+    void timesOutAfterLastAttempt() throws Exception {
+        try (var client = client(2)) {
+            var answer = client.resolve("silent.example", "A").get(5, TimeUnit.SECONDS);
+            assertEquals("TIMEOUT", answer.status());
+            assertEquals(2, queries.size());
+        }
+    }
+
+    @Test
+    void retriesTruncatedReplyOverTcp() throws Exception {
+        var address = (InetSocketAddress) server.getLocalAddress();
+        try (var tcp = new ServerSocket(address.getPort(), 1, address.getAddress()); var client = client(1)) {
+            var answer = client.resolve("large.example", "A");
+            var query = nextQuery();
+            reply(query, response(query.packet(), true));
+
+            try (var connection = tcp.accept()) {
+                var in = new DataInputStream(connection.getInputStream());
+                var packet = new byte[in.readUnsignedShort()];
+                in.readFully(packet);
+                assertTrue(Arrays.equals(query.packet(), packet));
+
+                var full = response(packet, false, 192, 0, 2, 53);
+                var out = new DataOutputStream(connection.getOutputStream());
+                out.writeShort(full.length);
+                out.write(full);
+                out.flush();
+                assertEquals(List.of("192.0.2.53"), answer.get(5, TimeUnit.SECONDS).records());
+            }
+        }
+    }
+
+    @Test
+    void matchesRepliesToInternationalizedNames() throws Exception {
+        try (var client = client(1)) {
+            var answer = client.resolve("bücher.example", "A");
+            var query = nextQuery();
+            reply(query, response(query.packet(), false, 192, 0, 2, 8));
+            assertEquals(List.of("192.0.2.8"), answer.get(5, TimeUnit.SECONDS).records());
+        }
+    }
+
+    @Test
+    void failsOnTruncatedMxRecordOverUdp() throws Exception {
+        try (var client = client(1)) {
+            var answer = client.resolve("mail.example", "MX");
+            var query = nextQuery();
+            // an MX record without its preference and exchange, at the end of the datagram
+            reply(query, responseWithRecord(query.packet(), DnsMessage.TYPE_MX));
+            assertEquals("ERROR", answer.get(5, TimeUnit.SECONDS).status());
+
+            // the receiver thread survives for later queries
+            var next = client.resolve("next.example", "A");
+            var nextQuery = nextQuery();
+            reply(nextQuery, response(nextQuery.packet(), false, 192, 0, 2, 25));
+            assertEquals(List.of("192.0.2.25"), next.get(5, TimeUnit.SECONDS).records());
+        }
+    }
+
+    @Test
+    void failsOnTruncatedMxRecordOverTcp() throws Exception {
+        var address = (InetSocketAddress) server.getLocalAddress();
+        try (var tcp = new ServerSocket(address.getPort(), 1, address.getAddress()); var client = client(1)) {
+            var answer = client.resolve("mail.example", "MX");
+            var query = nextQuery();
+            reply(query, response(query.packet(), true));
+
+            try (var connection = tcp.accept()) {
+                var in = new DataInputStream(connection.getInputStream());
+                var packet = new byte[in.readUnsignedShort()];
+                in.readFully(packet);
+
+                var bad = responseWithRecord(packet, DnsMessage.TYPE_MX);
+                var out = new DataOutputStream(connection.getOutputStream());
+                out.writeShort(bad.length);
+                out.write(bad);
+                out.flush();
+                assertEquals("ERROR", answer.get(5, TimeUnit.SECONDS).status());
+            }
+        }
+    }
+
+    /**
+     * @return the question section of a query
+     */
+    private static byte[] question(byte[] query) {
+        return Arrays.copyOfRange(query, DnsMessage.HEADER_LENGTH, query.length);
+    }
+
+    private static byte[] response(byte[] query, boolean truncated, int... address) {
+        return response(id(query), question(query), truncated, address);
+    }
+
+    /**
+     * @return a response to {@code query} with one record of {@code type} and
+     *         {@code rdata}
+     */
+    private static byte[] responseWithRecord(byte[] query, int type, int... rdata) {
+        return responseWithRecord(id(query), question(query), false, type, rdata);
+    }
+
+    /**
+     * Build a response to the question with one A record for {@code address}, or
+     * none if it is empty.
+     */
+    private static byte[] response(int id, byte[] question, boolean truncated, int... address) {
+        return address.length == 0
+                ? responseWithRecord(id, question, truncated, -1)
+                : responseWithRecord(id, question, truncated, DnsMessage.TYPE_A, address);
+    }
+
+    /**
+     * Build a response to the question with one record of {@code type}, or none if
+     * {@code type} is negative.
+     */
+    private static byte[] responseWithRecord(int id, byte[] question, boolean truncated, int type, int... rdata) {
+        var bytes = new ArrayList<Integer>();
+        int flags = 0x8180 | (truncated ? 0x0200 : 0);
+        int answers = type < 0 ? 0 : 1;
+        for (int value : new int[]{id, flags, 1, answers, 0, 0}) {
+            bytes.add(value >> 8);
+            bytes.add(value & 0xFF);
+        }
+        for (byte b : question) {
+            bytes.add(b & 0xFF);
+        }
+        if (answers == 1) {
+            // pointer to the question name, type, class IN, TTL 60, length of the data
+            for (int b : new int[]{0xC0, DnsMessage.HEADER_LENGTH, 0, type, 0, 1, 0, 0, 0, 60, 0, rdata.length}) {
+                bytes.add(b);
+            }
+            for (int b : rdata) {
+                bytes.add(b);
+            }
+        }
+        var packet = new byte[bytes.size()];
+        for (int i = 0; i < packet.length; i++) {
+            packet[i] = bytes.get(i).byteValue();
+        }
+        return packet;
+    }
+
+    private static int id(byte[] packet) {
+        return (packet[0] & 0xFF) << 8 | (packet[1] & 0xFF);
+    }
+}
@@ -0,0 +1,152 @@
+package sh.minty.helixis.commands;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Checks that the fast path of {@link TimestampParser} gives the same epoch
+ * second as the {@link DateTimeFormatter} it stands in for, or fails where the
+ * formatter fails.
+ */
+class TimestampParserTest {
+    private static final List<ZoneId> ZONES = Stream.of("UTC", "Europe/Berlin", "America/New_York",
+            "Australia/Lord_Howe", "America/Sao_Paulo", "Pacific/Apia", "Asia/Kolkata").map(ZoneId::of).toList();
+
+    static Stream<Arguments> layouts() {
+        return Stream.of(Arguments.of("iso", false, DateTimeFormatter.ISO_DATE_TIME),
+                Arguments.of("rfc3339", false, TimestampParser.RFC_3339),
+                Arguments.of("yyyy-MM-dd HH:mm:ss", false, DateCommand.formatter("yyyy-MM-dd HH:mm:ss", false)),
+                Arguments.of("yyyy-MM-dd'T'HH:mm:ss", false, DateCommand.formatter("yyyy-MM-dd'T'HH:mm:ss", false)),
+                Arguments.of("%F %T", true, DateCommand.formatter("%F %T", true)),
+                Arguments.of("%Y-%m-%dT%H:%M:%S", true, DateCommand.formatter("%Y-%m-%dT%H:%M:%S", true)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("layouts")
+    void matchesFormatterAroundTransitions(String format, boolean gnu, DateTimeFormatter formatter) {
+        for (var zone : ZONES) {
+            var parser = TimestampParser.of(format, gnu, zone);
+            var transition = zone.getRules().nextTransition(Instant.parse("1900-01-01T00:00:00Z"));
+            while (transition != null && transition.getInstant().isBefore(Instant.parse("2100-01-01T00:00:00Z"))) {
+                // local times on both sides of, and inside, each gap or overlap
+                for (var local : List.of(transition.getDateTimeBefore(), transition.getDateTimeAfter())) {
+                    for (long delta : new long[]{-3601, -1, 0, 1, 1799, 3599, 3600}) {
+                        var time = local.plusSeconds(delta);
+                        for (var text : texts(time, format)) {
+                            assertSameResult(parser, formatter, zone, text);
+                        }
+                    }
+                }
+                transition = zone.getRules().nextTransition(transition.getInstant());
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("layouts")
+    void matchesFormatterOnEdgeCases(String format, boolean gnu, DateTimeFormatter formatter) {
+        var texts = List.of("2024-02-29 12:00:00", "2023-02-29 12:00:00", "2024-02-30 12:00:00", "1900-02-29 00:00:00",
+                "2000-02-29 00:00:00", "0000-01-01 00:00:00", "0000-02-29 00:00:00", "0001-01-01 00:00:00",
+                "9999-12-31 23:59:59", "2024-13-01 00:00:00", "2024-04-31 00:00:00", "2024-01-01 24:00:00",
+                "2024-01-01 23:60:00", "2024-01-01 23:59:60", "2024-01-01 12:00", "2024-01-01 12:00:00Z",
+                "2024-01-01 12:00:00z", "2024-01-01 12:00:00+05:30", "2024-01-01 12:00:00-08:00",
+                "2024-01-01 12:00:00+18:00", "2024-01-01 12:00:00-18:00", "2024-01-01 12:00:00+18:01",
+                "2024-01-01 12:00:00+19:00", "2024-01-01 12:00:00+0530", "2024-01-01 12:00:00+05:30:15",
+                "2024-01-01 12:00:00.5Z", "2024-01-01 12:00:00.123456789Z", "2024-01-01 12:00:00.1234567890Z",
+                "2024-01-01 12:00:00.Z", "2024-01-01 12:00:00.999", "2024-01-01 12:00:00,5Z", "2024-01-01 12:00Z",
+                "2024-01-01 12:00:00[Europe/Berlin]", "2024-01-01 12:00:00+01:00[Europe/Berlin]", "2024-1-01 12:00:00",
+                "２０２４-01-01 12:00:00", "");
+        for (var zone : ZONES) {
+            var parser = TimestampParser.of(format, gnu, zone);
+            for (var text : texts) {
+                for (char separator : new char[]{' ', 'T', 't'}) {
+                    assertSameResult(parser, formatter, zone,
+                            text.length() > 10 ? text.substring(0, 10) + separator + text.substring(11) : text);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("layouts")
+    void matchesFormatterOnRandomText(String format, boolean gnu, DateTimeFormatter formatter) {
+        var random = new Random(format.hashCode());
+        var alphabet = "0123456789-:.+ TtZz".toCharArray();
+        for (var zone : ZONES) {
+            var parser = TimestampParser.of(format, gnu, zone);
+            for (int i = 0; i < 10_000; i++) {
+                var text = new StringBuilder(String.format(Locale.ROOT, "%04d-%02d-%02d%c%02d:%02d",
+                        random.nextInt(10_000), random.nextInt(14), random.nextInt(33), " Tt".charAt(random.nextInt(3)),
+                        random.nextInt(25), random.nextInt(61)));
+                if (random.nextInt(4) > 0) {
+                    text.append(String.format(Locale.ROOT, ":%02d", random.nextInt(61)));
+                }
+                if (random.nextInt(3) == 0) {
+                    text.append('.').append(String.valueOf(random.nextLong() & Long.MAX_VALUE), 0, random.nextInt(11));
+                }
+                switch (random.nextInt(4)) {
+                    case 0 -> text.append("Zz".charAt(random.nextInt(2)));
+                    case 1 -> text.append(String.format(Locale.ROOT, "%c%02d:%02d", "+-".charAt(random.nextInt(2)),
+                            random.nextInt(20), random.nextInt(61)));
+                    default -> {
+                    }
+                }
+                // and now and then a stray character anywhere
+                if (random.nextInt(5) == 0) {
+                    text.setCharAt(random.nextInt(text.length()), alphabet[random.nextInt(alphabet.length)]);
+                }
+                assertSameResult(parser, formatter, zone, text.toString());
+            }
+        }
+    }
+
+    /**
+     * @return {@code time} written the ways the layout might see it
+     */
+    private static List<String> texts(LocalDateTime time, String format) {
+        var local = String.format(Locale.ROOT, "%04d-%02d-%02d%c%02d:%02d:%02d", time.getYear(), time.getMonthValue(),
+                time.getDayOfMonth(), format.contains("T") ? 'T' : ' ', time.getHour(), time.getMinute(),
+                time.getSecond());
+        var texts = new ArrayList<String>();
+        texts.add(local);
+        if (format.equals("iso") || format.equals("rfc3339")) {
+            texts.add(local.substring(0, 10) + 'T' + local.substring(11));
+            texts.add(texts.get(1) + ".250");
+            texts.add(texts.get(1) + "+01:00");
+            texts.add(texts.get(1) + "-03:30");
+            texts.add(texts.get(1) + "Z");
+        }
+        return texts;
+    }
+
+    private static void assertSameResult(TimestampParser parser, DateTimeFormatter formatter, ZoneId zone,
+            String text) {
+        Long expected;
+        try {
+            expected = formatter.withZone(zone).parse(text).getLong(ChronoField.INSTANT_SECONDS);
+        } catch (DateTimeException e) {
+            expected = null;
+        }
+        Long actual;
+        try {
+            actual = parser.epochSecond(text);
+        } catch (DateTimeException e) {
+            actual = null;
+        }
+        assertEquals(expected, actual, () -> "'" + text + "' in " + zone);
+    }
+}
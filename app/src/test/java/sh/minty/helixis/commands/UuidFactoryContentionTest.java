@@ -0,0 +1,82 @@
+package sh.minty.helixis.commands;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Hammers the shared v1 timestamp from many threads at once, checking that
+ * timestamps stay unique, per-thread increasing and close to the clock under
+ * contention.
+ */
+class UuidFactoryContentionTest {
+    private static final int TOTAL = 1 << 20;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 8, 64})
+    void v1TimestampsStayUniqueUnderContention(int threads) throws Exception {
+        int perThread = TOTAL / threads;
+        // start every worker together so they contend for the whole run
+        var start = new CyclicBarrier(threads);
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<long[]>> workers = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                workers.add(() -> {
+                    var timestamps = new long[perThread];
+                    var bits = new long[2];
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        UuidFactory.nextV1(bits);
+                        timestamps[i] = timestamp(bits[0]);
+                    }
+                    return timestamps;
+                });
+            }
+            var results = new ArrayList<Future<long[]>>(threads);
+            for (var worker : workers) {
+                results.add(executor.submit(worker));
+            }
+            var all = new long[perThread * threads];
+            for (int t = 0; t < threads; t++) {
+                var timestamps = results.get(t).get();
+                for (int i = 1; i < perThread; i++) {
+                    assertTrue(timestamps[i] > timestamps[i - 1], "timestamps of one thread must increase");
+                }
+                System.arraycopy(timestamps, 0, all, t * perThread, perThread);
+            }
+
+            Arrays.sort(all);
+            long ahead = all[all.length - 1] - UuidFactory.currentTicks();
+            assertTrue(ahead <= UuidFactory.MAX_RUN_AHEAD_TICKS,
+                    "timestamps ran " + ahead + " ticks ahead of the clock");
+
+            int distinct = all.length == 0 ? 0 : 1;
+            for (int i = 1; i < all.length; i++) {
+                if (all[i] != all[i - 1]) {
+                    distinct++;
+                }
+            }
+            assertEquals(all.length, distinct, "no timestamp may be handed out twice");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the 60-bit timestamp of a v1 UUID with the given most significant
+     *         bits
+     */
+    private static long timestamp(long msb) {
+        return (msb >>> 32) | ((msb & 0xFFFF0000L) << 16) | ((msb & 0x0FFFL) << 48);
+    }
+}
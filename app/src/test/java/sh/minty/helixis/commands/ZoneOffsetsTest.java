@@ -0,0 +1,75 @@
+package sh.minty.helixis.commands;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Checks the transition tables of {@link ZoneOffsets} against {@link ZoneId}'s
+ * own rules, around every transition and at random times, including those
+ * outside the tables.
+ */
+class ZoneOffsetsTest {
+    // a decade either side of the tables, which cover 1900 to 2100
+    private static final Instant FROM = Instant.parse("1890-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2110-01-01T00:00:00Z");
+
+    static Stream<ZoneId> zones() {
+        return Stream.concat(ZoneId.getAvailableZoneIds().stream().sorted().map(ZoneId::of),
+                Stream.of(ZoneOffset.UTC, ZoneOffset.ofHoursMinutes(5, 30), ZoneOffset.ofHours(-18)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("zones")
+    void matchesZoneRulesAroundTransitions(ZoneId zone) {
+        var offsets = ZoneOffsets.of(zone);
+        var rules = zone.getRules();
+        var transition = rules.nextTransition(FROM);
+        while (transition != null && transition.getInstant().isBefore(TO)) {
+            long instant = transition.toEpochSecond();
+            for (long delta : new long[]{-86_400, -1, 0, 1, 86_400}) {
+                assertOffsetAt(zone, offsets, instant + delta);
+            }
+            // local times before, inside and after the gap or overlap
+            long before = transition.getDateTimeBefore().toEpochSecond(ZoneOffset.UTC);
+            long after = transition.getDateTimeAfter().toEpochSecond(ZoneOffset.UTC);
+            for (long local : new long[]{before - 1, before, before + 1, (before + after) / 2, after - 1, after,
+                    after + 1}) {
+                assertToEpochSecond(zone, offsets, local);
+            }
+            transition = rules.nextTransition(transition.getInstant());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("zones")
+    void matchesZoneRulesAtRandomTimes(ZoneId zone) {
+        var offsets = ZoneOffsets.of(zone);
+        var random = new Random(zone.getId().hashCode());
+        for (int i = 0; i < 2_000; i++) {
+            long second = FROM.getEpochSecond()
+                    + (long) (random.nextDouble() * (TO.getEpochSecond() - FROM.getEpochSecond()));
+            assertOffsetAt(zone, offsets, second);
+            assertToEpochSecond(zone, offsets, second);
+        }
+    }
+
+    private static void assertOffsetAt(ZoneId zone, ZoneOffsets offsets, long epochSecond) {
+        var instant = Instant.ofEpochSecond(epochSecond);
+        assertEquals(zone.getRules().getOffset(instant).getTotalSeconds(), offsets.offsetAt(epochSecond),
+                () -> "offset at " + instant + " in " + zone);
+    }
+
+    private static void assertToEpochSecond(ZoneId zone, ZoneOffsets offsets, long localSecond) {
+        var local = LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC);
+        assertEquals(local.atZone(zone).toEpochSecond(), offsets.toEpochSecond(localSecond),
+                () -> local + " in " + zone);
+    }
+}